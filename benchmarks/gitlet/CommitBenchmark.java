@@ -0,0 +1,75 @@
+package gitlet;
+
+import java.io.PrintStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Adding and committing a changed file in a repository of N files, as the
+ *  command line does, in the scratch directory.
+ *  @author Chris Zhan
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommitBenchmark {
+
+    /** Number of files in the repository. */
+    @Param({ "100", "1000", "10000" })
+    public int files;
+
+    /** Size in bytes of each file. */
+    private static final int FILE_SIZE = 1024;
+
+    /** Standard output before it was muted. */
+    private PrintStream _out;
+    /** Source of new file contents. */
+    private Random _random;
+    /** The path of the file changed for the next commit. */
+    private String _changed;
+    /** The number of commits so far. */
+    private int _commits;
+
+    @Setup
+    public void setUp() {
+        _out = Scratch.mute();
+        Scratch.createRepository(files, FILE_SIZE, files);
+        _random = new Random(-files);
+    }
+
+    /** Changes one file, a different one each time. */
+    @Setup(Level.Invocation)
+    public void changeFile() {
+        _changed = Scratch.path(_random.nextInt(files));
+        Scratch.write(_changed, Scratch.text(_random, FILE_SIZE));
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(_out);
+        Scratch.clear();
+    }
+
+    @Benchmark
+    public void addAndCommit() {
+        _commits += 1;
+        Scratch.run("add", _changed);
+        Scratch.run("commit", "Change " + _commits);
+    }
+}
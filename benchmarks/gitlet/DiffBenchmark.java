@@ -0,0 +1,57 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Diff of two files of N lines, one a copy of the other with a
+ *  hundredth of its lines replaced.  Diff keeps an N by N table, so N is
+ *  kept to sizes that fit in a default heap.
+ *  @author Chris Zhan
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DiffBenchmark {
+
+    /** Number of lines in each file. */
+    @Param({ "100", "1000", "4000" })
+    public int lines;
+
+    /** The lines of the old file. */
+    private final ArrayList<String> _old = new ArrayList<>();
+    /** The lines of the new file. */
+    private final ArrayList<String> _new = new ArrayList<>();
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(lines);
+        for (int k = 0; k < lines; k += 1) {
+            String line = Scratch.text(random, 40);
+            _old.add(line);
+            _new.add(k % 100 == 50 ? Scratch.text(random, 40) : line);
+        }
+    }
+
+    @Benchmark
+    public int[] diffs() {
+        Diff diff = new Diff();
+        diff.setSequences(_old, _new);
+        return diff.diffs();
+    }
+}
@@ -0,0 +1,95 @@
+package gitlet;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Walks of a history of N commits, in the scratch directory: log, and
+ *  finding the split point of a merge.  Branch other forks from master at
+ *  the start and is merged back into it after every tenth commit, so the
+ *  history is a DAG with N / 10 merges, and other has one commit master
+ *  lacks.  Both start cold, with no commits read, as a command run from
+ *  the command line does.
+ *  @author Chris Zhan
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HistoryBenchmark {
+
+    /** Number of commits on master. */
+    @Param({ "100", "1000" })
+    public int commits;
+
+    /** Standard output before it was muted. */
+    private PrintStream _out;
+    /** The commit tree, freshly read for merge-base. */
+    private CommitTree _tree;
+
+    @Setup
+    public void setUp() {
+        _out = Scratch.mute();
+        Scratch.clear();
+        Scratch.run("init");
+        Scratch.run("branch", "other");
+        for (int i = 1; i <= commits; i += 1) {
+            if (i % 10 == 0) {
+                commitOn("other", "o.txt", i);
+                Scratch.run("merge", "other");
+            } else {
+                Scratch.write("m.txt", "master " + i + "\n");
+                Scratch.run("add", "m.txt");
+                Scratch.run("commit", "Master " + i);
+            }
+        }
+        commitOn("other", "o.txt", commits + 1);
+    }
+
+    /** Reads the commit tree afresh, forgetting every commit read. */
+    @Setup(Level.Invocation)
+    public void readTree() {
+        CommitTree.forgetLoadedCommits();
+        _tree = Gitlet.readGitlet().commitTree();
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(_out);
+        Scratch.clear();
+    }
+
+    @Benchmark
+    public void log() {
+        Scratch.run("log");
+    }
+
+    @Benchmark
+    public CommitTree.CommitNode mergeBase() {
+        return _tree.crissCrossSelector("other");
+    }
+
+    /** Commits version I of FILE on BRANCH, returning to master. */
+    private static void commitOn(String branch, String file, int i) {
+        Scratch.run("checkout", branch);
+        Scratch.write(file, branch + " " + i + "\n");
+        Scratch.run("add", file);
+        Scratch.run("commit", branch + " " + i);
+        Scratch.run("checkout", "master");
+    }
+}
@@ -0,0 +1,132 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Storing, loading and hashing blobs, in a store of its own in a
+ *  temporary directory.  Sizes from Blob.CHUNK_THRESHOLD up are stored as
+ *  chunks.
+ *  @author Chris Zhan
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ObjectStoreBenchmark {
+
+    /** Size in bytes of the file stored. */
+    @Param({ "1024", "65536", "4194304" })
+    public int size;
+
+    /** The directory standing for a .gitlet directory. */
+    private File _dir;
+    /** The store under test. */
+    private ObjectStore _store;
+    /** The file stored by store and hashed by hash. */
+    private File _file;
+    /** The contents of _file. */
+    private byte[] _contents;
+    /** The id of a blob already in _store. */
+    private ObjectId _stored;
+    /** The loose files of _stored and its chunks. */
+    private final HashSet<File> _kept = new HashSet<>();
+    /** The number of stores so far, making each stored file new. */
+    private long _count;
+
+    @Setup
+    public void setUp() throws IOException {
+        _dir = Files.createTempDirectory("gitlet-bench-").toFile();
+        _store = new ObjectStore(_dir);
+        _store.create();
+        _contents = new byte[size];
+        new Random(61).nextBytes(_contents);
+        _file = new File(_dir, "file");
+        Utils.writeContents(_file, (Object) _contents);
+        _stored = _store.writeFile(_file);
+        _kept.add(ObjectStore.looseFile(_store.blobDirectory(), _stored));
+        for (ObjectId chunk : _store.chunksOf(_stored)) {
+            _kept.add(ObjectStore.looseFile(_store.chunkDirectory(), chunk));
+        }
+    }
+
+    /** Gives _file contents never stored before, so that store does not
+     *  find its blob already present. */
+    @Setup(Level.Invocation)
+    public void changeFile() {
+        _count += 1;
+        for (int i = 0; i < Long.BYTES; i += 1) {
+            _contents[i] = (byte) (_count >>> (8 * i));
+        }
+        Utils.writeContents(_file, (Object) _contents);
+    }
+
+    /** Deletes the loose objects written by store, keeping _stored. */
+    @TearDown(Level.Invocation)
+    public void deleteNewObjects() {
+        for (File dir : new File[] { _store.blobDirectory(),
+            _store.chunkDirectory() }) {
+            File[] entries = dir.listFiles();
+            if (entries != null) {
+                for (File entry : entries) {
+                    if (!_kept.contains(entry)) {
+                        entry.delete();
+                    }
+                }
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        delete(_dir);
+    }
+
+    /** Stores a file that is not yet in the store, as add does. */
+    @Benchmark
+    public ObjectId store() {
+        return _store.writeFile(_file);
+    }
+
+    /** Reads the whole contents of a stored blob. */
+    @Benchmark
+    public byte[] load() {
+        return _store.readContents(_stored);
+    }
+
+    /** Hashes a file without storing it, as status does. */
+    @Benchmark
+    public ObjectId hash() {
+        return Blob.idOf(_file);
+    }
+
+    /** Deletes FILE, and everything in it if it is a directory. */
+    private static void delete(File file) {
+        File[] entries = file.listFiles();
+        if (entries != null) {
+            for (File entry : entries) {
+                delete(entry);
+            }
+        }
+        file.delete();
+    }
+}
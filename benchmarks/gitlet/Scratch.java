@@ -0,0 +1,120 @@
+package gitlet;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/** The scratch directory the repository benchmarks run in.  Gitlet works on
+ *  the repository in the JVM's working directory, Main.CWD, so those
+ *  benchmarks build their repositories there; 'make bench' runs them in
+ *  benchmarks/scratch, which it marks with the empty directory MARKER
+ *  (empty, so that Gitlet sees no untracked file in it).  Everything in a
+ *  marked directory but the marker may be deleted, and no benchmark touches
+ *  an unmarked one.
+ *  @author Chris Zhan
+ */
+final class Scratch {
+
+    /** The directory marking a scratch directory. */
+    static final String MARKER = ".gitlet-bench";
+
+    /** Not instantiable. */
+    private Scratch() {
+    }
+
+    /** Empties the scratch directory, Main.CWD.  Throws
+     *  IllegalStateException if Main.CWD is not marked as scratch. */
+    static void clear() {
+        if (!new File(Main.CWD, MARKER).isDirectory()) {
+            throw new IllegalStateException("not a benchmark scratch "
+                    + "directory: " + Main.CWD.getAbsolutePath()
+                    + " (run the benchmarks with 'make bench')");
+        }
+        File[] entries = Main.CWD.listFiles();
+        if (entries != null) {
+            for (File entry : entries) {
+                if (!entry.getName().equals(MARKER)) {
+                    delete(entry);
+                }
+            }
+        }
+    }
+
+    /** Empties the scratch directory, creates a repository in it holding
+     *  FILES files of about SIZE bytes each, spread over directories of 100
+     *  files (see path), and commits them.  Contents are generated from
+     *  SEED. */
+    static void createRepository(int files, int size, long seed) {
+        clear();
+        Random random = new Random(seed);
+        for (int k = 0; k < files; k += 1) {
+            write(path(k), text(random, size));
+        }
+        run("init");
+        run("add", "-A");
+        run("commit", "Add " + files + " files");
+    }
+
+    /** Returns the working-tree path of the Kth generated file. */
+    static String path(int k) {
+        return "d" + (k / 100) + "/f" + k + ".txt";
+    }
+
+    /** Writes CONTENTS to the working file at PATH. */
+    static void write(String path, String contents) {
+        File file = WorkingTree.file(path);
+        file.getParentFile().mkdirs();
+        Utils.writeContents(file, contents);
+    }
+
+    /** Returns about SIZE bytes of lines of random words from RANDOM. */
+    static String text(Random random, int size) {
+        StringBuilder result = new StringBuilder(size + 80);
+        while (result.length() < size) {
+            int words = 1 + random.nextInt(12);
+            for (int w = 0; w < words; w += 1) {
+                int letters = 1 + random.nextInt(8);
+                for (int i = 0; i < letters; i += 1) {
+                    result.append((char) ('a' + random.nextInt(26)));
+                }
+                result.append(w + 1 < words ? ' ' : '\n');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Runs the Gitlet command ARGS on the repository in the scratch
+     *  directory, as the command line would, throwing IllegalStateException
+     *  if it fails. */
+    static void run(String... args) {
+        try {
+            Main.run(args);
+        } catch (GitletException excp) {
+            throw new IllegalStateException(String.join(" ", args) + ": "
+                    + excp.getMessage());
+        }
+    }
+
+    /** Sends standard output to nowhere, so that commands that print (log,
+     *  status) measure their formatting but not the terminal, and returns
+     *  the old standard output. */
+    static PrintStream mute() {
+        PrintStream old = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream(), false,
+                StandardCharsets.UTF_8));
+        return old;
+    }
+
+    /** Deletes FILE, and everything in it if it is a directory. */
+    private static void delete(File file) {
+        File[] entries = file.listFiles();
+        if (entries != null) {
+            for (File entry : entries) {
+                delete(entry);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,115 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Formatter;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Compares the original Utils.sha1 (a new MessageDigest per call and a
+ *  Formatter per byte) against the current one, and String ids against
+ *  ObjectIds as hash-map keys.
+ *  @author Chris Zhan
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Sha1Benchmark {
+
+    /** Size in bytes of the hashed contents. */
+    @Param({ "64", "4096", "1048576" })
+    public int size;
+
+    /** Contents to be hashed. */
+    private byte[] _contents;
+
+    /** Number of ids in the lookup maps. */
+    private static final int MAP_SIZE = 10000;
+
+    /** Ids keyed by their hexadecimal numerals. */
+    private final HashMap<String, Integer> _byString = new HashMap<>();
+    /** Ids keyed by ObjectId. */
+    private final HashMap<ObjectId, Integer> _byObjectId = new HashMap<>();
+    /** A freshly built hexadecimal key that is present in _byString. */
+    private String _stringKey;
+    /** A freshly built ObjectId key that is present in _byObjectId. */
+    private ObjectId _objectIdKey;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(61);
+        _contents = new byte[size];
+        random.nextBytes(_contents);
+        for (int i = 0; i < MAP_SIZE; i += 1) {
+            String hex = Utils.sha1(Integer.toString(i));
+            _byString.put(hex, i);
+            _byObjectId.put(ObjectId.fromHex(hex), i);
+        }
+        String hex = Utils.sha1(Integer.toString(MAP_SIZE / 2));
+        _stringKey = new String(hex.toCharArray());
+        _objectIdKey = ObjectId.fromHex(hex);
+    }
+
+    @Benchmark
+    public String legacySha1() {
+        return legacySha1(_contents);
+    }
+
+    @Benchmark
+    public String sha1() {
+        return Utils.sha1(_contents);
+    }
+
+    @Benchmark
+    public ObjectId sha1Id() {
+        return Utils.sha1Id(_contents);
+    }
+
+    @Benchmark
+    public Integer stringKeyLookup() {
+        return _byString.get(_stringKey);
+    }
+
+    @Benchmark
+    public Integer objectIdKeyLookup() {
+        return _byObjectId.get(_objectIdKey);
+    }
+
+    /** The implementation of Utils.sha1 before it reused digests. */
+    private static String legacySha1(Object... vals) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            for (Object val : vals) {
+                if (val instanceof byte[]) {
+                    md.update((byte[]) val);
+                } else {
+                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            Formatter result = new Formatter();
+            for (byte b : md.digest()) {
+                result.format("%02x", b);
+            }
+            return result.toString();
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package gitlet;
+
+import java.io.PrintStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Status and branch checkout on a repository of N files, run as the
+ *  command line runs them (reading and saving the repository each time),
+ *  in the scratch directory.  Branch other changes a tenth of the files of
+ *  master, and a hundredth of them are modified in the working tree.
+ *  @author Chris Zhan
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WorkingTreeBenchmark {
+
+    /** Number of files in the repository. */
+    @Param({ "100", "1000", "10000" })
+    public int files;
+
+    /** Size in bytes of each file. */
+    private static final int FILE_SIZE = 1024;
+
+    /** Standard output before it was muted. */
+    private PrintStream _out;
+    /** The branch checkout switches to next. */
+    private String _next = "other";
+
+    @Setup
+    public void setUp() {
+        _out = Scratch.mute();
+        Scratch.createRepository(files, FILE_SIZE, files);
+        Random random = new Random(-files);
+        Scratch.run("branch", "other");
+        Scratch.run("checkout", "other");
+        for (int k = 0; k < files; k += 10) {
+            Scratch.write(Scratch.path(k), Scratch.text(random, FILE_SIZE));
+        }
+        Scratch.run("add", "-A");
+        Scratch.run("commit", "Change a tenth of the files");
+        Scratch.run("checkout", "master");
+        for (int k = 5; k < files; k += 100) {
+            Scratch.write(Scratch.path(k), Scratch.text(random, FILE_SIZE));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(_out);
+        Scratch.clear();
+    }
+
+    @Benchmark
+    public void status() {
+        Scratch.run("status");
+    }
+
+    /** Checks out master and other in turn. */
+    @Benchmark
+    public void checkoutBranch() {
+        Scratch.run("checkout", _next);
+        _next = _next.equals("other") ? "master" : "other";
+    }
+}
@@ -0,0 +1,208 @@
+package gitlet;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/** A batch session: a script of Gitlet commands, one per line, run against
+ * a single in-memory repository.  The repository is read once, by the first
+ * command that needs it, and saved only when the script ends or after every
+ * N successful commands that change it, rather than once per command.
+ *
+ * Words on a line are separated by blanks; a word may be quoted with ' or "
+ * to include blanks, as in commit "Fix the bug".  Blank lines and lines
+ * starting with # are ignored.  After each command, a status line is printed:
+ * [ok] followed by the command, or [error] followed by the command and its
+ * error message.  A failed command does not end the script, which goes on
+ * with the next line, but it is undone only in memory: the session's stage,
+ * branches and HEAD are restored as they were before the command, while
+ * whatever it already wrote to disk (objects, refs and working files)
+ * stays.
+ *
+ * With --watch, the session also watches the working tree (see
+ * WorkingTreeWatch), so that status and the other commands that look at
+ * the whole tree examine only the files changed since the last of them.
+ * @author Chris Zhan */
+class Batch {
+
+    /** A batch session that saves the repository after every FLUSHEVERY
+     * commands that change it, or only at the end if FLUSHEVERY is 0, and
+     * watches the working tree iff WATCH. */
+    Batch(int flushEvery, boolean watch) {
+        _flushEvery = flushEvery;
+        _watch = watch;
+    }
+
+    /** Runs the batch command whose operands are ARGS[1..]: the options
+     * --flush-every=N and --watch, in any order, followed by an optional
+     * script file (standard input if absent or "-").
+     * @param args the arguments. */
+    static void main(String... args) {
+        int flushEvery = 0;
+        boolean watch = false;
+        String script = "-";
+        int i = 1;
+        for (; i < args.length && args[i].startsWith("--"); i += 1) {
+            if (args[i].equals("--watch")) {
+                watch = true;
+                continue;
+            } else if (!args[i].startsWith("--flush-every=")) {
+                Main.exitWithError("Incorrect operands.");
+            }
+            try {
+                flushEvery = Integer.parseInt(
+                        args[i].substring("--flush-every=".length()));
+            } catch (NumberFormatException excp) {
+                flushEvery = -1;
+            }
+            if (flushEvery < 0) {
+                Main.exitWithError("Incorrect operands.");
+            }
+        }
+        if (i < args.length) {
+            script = args[i];
+            i += 1;
+        }
+        if (i < args.length) {
+            Main.exitWithError("Incorrect operands.");
+        }
+        BufferedReader input;
+        try {
+            if (script.equals("-")) {
+                input = new BufferedReader(new InputStreamReader(System.in,
+                        StandardCharsets.UTF_8));
+            } else {
+                input = Files.newBufferedReader(new File(script).toPath(),
+                        StandardCharsets.UTF_8);
+            }
+        } catch (IOException excp) {
+            Main.exitWithError("File does not exist.");
+            return;
+        }
+        new Batch(flushEvery, watch).run(input);
+    }
+
+    /** Runs each command read from INPUT, then saves the repository if any
+     * command changed it since the last save, and prints a summary. */
+    void run(BufferedReader input) {
+        Main.beginBatch(this);
+        WorkingTreeWatch watch = _watch ? WorkingTreeWatch.start() : null;
+        try {
+            String line;
+            while ((line = input.readLine()) != null) {
+                List<String> words = split(line);
+                if (words.isEmpty() || words.get(0).startsWith("#")) {
+                    continue;
+                }
+                execute(line.trim(), words.toArray(new String[0]));
+            }
+        } catch (IOException excp) {
+            throw Utils.error("cannot read batch script: %s",
+                    excp.getMessage());
+        } finally {
+            flush();
+            if (watch != null) {
+                watch.close();
+            }
+            Main.endBatch();
+        }
+        System.out.printf("Ran %d commands: %d ok, %d failed.%n",
+                _succeeded + _failed, _succeeded, _failed);
+    }
+
+    /** Runs the command ARGS, whose text is LINE, and reports its status.
+     * If it fails, restores the in-memory repository of the session to its
+     * state before the command. */
+    private void execute(String line, String[] args) {
+        Gitlet gitlet = Main.sessionGitlet();
+        byte[] snapshot = gitlet == null ? null : Utils.serialize(gitlet);
+        int pending = _pending;
+        try {
+            if (args[0].equals("batch")) {
+                Main.exitWithError("Cannot run batch inside a batch.");
+            }
+            Main.run(args);
+            _succeeded += 1;
+            System.out.println("[ok] " + line);
+            if (_flushEvery > 0 && _pending >= _flushEvery) {
+                flush();
+            }
+        } catch (GitletException | IllegalArgumentException excp) {
+            _failed += 1;
+            _pending = pending;
+            Main.restoreSession(snapshot == null ? null
+                    : Utils.deserialize(snapshot, Gitlet.class));
+            System.out.println("[error] " + line + ": " + excp.getMessage());
+        }
+    }
+
+    /** Records that the current command has changed the repository. */
+    void modified() {
+        _pending += 1;
+    }
+
+    /** Saves the repository of this session, if it has changed since it was
+     * last saved. */
+    void flush() {
+        Gitlet gitlet = Main.sessionGitlet();
+        if (_pending > 0 && gitlet != null) {
+            gitlet.saveGitlet();
+        }
+        _pending = 0;
+    }
+
+    /** Returns the words of LINE, separated by blanks, with quoted words
+     * unquoted. */
+    static List<String> split(String line) {
+        ArrayList<String> words = new ArrayList<>();
+        StringBuilder word = null;
+        char quote = 0;
+        for (int i = 0; i < line.length(); i += 1) {
+            char c = line.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                } else {
+                    word.append(c);
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+                if (word == null) {
+                    word = new StringBuilder();
+                }
+            } else if (Character.isWhitespace(c)) {
+                if (word != null) {
+                    words.add(word.toString());
+                    word = null;
+                }
+            } else {
+                if (word == null) {
+                    word = new StringBuilder();
+                }
+                word.append(c);
+            }
+        }
+        if (word != null) {
+            words.add(word.toString());
+        }
+        return words;
+    }
+
+    /** The number of changing commands between saves, or 0 to save only
+     * at the end. */
+    private final int _flushEvery;
+    /** True iff the session watches the working tree. */
+    private final boolean _watch;
+    /** The number of commands that changed the repository since it was last
+     * saved. */
+    private int _pending;
+    /** The number of commands that succeeded. */
+    private int _succeeded;
+    /** The number of commands that failed. */
+    private int _failed;
+}
@@ -0,0 +1,103 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/** The reachability bitmaps of a pack, stored next to its index as
+ * NAME.bitmap.  For each of a few selected commits (the branch tips when
+ * the pack was made), it holds the bitmap over pack positions of every
+ * object reachable from that commit: the commit, its ancestors, and the
+ * blobs of all their trees.  The set of objects reachable from such a
+ * commit is then read off its bitmap rather than found by walking the
+ * commit graph.
+ * @author Chris Zhan */
+class BitmapIndex {
+
+    /** The first word of every bitmap file. */
+    private static final int MAGIC = 0x4742544d;
+    /** The bitmap format version. */
+    private static final int VERSION = 1;
+
+    /** An index holding BITMAPS, keyed by commit id. */
+    BitmapIndex(SortedMap<ObjectId, EwahBitmap> bitmaps) {
+        _bitmaps = new TreeMap<>(bitmaps);
+    }
+
+    /** Returns the bitmap of the commit with id COMMIT, or null if that
+     * commit has none. */
+    EwahBitmap get(ObjectId commit) {
+        return _bitmaps.get(commit);
+    }
+
+    /** Returns the ids of the commits with bitmaps, in increasing
+     * order. */
+    Set<ObjectId> commits() {
+        return Collections.unmodifiableSet(_bitmaps.keySet());
+    }
+
+    /** Returns the number of commits with bitmaps. */
+    int size() {
+        return _bitmaps.size();
+    }
+
+    /** Returns the bitmap index in FILE, or null if there is no such
+     * file. */
+    static BitmapIndex read(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw Utils.error("bad bitmap index: %s", file.getName());
+            }
+            int size = in.readInt();
+            TreeMap<ObjectId, EwahBitmap> bitmaps = new TreeMap<>();
+            for (int i = 0; i < size; i += 1) {
+                ObjectId commit = ObjectId.read(in);
+                bitmaps.put(commit, EwahBitmap.read(in));
+            }
+            return new BitmapIndex(bitmaps);
+        } catch (IOException excp) {
+            throw Utils.error("cannot read bitmap index %s: %s",
+                    file.getName(), excp.getMessage());
+        }
+    }
+
+    /** Writes this index to FILE, replacing it atomically. */
+    void write(File file) {
+        try {
+            File temp = File.createTempFile("tmp-", ".bitmap",
+                    file.getParentFile());
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(_bitmaps.size());
+                for (Map.Entry<ObjectId, EwahBitmap> entry
+                        : _bitmaps.entrySet()) {
+                    entry.getKey().write(out);
+                    entry.getValue().write(out);
+                }
+            }
+            ObjectStore.moveAtomically(temp, file);
+        } catch (IOException excp) {
+            throw Utils.error("cannot write bitmap index: %s",
+                    excp.getMessage());
+        }
+    }
+
+    /** The bitmap of each selected commit. */
+    private final TreeMap<ObjectId, EwahBitmap> _bitmaps;
+}
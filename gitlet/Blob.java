@@ -1,27 +1,222 @@
 package gitlet;
-import java.io.Serializable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
-/** The blob class consists of a serialized representation of the file.
+/** The contents of a file, as kept in the object store.  A file smaller
+ * than CHUNK_THRESHOLD bytes is stored whole.  A larger one is split by a
+ * Chunker into chunks, each stored as an object of its own, and its blob
+ * holds only the list of their ids, so that a small edit to a large file
+ * stores only the chunks around the edit, and the file can be hashed,
+ * stored and checked out without ever being held in memory.  Either way,
+ * the id of a blob is the SHA-1 of the file's bytes, which are never
+ * decoded as text, so that binary files come back exactly as they were.
+ *
+ * The stored form of a blob is a tag byte, WHOLE or CHUNKED, followed by
+ * the contents for WHOLE, or for CHUNKED by the length of the contents (a
+ * long), the number of chunks (an int) and their 20-byte ids.
  * @author Chris Zhan */
-public class Blob implements Serializable {
+public class Blob {
+
+    /** The size in bytes from which files are chunked: the value of the
+     * environment variable GITLET_CHUNK_THRESHOLD, or 1 MiB. */
+    static final long CHUNK_THRESHOLD = chunkThreshold();
+
+    /** The number of leading bytes examined by isBinary. */
+    static final int BINARY_SNIFF = 8000;
+
+    /** The tag of a blob stored whole. */
+    static final byte WHOLE = 0;
+    /** The tag of a blob stored as a list of chunks. */
+    static final byte CHUNKED = 1;
 
     /** Initializing a blob reads in a file.
      * @param file A regular file. */
     Blob(File file) {
-        byteContents = Utils.readContents(file);
-        stringContents = Utils.readContentsAsString(file);
+        this(Utils.readContents(file));
+    }
+
+    /** A blob holding CONTENTS, which must be shorter than
+     * CHUNK_THRESHOLD. */
+    Blob(byte[] contents) {
+        byteContents = contents;
+        size = contents.length;
+        chunks = null;
+    }
+
+    /** A blob with id ID of SIZE bytes, held in the chunks with ids
+     * CHUNKS. */
+    Blob(ObjectId id, long size, List<ObjectId> chunks) {
+        this.id = id;
+        this.size = size;
+        this.chunks = chunks.toArray(new ObjectId[0]);
+        byteContents = null;
+    }
+
+    /** Returns the blob with id ID whose stored form is STORED.  Throws
+     * IllegalArgumentException if STORED is malformed. */
+    static Blob decode(ObjectId id, byte[] stored) {
+        if (stored.length == 0) {
+            throw new IllegalArgumentException("empty blob");
+        }
+        if (stored[0] == WHOLE) {
+            Blob result = new Blob(Arrays.copyOfRange(stored, 1,
+                    stored.length));
+            result.id = id;
+            return result;
+        } else if (stored[0] != CHUNKED) {
+            throw new IllegalArgumentException("bad blob tag");
+        }
+        try {
+            DataInputStream in = new DataInputStream(
+                    new ByteArrayInputStream(stored, 1,
+                            stored.length - 1));
+            long size = in.readLong();
+            ObjectId[] ids = new ObjectId[in.readInt()];
+            for (int k = 0; k < ids.length; k += 1) {
+                ids[k] = ObjectId.read(in);
+            }
+            if (in.read() != -1) {
+                throw new IllegalArgumentException("bad chunk list");
+            }
+            return new Blob(id, size, Arrays.asList(ids));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException("bad chunk list");
+        }
+    }
+
+    /** Returns the stored form of this blob. */
+    byte[] encode() {
+        if (chunks == null) {
+            byte[] result = new byte[byteContents.length + 1];
+            result[0] = WHOLE;
+            System.arraycopy(byteContents, 0, result, 1, byteContents.length);
+            return result;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(CHUNKED);
+            out.writeLong(size);
+            out.writeInt(chunks.length);
+            for (ObjectId chunk : chunks) {
+                chunk.write(out);
+            }
+        } catch (IOException excp) {
+            throw new IllegalStateException(excp);
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Returns the id FILE would be stored under, reading it as a stream
+     * if it is large enough to be chunked. */
+    static ObjectId idOf(File file) {
+        Trace.count(Trace.Counter.FILES_HASHED, 1);
+        Events.FileHash event = new Events.FileHash();
+        event.begin();
+        ObjectId result;
+        if (file.length() < CHUNK_THRESHOLD) {
+            result = new Blob(file).id();
+        } else {
+            Trace.count(Trace.Counter.BYTES_READ, file.length());
+            MessageDigest digest = Utils.newSha1Digest();
+            byte[] buffer = new byte[Chunker.MAX_SIZE];
+            try (InputStream in = new FileInputStream(file)) {
+                for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                    digest.update(buffer, 0, n);
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            result = ObjectId.of(digest.digest());
+        }
+        event.report(file, result, false);
+        return result;
+    }
+
+    /** Returns true iff CONTENTS, the start of a file, looks binary rather
+     * than textual: that is, iff one of its first BINARY_SNIFF bytes is
+     * zero, as in git. */
+    static boolean isBinary(byte[] contents) {
+        int n = Math.min(contents.length, BINARY_SNIFF);
+        for (int i = 0; i < n; i += 1) {
+            if (contents[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns true iff this blob is stored as a list of chunks. */
+    boolean chunked() {
+        return chunks != null;
+    }
+
+    /** Returns the ids of the chunks of this blob, in order, or an empty
+     * list if it is stored whole. */
+    List<ObjectId> chunks() {
+        return chunks == null ? Collections.emptyList()
+                : Collections.unmodifiableList(Arrays.asList(chunks));
+    }
+
+    /** Returns the length of the contents of this blob. */
+    long size() {
+        return size;
     }
+
+    /** Returns an estimate of the bytes of memory this blob takes, for
+     * the blob cache. */
+    long estimatedSize() {
+        return 64 + (chunks == null ? byteContents.length
+                : 48L * chunks.length);
+    }
+
+    /** Returns the contents of this blob, which must be stored whole. */
     byte[] byteContents() {
         return byteContents;
     }
 
-    String stringContents() {
-        return stringContents;
+    /** Returns the id of this blob, the SHA-1 of its contents. */
+    ObjectId id() {
+        if (id == null) {
+            id = computeId();
+        }
+        return id;
+    }
+
+    /** Returns the id of this blob, which must be stored whole, computed
+     * afresh from its contents. */
+    ObjectId computeId() {
+        return Utils.sha1Id(byteContents);
+    }
+
+    /** Returns the chunk threshold set in the environment. */
+    private static long chunkThreshold() {
+        String value = System.getenv("GITLET_CHUNK_THRESHOLD");
+        if (value != null) {
+            try {
+                return Math.max(1, Long.parseLong(value.trim()));
+            } catch (NumberFormatException excp) {
+                /* Fall back on the default. */
+            }
+        }
+        return 1 << 20;
     }
 
-    /** The byte contents of a blob. */
+    /** The byte contents of a blob stored whole, or null. */
     private final byte[] byteContents;
-    /** The string contents of a blob. */
-    private final String stringContents;
+    /** The length of the contents of this blob. */
+    private final long size;
+    /** The ids of the chunks of a chunked blob, or null. */
+    private final ObjectId[] chunks;
+    /** The id of this blob, once computed. */
+    private ObjectId id;
 }
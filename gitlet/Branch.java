@@ -1,27 +1,69 @@
 package gitlet;
 
-import java.io.Serializable;
-
-public class Branch implements Serializable {
+/** A branch of the repository in Main.CWD: a ref (see Refs) and the
+ * commit it points to, read on first use.  Pointing a branch to another
+ * commit saves its ref at once. */
+public class Branch {
+    /** A new branch named BRANCHNAME pointing to NEWNODE, whose ref is
+     * saved. */
     Branch(String branchName, CommitTree.CommitNode newNode) {
         name = branchName;
-        node = newNode;
+        setNode(newNode);
+    }
+
+    /** A branch named BRANCHNAME pointing to the commit with id ID, which
+     * is read on first use. */
+    Branch(String branchName, String id) {
+        name = branchName;
+        nodeId = id;
+    }
+
+    /** Points this branch to the commit with id ID, which is read on first
+     * use, and saves its ref. */
+    void setNodeId(String id) {
+        nodeId = id;
+        node = null;
+        Refs.local().set(name, ObjectId.fromHex(id));
     }
 
+    /** Points this branch to NEWNODE and saves its ref. */
     void setNode(CommitTree.CommitNode newNode) {
         node = newNode;
+        nodeId = newNode.sha1();
+        Refs.local().set(name, newNode.id());
+    }
+
+    /** Forgets the commit this branch points to, which is read again on
+     * next use. */
+    void forgetNode() {
+        node = null;
     }
 
     String name() {
         return name;
     }
+
+    /** Accessor method for the id of the node this branch points to.
+     * @return the id of the node. */
+    String nodeId() {
+        return nodeId;
+    }
+
+    /** Returns the node that this branch points to, reading it on first
+     * use. */
     CommitTree.CommitNode node() {
+        if (node == null) {
+            node = CommitTree.readCommit(nodeId);
+        }
         return node;
     }
 
     /** The name of this branch. */
     private final String name;
 
-    /** The node that this branch points to. */
+    /** The id of the node that this branch points to. */
+    private String nodeId;
+
+    /** The node that this branch points to, once read. */
     private CommitTree.CommitNode node;
 }
@@ -0,0 +1,214 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** A bundle: branches and the objects they need, in a single file that is
+ * written and read sequentially, for moving history between machines that
+ * share no file system.
+ *
+ * A bundle starts with a text header: the line "# gitlet bundle v1", then
+ * a line "base ID" for each commit the bundle assumes its reader already
+ * has, then a line "ref ID NAME" for each branch, then a line "shallow ID"
+ * for each commit in the bundle whose parents it leaves out, then an empty
+ * line.  The objects follow: their count, then for each object its
+ * 20-byte id, its type (Pack.BLOB, Pack.COMMIT or Pack.CHUNK), the length
+ * of its stored bytes and the bytes themselves, in order of increasing
+ * id.  The file ends with the
+ * SHA-1 of everything before it.  A bundle with bases is incremental: it
+ * leaves out every object reachable from a base.  A bundle of limited
+ * depth makes its reader shallow.
+ * @author Chris Zhan */
+class Bundle {
+
+    /** The first line of every bundle. */
+    private static final String SIGNATURE = "# gitlet bundle v1";
+
+    /** Writes to FILE a bundle of the branches REFS (names to commit ids)
+     * from STORE, leaving out the objects reachable from the commits BASES
+     * and the commits more than DEPTH commits from a branch head.
+     * @return the number of objects written. */
+    static int create(File file, ObjectStore store,
+                      Map<String, ObjectId> refs, Collection<ObjectId> bases,
+                      int depth) {
+        ObjectIdSet based = store.bitmapReachable(bases);
+        if (based == null) {
+            based = new ObjectIdSet();
+            ObjectWalk baseWalk = new ObjectWalk(store, bases,
+                    Integer.MAX_VALUE, id -> false,
+                    (id, type) -> type != Pack.COMMIT);
+            for (CommitTree.CommitNode commit : baseWalk.commits()) {
+                based.add(commit.id());
+                FileTree files = commit.files();
+                for (int k = 0; k < files.size(); k += 1) {
+                    based.add(files.id(k));
+                }
+            }
+        }
+        ObjectIdSet have = based;
+        ObjectWalk objects = new ObjectWalk(store, refs.values(), depth,
+                have::contains, (id, type) -> have.contains(id), have);
+        File dir = file.getAbsoluteFile().getParentFile();
+        try {
+            File temp = File.createTempFile("tmp-", ".bundle", dir);
+            MessageDigest digest = Utils.newSha1Digest();
+            try (FileOutputStream raw = new FileOutputStream(temp)) {
+                DataOutputStream out = new DataOutputStream(
+                        new DigestOutputStream(new BufferedOutputStream(raw),
+                                digest));
+                StringBuilder header = new StringBuilder(SIGNATURE + "\n");
+                for (ObjectId base : bases) {
+                    header.append("base ").append(base).append("\n");
+                }
+                for (Map.Entry<String, ObjectId> ref : refs.entrySet()) {
+                    header.append("ref ").append(ref.getValue()).append(" ")
+                            .append(ref.getKey()).append("\n");
+                }
+                for (ObjectId id : objects.boundary()) {
+                    header.append("shallow ").append(id).append("\n");
+                }
+                header.append("\n");
+                out.write(header.toString().getBytes(StandardCharsets.UTF_8));
+                out.writeInt(objects.size());
+                for (int k = 0; k < objects.size(); k += 1) {
+                    byte[] contents = store.readRaw(objects.id(k),
+                            objects.type(k));
+                    objects.id(k).write(out);
+                    out.writeByte(objects.type(k));
+                    out.writeInt(contents.length);
+                    out.write(contents);
+                }
+                out.flush();
+                raw.write(digest.digest());
+            }
+            ObjectStore.moveAtomically(temp, file);
+        } catch (IOException excp) {
+            throw Utils.error("cannot write bundle: %s", excp.getMessage());
+        }
+        return objects.size();
+    }
+
+    /** Reads the bundle in FILE, checking its checksum, and adds the
+     * objects in it that STORE lacks to STORE, as a new pack, updating the
+     * graft points of STORE to match.  Exits with
+     * an error if FILE is not a valid bundle or STORE lacks one of its
+     * bases. */
+    Bundle(File file, ObjectStore store) {
+        if (!file.isFile()) {
+            Main.exitWithError("File does not exist.");
+        }
+        MessageDigest digest = Utils.newSha1Digest();
+        try (DigestInputStream digested = new DigestInputStream(
+                new BufferedInputStream(new FileInputStream(file)), digest);
+             Pack.Writer pack = new Pack.Writer(store.packDirectory())) {
+            DataInputStream in = new DataInputStream(digested);
+            if (!SIGNATURE.equals(readLine(in))) {
+                Main.exitWithError("Not a bundle file.");
+            }
+            for (String line = readLine(in); !line.isEmpty();
+                 line = readLine(in)) {
+                String[] words = line.split(" ", 3);
+                if (words[0].equals("base") && words.length == 2) {
+                    _bases.add(ObjectId.fromHex(words[1]));
+                } else if (words[0].equals("ref") && words.length == 3) {
+                    _refs.put(words[2], ObjectId.fromHex(words[1]));
+                } else if (words[0].equals("shallow") && words.length == 2) {
+                    _boundary.add(ObjectId.fromHex(words[1]));
+                } else {
+                    Main.exitWithError("Bundle is corrupt.");
+                }
+            }
+            for (ObjectId base : _bases) {
+                if (!store.hasCommit(base)) {
+                    Main.exitWithError("Bundle requires commit " + base
+                            + ", which this repository lacks.");
+                }
+            }
+            int count = in.readInt();
+            for (int k = 0; k < count; k += 1) {
+                ObjectId id = ObjectId.read(in);
+                byte type = in.readByte();
+                if (type != Pack.BLOB && type != Pack.COMMIT
+                        && type != Pack.CHUNK) {
+                    Main.exitWithError("Bundle is corrupt.");
+                }
+                byte[] contents = new byte[in.readInt()];
+                in.readFully(contents);
+                if (!store.has(id, type)) {
+                    pack.add(id, type, contents);
+                    if (type == Pack.COMMIT) {
+                        _commits.add(Utils.deserialize(contents,
+                                CommitTree.CommitNode.class));
+                    }
+                }
+            }
+            digested.on(false);
+            byte[] expected = digest.digest();
+            byte[] actual = new byte[expected.length];
+            in.readFully(actual);
+            if (!Arrays.equals(expected, actual) || in.read() != -1) {
+                Main.exitWithError("Bundle is corrupt.");
+            }
+            if (pack.size() > 0) {
+                store.addPack(pack.finish());
+            }
+            store.shallow().update(_boundary, store);
+        } catch (EOFException | IllegalArgumentException excp) {
+            Main.exitWithError("Bundle is corrupt.");
+        } catch (IOException excp) {
+            throw Utils.error("cannot read bundle: %s", excp.getMessage());
+        }
+    }
+
+    /** Returns the branches of this bundle: names to commit ids. */
+    Map<String, ObjectId> refs() {
+        return _refs;
+    }
+
+    /** Returns the commits added from this bundle, in the order in which
+     * they appear in it. */
+    List<CommitTree.CommitNode> commits() {
+        return _commits;
+    }
+
+    /** Returns the next line of IN, without its terminating newline. */
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        for (int c = in.read(); c != '\n'; c = in.read()) {
+            if (c < 0) {
+                throw new EOFException();
+            }
+            line.write(c);
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+
+    /** The commits the bundle assumes its reader has. */
+    private final ArrayList<ObjectId> _bases = new ArrayList<>();
+    /** The commits of the bundle whose parents it leaves out. */
+    private final ArrayList<ObjectId> _boundary = new ArrayList<>();
+    /** The branches of the bundle. */
+    private final TreeMap<String, ObjectId> _refs = new TreeMap<>();
+    /** The commits added from the bundle. */
+    private final ArrayList<CommitTree.CommitNode> _commits =
+            new ArrayList<>();
+}
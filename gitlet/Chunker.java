@@ -0,0 +1,95 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/** Content-defined chunking of a stream of bytes.  A rolling "gear" hash
+ * is updated with each byte (h = (h << 1) + GEAR[byte]), so that it
+ * depends only on the last 64 bytes read, and a chunk ends where the
+ * MASK_BITS high bits of the hash are all zero.  (Bit I of the hash
+ * depends on only the last I + 1 bytes, so the low bits would see too
+ * little.)  Since chunk boundaries
+ * depend only on nearby content, an edit to a file changes only the chunks
+ * around it, and the other chunks keep their ids.  Chunks are between
+ * MIN_SIZE and MAX_SIZE bytes long, and about MIN_SIZE + 2^MASK_BITS
+ * bytes on average.
+ * @author Chris Zhan */
+class Chunker {
+
+    /** The smallest chunk, except for the last chunk of a stream. */
+    static final int MIN_SIZE = 16 * 1024;
+    /** The largest chunk. */
+    static final int MAX_SIZE = 256 * 1024;
+
+    /** The number of bits of the hash that must be zero at the end of a
+     * chunk. */
+    static final int MASK_BITS = 16;
+
+    /** The bits of the hash that must be zero at the end of a chunk. */
+    private static final long MASK = -1L << (Long.SIZE - MASK_BITS);
+
+    /** A random value for each byte value, fixed for all time, since chunk
+     * boundaries, and so chunk ids, depend on it. */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        Random random = new Random(0x676974_6c6574L);
+        for (int b = 0; b < GEAR.length; b += 1) {
+            GEAR[b] = random.nextLong();
+        }
+    }
+
+    /** Returns the id of the chunk CHUNK: the SHA-1 of its bytes, after
+     * a prefix that keeps chunk ids apart from the ids of blobs with the
+     * same contents, so that a pack never holds two objects with one id. */
+    static ObjectId idOf(byte[] chunk) {
+        return Utils.sha1Id("chunk\0", chunk);
+    }
+
+    /** A chunker of the bytes of IN. */
+    Chunker(InputStream in) {
+        _in = in;
+    }
+
+    /** Returns the next chunk, or null at the end of the stream. */
+    byte[] next() throws IOException {
+        fill();
+        if (_end == 0) {
+            return null;
+        }
+        int cut = Math.min(_end, MAX_SIZE);
+        long hash = 0;
+        for (int i = 0; i < cut; i += 1) {
+            hash = (hash << 1) + GEAR[_buffer[i] & 0xff];
+            if (i + 1 >= MIN_SIZE && (hash & MASK) == 0) {
+                cut = i + 1;
+                break;
+            }
+        }
+        byte[] chunk = Arrays.copyOf(_buffer, cut);
+        System.arraycopy(_buffer, cut, _buffer, 0, _end - cut);
+        _end -= cut;
+        return chunk;
+    }
+
+    /** Reads from the stream until the buffer holds MAX_SIZE bytes or the
+     * stream ends. */
+    private void fill() throws IOException {
+        while (_end < _buffer.length) {
+            int n = _in.read(_buffer, _end, _buffer.length - _end);
+            if (n < 0) {
+                return;
+            }
+            _end += n;
+        }
+    }
+
+    /** The stream being chunked. */
+    private final InputStream _in;
+    /** Bytes read from the stream and not yet returned. */
+    private final byte[] _buffer = new byte[MAX_SIZE];
+    /** The number of bytes in _buffer. */
+    private int _end;
+}
@@ -0,0 +1,291 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** An append-only index of commit metadata, so that global-log and find
+ * never have to deserialize the commits in .gitlet/commits.
+ *
+ * The index lives in .gitlet/index and consists of three parts: RECORDS,
+ * a sequence of fixed-length records, each the 20-byte id of a commit and
+ * the offset of its entry in MESSAGES; MESSAGES, an entry for each commit
+ * holding its formatted timestamp and its log message, each as a length
+ * and then UTF-8 bytes; and the FIND_DIRECTORY, an inverted index from the
+ * SHA-1 of a log message to the ids of the commits carrying it, one line
+ * per commit, bucketed by the first two hex digits of that SHA-1.
+ *
+ * An append may be interrupted at any point, and must not spoil the
+ * entries appended after it.  It writes the entry in MESSAGES before the
+ * record that points to it, and records find their entries by offset, so
+ * an entry left behind is skipped.  A record cut short is ignored by
+ * readers, and is cut off by the next append, which finds that RECORDS is
+ * not a whole number of records long.  Likewise, a bucket line cut short
+ * is ignored by find, and ended before the next line is appended.
+ * @author Chris Zhan */
+class CommitIndex {
+
+    /** Folder holding the commit index. */
+    static final File INDEX_DIRECTORY = Utils.join(Gitlet.GITLET_DIRECTORY,
+            "index");
+
+    /** File holding one record per commit. */
+    static final File RECORDS = Utils.join(INDEX_DIRECTORY, "records");
+
+    /** The length of each record: a commit id and a long offset. */
+    static final int RECORD_SIZE = 20 + 8;
+
+    /** File holding the timestamp and log message of every commit. */
+    static final File MESSAGES = Utils.join(INDEX_DIRECTORY, "messages");
+
+    /** Folder holding the message -> commit id buckets. */
+    static final File FIND_DIRECTORY = Utils.join(INDEX_DIRECTORY, "find");
+
+    /** Returns true iff the index has been created for this repository. */
+    static boolean exists() {
+        return RECORDS.isFile();
+    }
+
+    /** Creates an empty index, discarding any existing one, including the
+     * commits file of the variable-length records of earlier versions. */
+    static void create() {
+        INDEX_DIRECTORY.mkdir();
+        FIND_DIRECTORY.mkdir();
+        Utils.join(INDEX_DIRECTORY, "commits").delete();
+        Utils.writeContents(RECORDS, new byte[0]);
+        Utils.writeContents(MESSAGES, new byte[0]);
+        List<String> buckets = Utils.plainFilenamesIn(FIND_DIRECTORY);
+        for (String bucket : buckets) {
+            Utils.join(FIND_DIRECTORY, bucket).delete();
+        }
+    }
+
+    /** Discards the index of the repository whose .gitlet directory is
+     * GITLETDIRECTORY, after commits were added to it from outside; the
+     * index is rebuilt when it is next needed. */
+    static void invalidate(File gitletDirectory) {
+        Utils.join(gitletDirectory, INDEX_DIRECTORY.getName(),
+                RECORDS.getName()).delete();
+    }
+
+    /** Appends the commit with the given ID, formatted TIMESTAMP and
+     * MESSAGE to the index. */
+    static void append(String id, String timestamp, String message) {
+        try {
+            long offset = MESSAGES.length();
+            try (DataOutputStream messages = new DataOutputStream(
+                    new BufferedOutputStream(
+                            new FileOutputStream(MESSAGES, true)))) {
+                writeString(messages, timestamp);
+                writeString(messages, message);
+            }
+            ByteArrayOutputStream record =
+                    new ByteArrayOutputStream(RECORD_SIZE);
+            DataOutputStream out = new DataOutputStream(record);
+            ObjectId.fromHex(id).write(out);
+            out.writeLong(offset);
+            appendRecord(record.toByteArray());
+            appendLine(bucketFile(message),
+                    Utils.sha1(message) + " " + id + "\n");
+        } catch (IOException excp) {
+            throw Utils.error("Could not update the commit index: %s",
+                    excp.getMessage());
+        }
+    }
+
+    /** Writes RECORD at the end of RECORDS in a single write, first
+     * cutting off any record an interrupted append left incomplete. */
+    private static void appendRecord(byte[] record) throws IOException {
+        try (RandomAccessFile records = new RandomAccessFile(RECORDS, "rw")) {
+            long end = records.length() - records.length() % RECORD_SIZE;
+            records.setLength(end);
+            records.seek(end);
+            records.write(record);
+        }
+    }
+
+    /** Writes LINE at the end of FILE in a single write, first ending any
+     * line an interrupted append left incomplete. */
+    private static void appendLine(File file, String line)
+        throws IOException {
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            long end = out.length();
+            if (end > 0) {
+                out.seek(end - 1);
+                if (out.read() != '\n') {
+                    line = "\n" + line;
+                }
+            }
+            out.seek(end);
+            out.write(line.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /** Writes TEXT to OUT as its length in UTF-8 and then its UTF-8
+     * bytes. */
+    private static void writeString(DataOutputStream out, String text)
+        throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Returns the ids of all commits whose log message is exactly
+     * MESSAGE, in lexicographic order. */
+    static List<String> find(String message) {
+        ArrayList<String> result = new ArrayList<>();
+        File bucket = bucketFile(message);
+        if (!bucket.isFile()) {
+            return result;
+        }
+        String key = Utils.sha1(message);
+        try (BufferedReader in = new BufferedReader(new FileReader(bucket))) {
+            for (String line = in.readLine(); line != null;
+                 line = in.readLine()) {
+                String id = line.substring(
+                        Math.min(key.length() + 1, line.length()));
+                if (line.startsWith(key + " ") && ObjectId.isHex(id)) {
+                    result.add(id);
+                }
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Could not read the commit index: %s",
+                    excp.getMessage());
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Returns a reader that streams every indexed commit in the order in
+     * which it was appended. */
+    static Reader reader() {
+        return new Reader();
+    }
+
+    /** Returns the bucket of the inverted index holding MESSAGE. */
+    private static File bucketFile(String message) {
+        return Utils.join(FIND_DIRECTORY, Utils.sha1(message).substring(0, 2));
+    }
+
+    /** Returns a stream reading FILE. */
+    private static DataInputStream readFrom(File file) throws IOException {
+        return new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file)));
+    }
+
+    /** A sequential reader over the records of the index.  Call next() to
+     * advance to each record, then read it with id(), timestamp() and
+     * message(). */
+    static class Reader implements AutoCloseable {
+
+        /** Opens the index for reading. */
+        private Reader() {
+            try {
+                _records = readFrom(RECORDS);
+                _messages = readFrom(MESSAGES);
+            } catch (IOException excp) {
+                throw Utils.error("Could not read the commit index: %s",
+                        excp.getMessage());
+            }
+        }
+
+        /** Advances to the next record.  A record cut short by an
+         * interrupted append counts as none.
+         * @return false when there are no records left. */
+        boolean next() {
+            try {
+                _id = ObjectId.read(_records).toString();
+                seekMessage(_records.readLong());
+                _timestamp = readString();
+                _message = readString();
+                return true;
+            } catch (EOFException excp) {
+                return false;
+            } catch (IOException excp) {
+                throw Utils.error("Could not read the commit index: %s",
+                        excp.getMessage());
+            }
+        }
+
+        /** Reads a string written by writeString from the stream of log
+         * messages. */
+        private String readString() throws IOException {
+            byte[] bytes = new byte[_messages.readInt()];
+            _messages.readFully(bytes);
+            _messagesPosition += 4 + bytes.length;
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /** Positions the stream of log messages at OFFSET.  Entries almost
+         * always follow one another, so the stream need only skip an entry
+         * abandoned by an interrupted append, and is reopened only if it
+         * has to go back. */
+        private void seekMessage(long offset) throws IOException {
+            if (offset < _messagesPosition) {
+                _messages.close();
+                _messages = readFrom(MESSAGES);
+                _messagesPosition = 0;
+            }
+            while (_messagesPosition < offset) {
+                long skipped = _messages.skip(offset - _messagesPosition);
+                if (skipped <= 0) {
+                    throw new EOFException();
+                }
+                _messagesPosition += skipped;
+            }
+        }
+
+        /** Returns the id of the current record. */
+        String id() {
+            return _id;
+        }
+
+        /** Returns the formatted timestamp of the current record. */
+        String timestamp() {
+            return _timestamp;
+        }
+
+        /** Returns the log message of the current record. */
+        String message() {
+            return _message;
+        }
+
+        @Override
+        public void close() {
+            try {
+                _records.close();
+                _messages.close();
+            } catch (IOException excp) {
+                throw Utils.error("Could not read the commit index: %s",
+                        excp.getMessage());
+            }
+        }
+
+        /** The stream of records. */
+        private final DataInputStream _records;
+        /** The stream of timestamps and log messages. */
+        private DataInputStream _messages;
+        /** The offset in MESSAGES of the next byte of _messages. */
+        private long _messagesPosition;
+        /** The id of the current record. */
+        private String _id;
+        /** The timestamp of the current record. */
+        private String _timestamp;
+        /** The log message of the current record. */
+        private String _message;
+    }
+}
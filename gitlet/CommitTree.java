@@ -1,31 +1,44 @@
 package gitlet;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.time.format.DateTimeFormatter;
 import java.time.ZoneId;
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Map;
 import java.util.Objects;
 import java.util.TreeMap;
 import java.io.Serializable;
 import java.time.ZonedDateTime;
 import java.util.LinkedList;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.stream.Collectors;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 
 /** The CommitTree is a tree-like data structure that stores Gitlet Commits.
  * @author Chris Zhan
  */
 public class CommitTree implements Serializable {
-    /** The head pointer for head. */
-    private Branch head;
-    /** The branches of this CommitTree. */
-    private TreeMap<String, Branch> branches = new TreeMap<>();
-    /** The current branch of this CommitTree. */
-    private Branch currentBranch;
+    /** The name of the current branch of this CommitTree. */
+    private String currentBranchName;
+    /** The branches of this CommitTree looked up so far, by name.  The
+     * branches themselves are kept as refs (see Refs), not in the saved
+     * CommitTree. */
+    private transient TreeMap<String, Branch> branches;
+    /** The paths of the .gitlet directories of the remotes, by name. */
+    private TreeMap<String, String> remotes = new TreeMap<>();
     /** The stage of this CommitTree. */
     private Staging stage;
-    /** Whether the next commit is the InitialCommit. */
-    private boolean isInitialCommit = true;
     /** Inital commit year. */
     private final int initialCommitYear = 1970;
 
@@ -34,6 +47,20 @@ public class CommitTree implements Serializable {
     static final File COMMIT_DIRECTORY = new File(Gitlet.GITLET_DIRECTORY,
             "commits");
 
+    /** The format of commit timestamps in logs. */
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter
+            .ofPattern("ccc LLL d HH:mm:ss yyyy Z");
+
+    /** The commits most recently read or made, by id, up to the budget set
+     * by the environment variable GITLET_COMMIT_CACHE, an eighth of the
+     * heap by default.  A commit is estimated by estimatedSize. */
+    private static final ObjectCache<CommitNode> LOADED_COMMITS =
+            new ObjectCache<>(ObjectCache.budget("GITLET_COMMIT_CACHE",
+                    Runtime.getRuntime().maxMemory() / 8),
+                    CommitTree::estimatedSize,
+                    Trace.Counter.COMMIT_CACHE_HITS,
+                    Trace.Counter.COMMIT_CACHE_MISSES);
+
     /** Initializes a CommitTree with ONE inital commit. */
     CommitTree() {
         createStage();
@@ -43,12 +70,12 @@ public class CommitTree implements Serializable {
                         ZoneId.of("UTC")),
                 "initial commit",
                 null,
-                null);
-        currentBranch = new Branch("master", initialCommit);
-        branches.put("master", currentBranch);
-        head = currentBranch;
-        COMMIT_DIRECTORY.mkdir();
+                null,
+                stage);
         createCommitFile(initialCommit);
+        currentBranchName = "master";
+        branches = new TreeMap<>();
+        branches.put("master", new Branch("master", initialCommit));
     }
 
     /** Creates the stage. */
@@ -59,39 +86,188 @@ public class CommitTree implements Serializable {
     /** Accessor method for head.
      * @return The head of the CommitTree. */
     Branch head() {
-        return head;
+        return branch(currentBranchName);
+    }
+
+    /** Accessor method for the branches.
+     * @return the branches, in order of their names. */
+    Collection<Branch> branches() {
+        ArrayList<Branch> result = new ArrayList<>();
+        for (Map.Entry<String, ObjectId> ref
+                : Refs.local().all().entrySet()) {
+            Branch branch = knownBranches().get(ref.getKey());
+            if (branch == null
+                    || !branch.nodeId().equals(ref.getValue().toString())) {
+                branch = new Branch(ref.getKey(), ref.getValue().toString());
+                knownBranches().put(ref.getKey(), branch);
+            }
+            result.add(branch);
+        }
+        return result;
+    }
+
+    /** Returns the branch named NAME, reading its ref on first use.
+     * @param name the name of the branch.
+     * @return the branch, or null if there is none. */
+    private Branch branch(String name) {
+        Branch result = knownBranches().get(name);
+        if (result == null) {
+            ObjectId id = Refs.local().get(name);
+            if (id != null) {
+                result = new Branch(name, id.toString());
+                knownBranches().put(name, result);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the branches looked up so far, by name. */
+    private TreeMap<String, Branch> knownBranches() {
+        if (branches == null) {
+            branches = new TreeMap<>();
+        }
+        return branches;
+    }
+
+    /** Accessor method for the stage.
+     * @return the stage. */
+    Staging stage() {
+        return stage;
+    }
+
+    /** Returns the commit with the given id, reading it from
+     * COMMIT_DIRECTORY unless it is in the commit cache.
+     * @param commitID the full id of the commit.
+     * @return the commit, or null if there is no commit with that id. */
+    static CommitNode readCommit(String commitID) {
+        if (!ObjectId.isHex(commitID)) {
+            return null;
+        }
+        ObjectId id = ObjectId.fromHex(commitID);
+        CommitNode commit = LOADED_COMMITS.get(id);
+        if (commit == null) {
+            commit = ObjectStore.local().readCommit(id);
+            if (commit == null) {
+                return null;
+            }
+            LOADED_COMMITS.put(id, commit);
+        }
+        return commit;
+    }
+
+    /** Returns an estimate of the bytes of memory COMMIT takes, for the
+     * commit cache: two references and an ObjectId for each file of its
+     * tree, whose paths are shared (see PathTable), and a little for its
+     * other fields.  (Kept out of CommitNode and FileTree, whose serialized
+     * forms would change with their methods.) */
+    private static long estimatedSize(CommitNode commit) {
+        return 256 + 48L * commit.files().size();
+    }
+
+    /** Empties the commit cache, so that later uses read commits afresh,
+     * with no ancestors computed.  Used by benchmarks to measure walks of
+     * the history from a cold start. */
+    static void forgetLoadedCommits() {
+        LOADED_COMMITS.clear();
     }
 
     /** Creates a file in the COMMIT_DIRECTORY that represents a COMMITNODE.
      * @param commit the CommitNode we are representing as a file inside
      *               COMMIT_DIRECTORY. */
     private void createCommitFile(CommitNode commit) {
-        File commitFile = Utils.join(COMMIT_DIRECTORY, commit.sha1);
-        try {
-            commitFile.createNewFile();
-        } catch (IOException e) {
-            e.printStackTrace();
+        ObjectStore.local().writeCommit(commit);
+        LOADED_COMMITS.put(commit.id(), commit);
+        if (CommitIndex.exists()) {
+            CommitIndex.append(commit.sha1, commit.strTimestamp,
+                    commit.logMessage);
+        } else {
+            indexCommits();
+        }
+    }
+
+    /** Builds the commit index from the contents of the object store if
+     * this repository predates it. */
+    private void indexCommits() {
+        if (CommitIndex.exists()) {
+            return;
+        }
+        reindexCommits();
+    }
+
+    /** Rebuilds the commit index from the commits in the object store. */
+    static void reindexCommits() {
+        Events.IndexRefresh event = new Events.IndexRefresh();
+        event.begin();
+        CommitIndex.create();
+        List<ObjectId> ids = ObjectStore.local().commitIds().toList();
+        for (ObjectId id : ids) {
+            CommitNode oneCommit = ObjectStore.local().readCommit(id);
+            CommitIndex.append(oneCommit.sha1, oneCommit.strTimestamp,
+                    oneCommit.logMessage);
+        }
+        if (event.shouldCommit()) {
+            event.commits = ids.size();
+            event.commit();
         }
-        Utils.writeObject(commitFile, commit);
     }
 
     /** Adds the file to the Staging area in preparation to be committed.
      * @param file a file to be added.
      * @param name the name of the file.*/
     void addFile(File file, String name) {
-        Blob fileBlob = new Blob(file);
-        if (head.node().files.containsKey(name)) {
-            String currentCommitSHA1 = Utils.sha1(head.node().files.get(name)
-                    .stringContents());
-            String toBeStagedFileSHA1 = Utils.sha1(fileBlob.stringContents());
-            if (currentCommitSHA1.equals(toBeStagedFileSHA1)) {
-                stage.stagedFiles().remove(name);
-                stage.stagedForRemoval().remove(name);
-            } else {
-                stage.addFile(fileBlob, name);
+        addBlob(name, ObjectStore.local().writeFile(file));
+    }
+
+    /** Adds the working files at PATHS to the Staging area.  The files are
+     * read, hashed and stored in parallel; the stage is then updated once.
+     * @param paths the working-tree paths of the files to be added. */
+    void addFiles(List<String> paths) {
+        ObjectStore store = ObjectStore.local();
+        List<ObjectId> ids;
+        try (Trace trace = Trace.phase("hash and store files")) {
+            ids = paths.parallelStream()
+                    .map(path -> store.writeFile(WorkingTree.file(path)))
+                    .collect(Collectors.toList());
+        }
+        for (int i = 0; i < paths.size(); i += 1) {
+            addBlob(paths.get(i), ids.get(i));
+        }
+    }
+
+    /** Adds every file in the working tree to the Staging area, and stages
+     * for removal every file of the head commit that is no longer in the
+     * working tree.  Files outside a sparse checkout are left alone.
+     * @return the number of files added. */
+    int addAll() {
+        List<String> paths = WorkingTree.files();
+        SparseCheckout sparse = SparseCheckout.local();
+        addFiles(paths);
+        for (String name : new ArrayList<>(stage.stagedFiles().keySet())) {
+            if (Collections.binarySearch(paths, name) < 0
+                    && sparse.includes(name)) {
+                stage.removeFile(name);
+            }
+        }
+        for (String name : head().node().files) {
+            if (Collections.binarySearch(paths, name) < 0
+                    && sparse.includes(name)) {
+                stage.stagedForRemoval().add(name);
             }
+        }
+        return paths.size();
+    }
+
+    /** Stages the stored blob BLOBID as the contents of NAME, unless that is
+     * already its content in the head commit, in which case NAME is
+     * unstaged instead.
+     * @param name the name of the file.
+     * @param blobID the id of its contents. */
+    private void addBlob(String name, ObjectId blobID) {
+        if (blobID.equals(head().node().files.get(name))) {
+            stage.stagedFiles().remove(name);
+            stage.stagedForRemoval().remove(name);
         } else {
-            stage.addFile(fileBlob, name);
+            stage.addId(name, blobID);
         }
     }
 
@@ -101,61 +277,185 @@ public class CommitTree implements Serializable {
     void commit(String message) {
         ZonedDateTime now = ZonedDateTime
                 .now(ZoneId.of(ZoneId.SHORT_IDS.get("PST")));
-        CommitNode newCommit = new CommitNode(now, message, head.node(), null);
-        createCommitFile(newCommit);
-        currentBranch.setNode(newCommit);
+        try (Trace trace = Trace.phase("write commit")) {
+            CommitNode newCommit = new CommitNode(now, message, head().node(),
+                    null, stage);
+            createCommitFile(newCommit);
+            head().setNode(newCommit);
+        }
         stage.clearStage();
         stage.clearRemovalStage();
     }
 
+    /** Commits the stage on the current branch as made at TIME, with
+     * second parent SECONDPARENT unless it is null, without touching the
+     * working tree or the commit index.  Used by RepoGenerator to build
+     * histories straight through the object store; it must rebuild the
+     * index afterwards.
+     * @param time the time of the commit.
+     * @param message the log message.
+     * @param secondParent the merged commit, or null.
+     * @return the new commit. */
+    CommitNode generateCommit(ZonedDateTime time, String message,
+                              CommitNode secondParent) {
+        CommitNode newCommit = new CommitNode(time, message, head().node(),
+                secondParent, stage, secondParent != null);
+        ObjectStore.local().writeCommit(newCommit);
+        head().setNode(newCommit);
+        stage.clearStage();
+        stage.clearRemovalStage();
+        return newCommit;
+    }
+
+    /** Makes the branch named BRANCHNAME current without touching the
+     * working tree, as RepoGenerator does between commits on different
+     * branches.  The stage must be empty.
+     * @param branchName the name of an existing branch. */
+    void switchBranch(String branchName) {
+        currentBranchName = branchName;
+    }
+
     /** Prints out a message displaying information about each commit,
      * going backwards along the CommitTree until the initial commit.
-     */
-    void log() {
-        CommitNode pointer = head.node();
-        while (pointer != null) {
-            System.out.println("===");
-            System.out.println("commit " + pointer.sha1);
-            System.out.println("Date: " + pointer.strTimestamp);
-            System.out.println(pointer.logMessage);
-            System.out.println();
-            pointer = pointer.commitParent;
+     * Commits are read one at a time as the walk reaches them, so the walk
+     * stops reading as soon as OPTIONS say no more commits will be shown.
+     * With --graph, every commit reachable from the head is shown instead,
+     * beside a graph of the history (see graphLog).
+     * @param options which commits to show, and how. */
+    void log(LogOptions options) {
+        PrintWriter out = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(System.out)));
+        int shown = 0;
+        try (Trace trace = Trace.phase("walk history")) {
+            if (options.graph()) {
+                graphLog(out, options);
+                out.flush();
+                return;
+            }
+            CommitNode pointer = head().node();
+            while (pointer != null && shown < options.maxCount()
+                    && pointer.epochSecond >= options.since()) {
+                if (pointer.epochSecond <= options.until()) {
+                    printLogEntry(out, pointer, options, "", "");
+                    shown += 1;
+                }
+                pointer = shown < options.maxCount() ? pointer.parent()
+                        : null;
+            }
+            out.flush();
         }
     }
 
+    /** Prints to OUT the log of every commit reachable from the head
+     * through any of its parents, as described by OPTIONS, beside the
+     * graph drawn by a LogGraph.  Commits are shown newest first, but
+     * never before all their children: the whole history is read first,
+     * to count the children of each commit, and a commit is ready to be
+     * shown once its children have been.  Among the ready commits, the
+     * newest is shown next, and of those made at the same time, the one
+     * that became ready last, so that a line of history is followed as
+     * long as possible.  Commits outside the time range of OPTIONS still
+     * move the graph on, but are not shown. */
+    private void graphLog(PrintWriter out, LogOptions options) {
+        Shallow shallow = ObjectStore.local().shallow();
+        HashMap<String, CommitNode> commits = new HashMap<>();
+        HashMap<String, Integer> children = new HashMap<>();
+        ArrayDeque<CommitNode> pending = new ArrayDeque<>();
+        CommitNode head = head().node();
+        commits.put(head.sha1, head);
+        pending.push(head);
+        while (!pending.isEmpty()) {
+            for (String parentId : shallow.parentIds(pending.pop())) {
+                children.merge(parentId, 1, Integer::sum);
+                if (!commits.containsKey(parentId)) {
+                    CommitNode parent = readCommit(parentId);
+                    commits.put(parentId, parent);
+                    pending.push(parent);
+                }
+            }
+        }
+        HashMap<String, Long> order = new HashMap<>();
+        PriorityQueue<CommitNode> ready = new PriorityQueue<>(
+                Comparator.comparingLong((CommitNode c) -> -c.epochSecond)
+                        .thenComparingLong(c -> -order.get(c.sha1)));
+        order.put(head.sha1, 0L);
+        ready.add(head);
+        LogGraph graph = new LogGraph();
+        List<String> between = Collections.emptyList();
+        int shown = 0;
+        while (!ready.isEmpty() && shown < options.maxCount()) {
+            CommitNode commit = ready.poll();
+            String first = graph.commitLine(commit.sha1);
+            boolean show = commit.epochSecond >= options.since()
+                    && commit.epochSecond <= options.until();
+            if (show) {
+                for (String line : between) {
+                    out.println(line);
+                }
+                printLogEntry(out, commit, options, first,
+                        graph.bodyLine());
+                shown += 1;
+            }
+            List<String> parentIds = shallow.parentIds(commit);
+            List<String> lines = graph.advance(parentIds);
+            if (show) {
+                between = lines;
+            }
+            for (String parentId : parentIds) {
+                if (children.merge(parentId, -1, Integer::sum) == 0) {
+                    order.put(parentId, (long) order.size());
+                    ready.add(commits.get(parentId));
+                }
+            }
+        }
+    }
+
+    /** Prints the log entry of COMMIT to OUT as described by OPTIONS, its
+     * first line starting with FIRST and the others with REST. */
+    private void printLogEntry(PrintWriter out, CommitNode commit,
+                               LogOptions options, String first,
+                               String rest) {
+        if (options.oneline()) {
+            out.println(first + commit.sha1.substring(0, 7) + " "
+                    + commit.logMessage);
+            return;
+        }
+        out.println(first + "===");
+        out.println(rest + "commit " + commit.sha1);
+        out.println(rest + "Date: " + commit.strTimestamp);
+        out.println(rest + commit.logMessage);
+        out.println(rest.stripTrailing());
+    }
+
     /** Prints out the global log. Every single
-     * CommitNode has printed details. */
+     * CommitNode has printed details, streamed from the commit index. */
     void globalLog() {
-        List<String> commitFiles = Utils.plainFilenamesIn(COMMIT_DIRECTORY);
-        for (String commitFileName : commitFiles) {
-            File commitFile = Utils.join(COMMIT_DIRECTORY, commitFileName);
-            CommitNode oneCommit = Utils
-                    .readObject(commitFile, CommitNode.class);
-            System.out.println("===");
-            System.out.println("commit " + oneCommit.sha1);
-            System.out.println("Date: " + oneCommit.strTimestamp);
-            System.out.println(oneCommit.logMessage);
-            System.out.println();
+        indexCommits();
+        PrintWriter out = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(System.out)));
+        try (CommitIndex.Reader commits = CommitIndex.reader()) {
+            while (commits.next()) {
+                out.println("===");
+                out.println("commit " + commits.id());
+                out.println("Date: " + commits.timestamp());
+                out.println(commits.message());
+                out.println();
+            }
         }
+        out.flush();
     }
 
     /** Finds a specific Commit passing in a log message.
      * @param commitMessage the log message used to find the commit. */
     void find(String commitMessage) {
-        List<String> commitFiles = Utils.plainFilenamesIn(COMMIT_DIRECTORY);
-        boolean foundCommit = false;
-        for (String commitFileName : commitFiles) {
-            File commitFile = Utils.join(COMMIT_DIRECTORY, commitFileName);
-            CommitNode oneCommit = Utils
-                    .readObject(commitFile, CommitNode.class);
-            if (commitMessage.equals(oneCommit.logMessage)) {
-                System.out.println(oneCommit.sha1);
-                foundCommit = true;
-            }
-        }
-        if (!foundCommit) {
+        indexCommits();
+        List<String> commitIds = CommitIndex.find(commitMessage);
+        if (commitIds.isEmpty()) {
             Main.exitWithError("Found no commit with that message.");
         }
+        for (String commitId : commitIds) {
+            System.out.println(commitId);
+        }
     }
 
     /** Unstages the file if it is currently staged for addition.
@@ -166,10 +466,9 @@ public class CommitTree implements Serializable {
     void rm(String fileName) {
         if (stage.stagedFiles().containsKey(fileName)) {
             stage.removeFile(fileName);
-        } else if (head.node().files.containsKey(fileName)) {
+        } else if (head().node().files.contains(fileName)) {
             stage.stagedForRemoval().add(fileName);
-            File removeInCWD = Utils.join(Main.CWD, fileName);
-            Utils.restrictedDelete(removeInCWD);
+            WorkingTree.delete(fileName);
         } else {
             Main.exitWithError("No reason to remove the file.");
         }
@@ -187,9 +486,9 @@ public class CommitTree implements Serializable {
     /** Helper method for status that prints out the branches of CommitTree. */
     void statusBranches() {
         System.out.println("=== Branches ===");
-        System.out.println("*" + currentBranch.name());
-        for (String branchName : branches.keySet()) {
-            if (!currentBranch.name().equals(branchName)) {
+        System.out.println("*" + currentBranchName);
+        for (String branchName : Refs.local().all().keySet()) {
+            if (!currentBranchName.equals(branchName)) {
                 System.out.println(branchName);
             }
         }
@@ -218,32 +517,45 @@ public class CommitTree implements Serializable {
     void statusUnstagedMods() {
         System.out.println("=== Modifications Not Staged For Commit ===");
         ArrayList<String> printQueue = new ArrayList<>();
-        List<String> filesCWD = Utils.plainFilenamesIn(Main.CWD);
-        for (String file : filesCWD) {
-            Blob currFile = new Blob(Utils.join(Main.CWD, file));
-            if (currentBranch.node().files.containsKey(file)) {
-                String commitSHA1 = Utils.sha1(currentBranch
-                        .node().files.get(file).stringContents());
-                if (!commitSHA1.equals(Utils.sha1(currFile.stringContents()))
-                        & !stage.stagedFiles().containsKey(file)) {
-                    printQueue.add(file + "(modified)");
-                }
-            } else if (stage.stagedFiles().containsKey(file)) {
-                String stageSHA1 = Utils.sha1(stage.stagedFiles()
-                        .get(file).stringContents());
-                if (!stageSHA1.equals(Utils.sha1(currFile.stringContents()))) {
-                    printQueue.add(file + "(modified)");
+        List<String> filesCWD = WorkingTree.files();
+        FileTree headFiles = head().node().files;
+        Events.TreeDiff event = new Events.TreeDiff();
+        event.begin();
+        try (Trace trace = Trace.phase("hash working files")) {
+            for (String file : filesCWD) {
+                ObjectId currFile = WorkingTree.idOf(file);
+                if (headFiles.contains(file)) {
+                    ObjectId commitSHA1 = headFiles.get(file);
+                    if (!commitSHA1.equals(currFile)
+                            & !stage.stagedFiles().containsKey(file)) {
+                        printQueue.add(file + "(modified)");
+                    }
+                } else if (stage.stagedFiles().containsKey(file)) {
+                    ObjectId stageSHA1 = stage.stagedFiles().get(file);
+                    if (!stageSHA1.equals(currFile)) {
+                        printQueue.add(file + "(modified)");
+                    }
                 }
             }
         }
+        if (event.shouldCommit()) {
+            event.operation = "status";
+            event.from = head().node().sha1();
+            event.to = "working tree";
+            event.files = filesCWD.size();
+            event.changed = printQueue.size();
+            event.commit();
+        }
         for (String file : stage.stagedFiles().keySet()) {
-            if (!filesCWD.contains(file)) {
+            if (Collections.binarySearch(filesCWD, file) < 0) {
                 printQueue.add(file + "(deleted)");
             }
         }
-        for (String file : currentBranch.node().files.keySet()) {
-            if (!stage.stagedForRemoval()
-                    .contains(file) & !filesCWD.contains(file)) {
+        SparseCheckout sparse = SparseCheckout.local();
+        for (String file : headFiles) {
+            if (!stage.stagedForRemoval().contains(file)
+                    & Collections.binarySearch(filesCWD, file) < 0
+                    && sparse.includes(file)) {
                 printQueue.add(file + "(deleted)");
             }
         }
@@ -259,15 +571,9 @@ public class CommitTree implements Serializable {
     void statusUntracked() {
         System.out.println("=== Untracked Files ===");
         ArrayList<String> printQueue = new ArrayList<>();
-        List<String> filesCWD = Utils.plainFilenamesIn(Main.CWD);
-        List<String> trackedCWD = Utils.plainFilenamesIn
-                (Gitlet.FILES_DIRECTORY);
+        List<String> filesCWD = WorkingTree.files();
         for (String file : filesCWD) {
-            File oneFile = Utils.join(Main.CWD, file);
-            Blob blob = new Blob(oneFile);
-            String fileSHA1 = Utils.sha1(blob.stringContents());
-            if (!trackedCWD.contains(fileSHA1)
-                    & !stage.stagedFiles().containsKey(file)) {
+            if (!isTracked(file)) {
                 printQueue.add(file);
             }
         }
@@ -278,6 +584,15 @@ public class CommitTree implements Serializable {
         System.out.println();
     }
 
+    /** Returns true iff the working file FILENAME is tracked: staged for
+     * addition, or in the head commit and not staged for removal.
+     * @param fileName the name of a file in the working directory. */
+    private boolean isTracked(String fileName) {
+        return stage.stagedFiles().containsKey(fileName)
+                || (head().node().files.contains(fileName)
+                    && !stage.stagedForRemoval().contains(fileName));
+    }
+
     /** Takes the version of the file in the head commit the
      * front of the current branch,
      * and puts it in the working directory, overwriting
@@ -286,113 +601,295 @@ public class CommitTree implements Serializable {
      * @param commit The commit to be checked out from.
      * @param fileName The fileName from the commit to be checked out. */
     void checkoutCommitNodeFile(CommitNode commit, String fileName) {
-        if (!commit.files.containsKey(fileName)) {
+        if (!commit.files.contains(fileName)) {
             Main.exitWithError("File does not exist in that commit.");
         }
-        Blob commitFile = commit.files.get(fileName);
-        String commitFileContents = commitFile.stringContents();
-        File cwdFile = Utils.join(Main.CWD, fileName);
-        if (cwdFile.exists()) {
-            Utils.writeContents(cwdFile, commitFileContents);
-        } else {
-            try {
-                cwdFile.createNewFile();
-            } catch (IOException e) {
-                e.printStackTrace();
+        WorkingTree.write(fileName, commit.files.get(fileName));
+    }
+
+    /** Writes the files of COMMIT that the sparse checkout includes into
+     * the working directory.
+     * @param commit the commit to be checked out. */
+    private void checkoutSparse(CommitNode commit) {
+        SparseCheckout sparse = SparseCheckout.local();
+        try (Trace trace = Trace.phase("write working files")) {
+            for (String fileName : commit.files) {
+                if (sparse.includes(fileName)) {
+                    checkoutCommitNodeFile(commit, fileName);
+                }
+            }
+        }
+    }
+
+    /** Takes the version of FILENAME in COMMIT for the next commit:
+     * stages it and, if the sparse checkout includes it, writes it into
+     * the working directory.
+     * @param commit the commit holding the wanted version.
+     * @param fileName the name of the file. */
+    private void takeFile(CommitNode commit, String fileName) {
+        if (SparseCheckout.local().includes(fileName)) {
+            checkoutCommitNodeFile(commit, fileName);
+        }
+        addBlob(fileName, commit.files.get(fileName));
+    }
+
+    /** Makes the working directory match a new sparse checkout: writes the
+     * files of the head commit that it includes and are missing, and
+     * deletes those it excludes, unless they are staged or have been
+     * modified.
+     * @param sparse the new sparse checkout. */
+    void applySparse(SparseCheckout sparse) {
+        FileTree files = head().node().files;
+        for (int k = 0; k < files.size(); k += 1) {
+            String fileName = files.path(k);
+            File file = WorkingTree.file(fileName);
+            if (sparse.includes(fileName)) {
+                if (!file.exists()) {
+                    checkoutCommitNodeFile(head().node(), fileName);
+                }
+            } else if (file.isFile()
+                    && !stage.stagedFiles().containsKey(fileName)
+                    && Blob.idOf(file).equals(files.id(k))) {
+                WorkingTree.delete(fileName);
             }
-            Utils.writeContents(cwdFile, commitFileContents);
         }
     }
 
     /** Creates a branch pointing at the head CommitNode.
      * @param branchName the name of the new branch. */
     void createBranch(String branchName) {
-        if (branches.containsKey(branchName)) {
+        if (branch(branchName) != null) {
             Main.exitWithError("A branch with that name already exists.");
         }
-        Branch newBranch = new Branch(branchName, head.node());
-        branches.put(branchName, newBranch);
+        Branch newBranch = new Branch(branchName, head().node());
+        knownBranches().put(branchName, newBranch);
+    }
+
+    /** Points the branch named BRANCHNAME to the commit with id COMMITID,
+     * creating the branch if it does not exist.
+     * @param branchName the name of the branch.
+     * @param commitID the full id of the commit. */
+    void setBranch(String branchName, String commitID) {
+        Branch branch = branch(branchName);
+        if (branch == null) {
+            branch = new Branch(branchName, commitID);
+            knownBranches().put(branchName, branch);
+        }
+        branch.setNodeId(commitID);
+    }
+
+    /** Records the repository whose .gitlet directory is at PATH, with
+     * '/' as separator, as the remote NAME.
+     * @param name the name of the remote.
+     * @param path the path of its .gitlet directory. */
+    void addRemote(String name, String path) {
+        if (remotes.containsKey(name)) {
+            Main.exitWithError("A remote with that name already exists.");
+        }
+        remotes.put(name, path.replace('/', File.separatorChar));
+    }
+
+    /** Forgets the remote NAME.
+     * @param name the name of the remote. */
+    void removeRemote(String name) {
+        if (remotes.remove(name) == null) {
+            Main.exitWithError("A remote with that name does not exist.");
+        }
+    }
+
+    /** Opens the remote NAME.
+     * @param name the name of the remote.
+     * @return the remote repository. */
+    private Remote openRemote(String name) {
+        if (!remotes.containsKey(name)) {
+            Main.exitWithError("A remote with that name does not exist.");
+        }
+        return Remote.open(remotes.get(name));
+    }
+
+    /** Copies the commits of the branch BRANCHNAME of the remote
+     * REMOTENAME that this repository lacks, with their blobs, and points
+     * the branch REMOTENAME/BRANCHNAME to the head of that branch.  Only
+     * the last DEPTH commits of the branch are copied; if that leaves out
+     * commits this repository lacks, it becomes shallow.
+     * @param remoteName the name of the remote.
+     * @param branchName the name of the branch of the remote.
+     * @param depth the number of commits to copy, at most. */
+    void fetch(String remoteName, String branchName, int depth) {
+        Remote remote = openRemote(remoteName);
+        ObjectId tip = remote.branch(branchName);
+        if (tip == null) {
+            Main.exitWithError("That remote does not have that branch.");
+        }
+        List<CommitNode> fetched = Remote.transfer(remote.store(),
+                ObjectStore.local(), tip, depth);
+        if (CommitIndex.exists()) {
+            for (int i = fetched.size() - 1; i >= 0; i -= 1) {
+                CommitNode commit = fetched.get(i);
+                CommitIndex.append(commit.sha1, commit.strTimestamp,
+                        commit.logMessage);
+            }
+        }
+        setBranch(remoteName + "/" + branchName, tip.toString());
+    }
+
+    /** Copies the commits of the current branch that the remote REMOTENAME
+     * lacks, with their blobs, and points its branch BRANCHNAME to the
+     * head of the current branch.  The remote branch must be in the
+     * history of the current branch.
+     * @param remoteName the name of the remote.
+     * @param branchName the name of the branch of the remote. */
+    void push(String remoteName, String branchName) {
+        Remote remote = openRemote(remoteName);
+        ObjectId remoteTip = remote.branch(branchName);
+        CommitNode localTip = head().node();
+        if (remoteTip != null && !isAncestor(remoteTip, localTip)) {
+            Main.exitWithError("Please pull down remote changes before "
+                    + "pushing.");
+        }
+        Remote.transfer(ObjectStore.local(), remote.store(), localTip.id(),
+                Integer.MAX_VALUE);
+        remote.setBranch(branchName, localTip.id());
+    }
+
+    /** Fetches the branch BRANCHNAME of the remote REMOTENAME and merges it
+     * into the current branch.
+     * @param remoteName the name of the remote.
+     * @param branchName the name of the branch of the remote. */
+    void pull(String remoteName, String branchName) {
+        fetch(remoteName, branchName, Integer.MAX_VALUE);
+        merge(remoteName + "/" + branchName);
+    }
+
+    /** Writes to FILENAME a bundle of the branches BRANCHNAMES, leaving out
+     * the history of the commits BASEIDS, which its reader must have.
+     * @param fileName the name of the bundle file.
+     * @param branchNames the names of the branches to bundle.
+     * @param baseIDs the full ids of the base commits, if any.
+     * @param depth the number of commits of each branch to bundle, at
+     *              most. */
+    void createBundle(String fileName, List<String> branchNames,
+                      List<String> baseIDs, int depth) {
+        TreeMap<String, ObjectId> refs = new TreeMap<>();
+        for (String branchName : branchNames) {
+            Branch branch = branch(branchName);
+            if (branch == null) {
+                Main.exitWithError("A branch with that name does not exist.");
+            }
+            refs.put(branchName, ObjectId.fromHex(branch.nodeId()));
+        }
+        ArrayList<ObjectId> bases = new ArrayList<>();
+        for (String baseID : baseIDs) {
+            CommitNode base = readCommit(baseID);
+            if (base == null) {
+                Main.exitWithError("No commit with that id exists.");
+            }
+            bases.add(base.id());
+        }
+        Bundle.create(new File(fileName), ObjectStore.local(), refs, bases,
+                depth);
+    }
+
+    /** Adds the objects of the bundle in FILENAME to this repository, and
+     * points the branch bundle/NAME to each branch NAME of the bundle.
+     * @param fileName the name of the bundle file. */
+    void unbundle(String fileName) {
+        Bundle bundle = new Bundle(new File(fileName), ObjectStore.local());
+        if (CommitIndex.exists()) {
+            for (CommitNode commit : bundle.commits()) {
+                CommitIndex.append(commit.sha1, commit.strTimestamp,
+                        commit.logMessage);
+            }
+        }
+        for (Map.Entry<String, ObjectId> ref : bundle.refs().entrySet()) {
+            setBranch("bundle/" + ref.getKey(), ref.getValue().toString());
+        }
+    }
+
+    /** Returns true iff the commit with id ANCESTOR is COMMIT or one of its
+     * ancestors, following both parents of merges.
+     * @param ancestor the id of the possible ancestor.
+     * @param commit the commit whose history is searched. */
+    private static boolean isAncestor(ObjectId ancestor, CommitNode commit) {
+        ObjectIdSet seen = new ObjectIdSet();
+        ArrayDeque<CommitNode> pending = new ArrayDeque<>();
+        pending.push(commit);
+        while (!pending.isEmpty()) {
+            CommitNode c = pending.pop();
+            if (c.id().equals(ancestor)) {
+                return true;
+            }
+            if (!seen.add(c.id())) {
+                continue;
+            }
+            if (c.parent() != null) {
+                pending.push(c.parent());
+            }
+            if (c.parentTwo() != null) {
+                pending.push(c.parentTwo());
+            }
+        }
+        return false;
     }
 
     /** Removes the branch from the CommitTree with the given name.
      * @param branchName the name of the branch to be removed. */
     void removeBranch(String branchName) {
-        if (!branches.containsKey(branchName)) {
+        if (branch(branchName) == null) {
             Main.exitWithError("A branch with that name does not exist.");
-        } else if (currentBranch.name().equals(branchName)) {
+        } else if (currentBranchName.equals(branchName)) {
             Main.exitWithError("Cannot remove the current branch.");
         } else {
-            branches.remove(branchName);
+            Refs.local().delete(branchName);
+            knownBranches().remove(branchName);
         }
     }
 
     /** Checks out the branch with the given name. *
      * @param branchName the name of the branch to be checked out. */
     void checkoutBranch(String branchName) {
-        if (!branches.containsKey(branchName)) {
+        if (branch(branchName) == null) {
             Main.exitWithError("No such branch exists.");
-        } else if (currentBranch.name().equals(branchName)) {
+        } else if (currentBranchName.equals(branchName)) {
             Main.exitWithError("No need to checkout the current branch.");
         }
-        CommitNode branchCommit = branches.get(branchName).node();
+        CommitNode branchCommit = branch(branchName).node();
         for (String fileName
-                : Objects.requireNonNull(Utils.plainFilenamesIn(Main.CWD))) {
-            if (!head.node().files.containsKey(fileName)) {
+                : WorkingTree.files()) {
+            if (!head().node().files.contains(fileName)) {
                 Main.exitWithError("There is an "
                         + "untracked file in the way; "
                         + "delete it, or add and commit it first.");
             }
-            if (!branchCommit.files.containsKey(fileName)) {
-                Utils.join(Main.CWD, fileName).delete();
+            if (!branchCommit.files.contains(fileName)) {
+                WorkingTree.delete(fileName);
             }
         }
-        for (String fileName : branchCommit.files.keySet()) {
-            checkoutCommitNodeFile(branchCommit, fileName);
-        }
-        head = branches.get(branchName);
-        currentBranch = branches.get(branchName);
+        checkoutSparse(branchCommit);
+        currentBranchName = branchName;
         stage.clearStage();
     }
 
     /** Resets the Commit with the given CommitID, checks out all of its files.
      * @param commitID the commitID corresponding to the desired CommitNode. */
     void reset(String commitID) {
-        List<String> commitFiles = Utils.plainFilenamesIn(COMMIT_DIRECTORY);
-        if (commitFiles.size() == 0) {
-            Main.exitWithError("No commit with that id exists.");
-        }
-        boolean commitExists = false;
-        for (String name : commitFiles) {
-            if (commitID.equals(name)) {
-                commitExists = true;
-            }
-        }
-        if (!commitExists) {
+        CommitNode resetThisCommit = readCommit(commitID);
+        if (resetThisCommit == null) {
             Main.exitWithError("No commit with that id exists.");
         }
-        File commitFile = Utils.join(COMMIT_DIRECTORY, commitID);
-        CommitNode resetThisCommit = Utils
-                .readObject(commitFile, CommitNode.class);
-        List<String> trackedFiles = Utils
-                .plainFilenamesIn(Gitlet.FILES_DIRECTORY);
         for (String fileName : Objects
-                .requireNonNull(Utils.plainFilenamesIn(Main.CWD))) {
-            File cwdFile = Utils.join(Main.CWD, fileName);
-            Blob blobbedCWDFile = new Blob(cwdFile);
-            String cwdsha1 = Utils.sha1(blobbedCWDFile.stringContents());
-            if (!trackedFiles.contains(cwdsha1)) {
+                .requireNonNull(WorkingTree.files())) {
+            if (!isTracked(fileName)) {
                 Main.exitWithError("There is an untracked "
                         + "file in the way; delete it, "
                         + "or add and commit it first.");
             }
-            if (!resetThisCommit.files.containsKey(fileName)) {
-                Utils.join(Main.CWD, fileName).delete();
+            if (!resetThisCommit.files.contains(fileName)) {
+                WorkingTree.delete(fileName);
             }
         }
-        for (String fileName : resetThisCommit.files.keySet()) {
-            checkoutCommitNodeFile(resetThisCommit, fileName);
-        }
-        currentBranch.setNode(resetThisCommit);
+        checkoutSparse(resetThisCommit);
+        head().setNode(resetThisCommit);
         stage.clearStage();
     }
 
@@ -401,38 +898,43 @@ public class CommitTree implements Serializable {
      * @param branchName the given branch name to be merged into current.*/
     void merge(String branchName) {
         checkUntrackedFilesCurrentCommit(branchName);
-        Branch givenBranch = branches.get(branchName);
-        CommitNode latestCommonAncestor = crissCrossSelector(branchName);
-        if (latestCommonAncestor == currentBranch.node()) {
-            checkoutBranch(branchName);
+        Branch givenBranch = branch(branchName);
+        CommitNode latestCommonAncestor;
+        Events.MergeBase baseEvent = new Events.MergeBase();
+        baseEvent.begin();
+        try (Trace trace = Trace.phase("find split point")) {
+            latestCommonAncestor = crissCrossSelector(branchName);
+        }
+        if (baseEvent.shouldCommit()) {
+            baseEvent.ours = head().node().sha1();
+            baseEvent.theirs = givenBranch.node().sha1();
+            baseEvent.base = latestCommonAncestor.sha1();
+            baseEvent.commit();
+        }
+        if (latestCommonAncestor.equals(head().node())) {
+            reset(givenBranch.node().sha1());
             System.out.println("Current branch fast-forwarded.");
             return;
         }
+        FileTree splitFiles = latestCommonAncestor.files;
+        FileTree currentFiles = head().node().files;
+        FileTree givenFiles = givenBranch.node().files;
+        Events.TreeDiff diffEvent = new Events.TreeDiff();
+        diffEvent.begin();
         boolean mergeConflict = false;
-        for (String maybeModdedFile : givenBranch.node().files.keySet()) {
-            if (latestCommonAncestor.files.containsKey(maybeModdedFile)) {
-                if (!checkFileContents(givenBranch.node()
-                                .files.get(maybeModdedFile).stringContents(),
-                        latestCommonAncestor.files.
-                                get(maybeModdedFile).stringContents())) {
-                    Blob currentBranchFile = null;
-                    if (currentBranch.node()
-                            .files.containsKey(maybeModdedFile)) {
-                        if (checkFileContents(currentBranch.node()
-                                        .files.get(maybeModdedFile)
-                                        .stringContents(),
-                                latestCommonAncestor.files
-                                        .get(maybeModdedFile)
-                                        .stringContents())) {
-                            checkoutCommitNodeFile(givenBranch.node(),
-                                    maybeModdedFile);
-                            File moddedFile = Utils
-                                    .join(Main.CWD, maybeModdedFile);
-                            addFile(moddedFile, maybeModdedFile);
+        for (String maybeModdedFile : givenFiles) {
+            if (splitFiles.contains(maybeModdedFile)) {
+                if (!givenFiles.get(maybeModdedFile)
+                        .equals(splitFiles.get(maybeModdedFile))) {
+                    ObjectId currentBranchFile = null;
+                    if (currentFiles.contains(maybeModdedFile)) {
+                        if (currentFiles.get(maybeModdedFile)
+                                .equals(splitFiles.get(maybeModdedFile))) {
+                            takeFile(givenBranch.node(), maybeModdedFile);
                             continue;
                         } else {
-                            currentBranchFile = currentBranch
-                                    .node().files.get(maybeModdedFile);
+                            currentBranchFile = currentFiles
+                                    .get(maybeModdedFile);
                         }
                     }
                     mergeConflict = thirdMergeHelper(givenBranch,
@@ -445,10 +947,20 @@ public class CommitTree implements Serializable {
         }
         mergeConflict = mergeHelper(latestCommonAncestor,
                 givenBranch, mergeConflict);
+        if (diffEvent.shouldCommit()) {
+            diffEvent.operation = "merge";
+            diffEvent.from = head().node().sha1();
+            diffEvent.to = givenBranch.node().sha1();
+            diffEvent.files = splitFiles.size() + currentFiles.size()
+                    + givenFiles.size();
+            diffEvent.changed = stage.stagedFiles().size()
+                    + stage.stagedForRemoval().size();
+            diffEvent.commit();
+        }
         mergeCommit("Merged " + branchName + " into "
-                        + currentBranch.name() + ".",
-                currentBranch.node(),
-                givenBranch.node());
+                        + currentBranchName + ".",
+                head().node(),
+                givenBranch.node(), mergeConflict);
         if (mergeConflict) {
             System.out.println("Encountered a merge conflict.");
         }
@@ -456,30 +968,27 @@ public class CommitTree implements Serializable {
 
     boolean mergeHelper(CommitNode latestCommonAncestor,
                         Branch givenBranch, boolean mergeConflict) {
-        for (String splitFile : latestCommonAncestor.files.keySet()) {
-            if (currentBranch.node().files.containsKey(splitFile)) {
-                String splitFileSHA1 = Utils.sha1(latestCommonAncestor
-                        .files.get(splitFile).stringContents());
-                String currentBranchFileSHA1 = Utils
-                        .sha1(currentBranch.node()
-                                .files.get(splitFile).stringContents());
-                if (splitFileSHA1.equals(currentBranchFileSHA1)
-                        && !givenBranch.node().files.containsKey(splitFile)) {
+        FileTree splitFiles = latestCommonAncestor.files;
+        FileTree currentFiles = head().node().files;
+        FileTree givenFiles = givenBranch.node().files;
+        for (String splitFile : splitFiles) {
+            if (currentFiles.contains(splitFile)) {
+                if (splitFiles.get(splitFile)
+                        .equals(currentFiles.get(splitFile))
+                        && !givenFiles.contains(splitFile)) {
                     rm(splitFile);
                 }
             }
         }
-        for (String currFile : currentBranch.node().files.keySet()) {
-            if (latestCommonAncestor.files.containsKey(currFile)) {
-                String splitContent = latestCommonAncestor
-                        .files.get(currFile).stringContents();
-                String currContent = currentBranch.node()
-                        .files.get(currFile).stringContents();
-                if (!checkFileContents(splitContent, currContent)) {
-                    if (!givenBranch.node().files.containsKey(currFile)) {
-                        mergeConflictedFile(currContent, "", currFile);
+        for (String currFile : currentFiles) {
+            if (splitFiles.contains(currFile)) {
+                ObjectId splitContent = splitFiles.get(currFile);
+                ObjectId currContent = currentFiles.get(currFile);
+                if (!splitContent.equals(currContent)) {
+                    if (!givenFiles.contains(currFile)) {
+                        mergeConflictedFile(currContent, null, currFile);
                         mergeConflict = true;
-                        addFile(Utils.join(Main.CWD, currFile), currFile);
+                        addFile(WorkingTree.file(currFile), currFile);
                     }
                 }
             }
@@ -489,49 +998,34 @@ public class CommitTree implements Serializable {
 
     boolean secondMergeHelper(String maybeModdedFile,
                               Branch givenBranch, boolean mergeConflict) {
-        if (currentBranch.node().files.containsKey(maybeModdedFile)) {
-            String currFile = currentBranch.node()
-                    .files.get(maybeModdedFile).stringContents();
-            String branchFile = givenBranch.node()
-                    .files.get(maybeModdedFile).stringContents();
-            if (!checkFileContents(branchFile, currFile)) {
-                mergeConflictedFile(currFile,
-                        branchFile, maybeModdedFile);
+        FileTree currentFiles = head().node().files;
+        if (currentFiles.contains(maybeModdedFile)) {
+            ObjectId currFile = currentFiles.get(maybeModdedFile);
+            ObjectId branchFile = givenBranch.node()
+                    .files.get(maybeModdedFile);
+            if (!branchFile.equals(currFile)) {
+                mergeConflictedFile(currFile, branchFile, maybeModdedFile);
                 mergeConflict = true;
-                addFile(Utils.join(Main.CWD,
-                        maybeModdedFile), maybeModdedFile);
+                addFile(WorkingTree.file(maybeModdedFile), maybeModdedFile);
             } else {
-                checkoutCommitNodeFile(givenBranch.node(),
-                        maybeModdedFile);
-                File moddedFile = Utils.join(Main.CWD, maybeModdedFile);
-                addFile(moddedFile, maybeModdedFile);
+                takeFile(givenBranch.node(), maybeModdedFile);
             }
         } else {
-            checkoutCommitNodeFile(givenBranch.node(), maybeModdedFile);
-            File moddedFile = Utils.join(Main.CWD, maybeModdedFile);
-            addFile(moddedFile, maybeModdedFile);
+            takeFile(givenBranch.node(), maybeModdedFile);
         }
         return mergeConflict;
     }
 
     boolean thirdMergeHelper(Branch givenBranch, String maybeModdedFile,
-                             Blob currentBranchFile, boolean mergeConflict) {
+                             ObjectId currentBranchFile,
+                             boolean mergeConflict) {
         boolean yay = mergeConflict;
-        Blob givenBranchFile = givenBranch
+        ObjectId givenBranchFile = givenBranch
                 .node().files.get(maybeModdedFile);
-        File splitConflictedFile = Utils
-                .join(Main.CWD, maybeModdedFile);
-        String currentBranchContents;
-        if (currentBranchFile != null) {
-            currentBranchContents = currentBranchFile
-                    .stringContents();
-        } else {
-            currentBranchContents = "";
-        }
-        String givenBranchContents = givenBranchFile
-                .stringContents();
-        mergeConflictedFile(currentBranchContents,
-                givenBranchContents, maybeModdedFile);
+        File splitConflictedFile = WorkingTree
+                .file(maybeModdedFile);
+        mergeConflictedFile(currentBranchFile, givenBranchFile,
+                maybeModdedFile);
         yay = true;
         addFile(splitConflictedFile, maybeModdedFile);
         return yay;
@@ -540,18 +1034,22 @@ public class CommitTree implements Serializable {
     /** Helper method for merge that returns the split point CommitNode.
      * @param givenBranchName the given branch name.
      * @return the split node, the last common ancestor. */
-    private CommitNode crissCrossSelector(String givenBranchName) {
+    CommitNode crissCrossSelector(String givenBranchName) {
         CommitNode givenCommonAncestor =
                 latestCommonAncestorGiven(givenBranchName);
         CommitNode currentCommonAncestor =
                 latestCommonAncestorCurrent(givenBranchName);
-        if (currentCommonAncestor == currentBranch.node()) {
+        if (currentCommonAncestor == null) {
+            Main.exitWithError("No common ancestor in the shallow history; "
+                    + "fetch more of it first.");
+        }
+        if (currentCommonAncestor.equals(head().node())) {
             return currentCommonAncestor;
         }
-        int givenCADist = currentBranch.node()
-                .ancestors.indexOf(givenCommonAncestor);
-        int currentCADist = currentBranch.node()
-                .ancestors.indexOf(currentCommonAncestor);
+        int givenCADist = head().node()
+                .ancestors().indexOf(givenCommonAncestor);
+        int currentCADist = head().node()
+                .ancestors().indexOf(currentCommonAncestor);
         if (givenCADist == currentCADist) {
             return currentCommonAncestor;
         } else if (givenCADist > currentCADist) {
@@ -565,19 +1063,19 @@ public class CommitTree implements Serializable {
      * @param givenBranchName the given branch.
      * @return returns the common ancestor searching from given node.*/
     private CommitNode latestCommonAncestorGiven(String givenBranchName) {
-        Branch givenBranch = branches.get(givenBranchName);
+        Branch givenBranch = branch(givenBranchName);
         CommitNode givenNode = givenBranch.node();
         LinkedList<CommitNode> work = new LinkedList<>();
         work.push(givenNode);
         while (!work.isEmpty()) {
             CommitNode node = work.remove();
             if (node != null) {
-                if (currentBranch.node().ancestors.contains(node)) {
+                if (head().node().ancestorIds().contains(node.id())) {
                     return node;
                 } else {
-                    work.push(node.commitParent);
-                    if (node.commitParentTwo != null) {
-                        work.push(node.commitParentTwo);
+                    work.push(node.parent());
+                    if (node.parentTwo() != null) {
+                        work.push(node.parentTwo());
                     }
                 }
             }
@@ -589,19 +1087,19 @@ public class CommitTree implements Serializable {
      * @param givenBranchName the given branch name.
      * @return the latest common ancestor searching from current node. */
     private CommitNode latestCommonAncestorCurrent(String givenBranchName) {
-        Branch givenBranch = branches.get(givenBranchName);
-        CommitNode currentNode = currentBranch.node();
+        Branch givenBranch = branch(givenBranchName);
+        CommitNode currentNode = head().node();
         LinkedList<CommitNode> work = new LinkedList<>();
         work.push(currentNode);
         while (!work.isEmpty()) {
             CommitNode node = work.remove();
             if (node != null) {
-                if (givenBranch.node().ancestors.contains(node)) {
+                if (givenBranch.node().ancestorIds().contains(node.id())) {
                     return node;
                 } else {
-                    work.push(node.commitParent);
-                    if (node.commitParentTwo != null) {
-                        work.push(node.commitParentTwo);
+                    work.push(node.parent());
+                    if (node.parentTwo() != null) {
+                        work.push(node.parentTwo());
                     }
                 }
             }
@@ -614,8 +1112,8 @@ public class CommitTree implements Serializable {
      */
     void checkUntrackedFilesCurrentCommit(String branchName) {
         for (String fileName
-                : Objects.requireNonNull(Utils.plainFilenamesIn(Main.CWD))) {
-            if (!currentBranch.node().files.containsKey(fileName)
+                : WorkingTree.files()) {
+            if (!head().node().files.contains(fileName)
                     & !stage.stagedFiles().containsKey(fileName)) {
                 Main.exitWithError("There is an "
                         + "untracked file in the way; "
@@ -624,118 +1122,135 @@ public class CommitTree implements Serializable {
         }
         if (stage.stagedFiles().size() > 0 | stage.stagedFiles().size() > 0) {
             Main.exitWithError("You have uncommitted changes.");
-        } else if (!branches.containsKey(branchName)) {
+        } else if (branch(branchName) == null) {
             Main.exitWithError("A branch with that name does not exist.");
-        } else if (currentBranch.name().equals(branchName)) {
+        } else if (currentBranchName.equals(branchName)) {
             Main.exitWithError("Cannot merge a branch with itself.");
-        } else if (currentBranch.node().ancestors.
-                contains(branches.get(branchName).node())) {
+        } else if (head().node().ancestorIds().
+                contains(branch(branchName).node().id())) {
             Main.exitWithError("Given branch is "
                     + "an ancestor of the current branch.");
         }
     }
 
-    /** Handles merges with conflicted files from merge.
-     * @param currentContents contents of the file from the current node.
-     * @param givenContents contents of file from given branch node.
+    /** Handles merges with conflicted files from merge.  The contents of
+     * both versions are streamed between conflict markers, byte for byte.
+     * Binary files cannot be spliced that way, so a conflicted binary file
+     * keeps its current version, or the given one if the current branch
+     * deleted it.
+     * @param currentBlob the file's blob in the current node, or null if it
+     *                    has none.
+     * @param givenBlob the file's blob in the given branch node, or null if
+     *                  it has none.
      * @param fileName is the name of the conflicted file.*/
-    void mergeConflictedFile(String currentContents,
-                             String givenContents, String fileName) {
-        String text = "<<<<<<< HEAD\n"
-                + currentContents
-                + "=======\n"
-                + givenContents
-                + ">>>>>>>\n";
-        Utils.writeContents(Utils.join(Main.CWD, fileName), text);
+    void mergeConflictedFile(ObjectId currentBlob, ObjectId givenBlob,
+                             String fileName) {
+        ObjectStore store = ObjectStore.local();
+        if ((currentBlob != null && store.isBinary(currentBlob))
+                || (givenBlob != null && store.isBinary(givenBlob))) {
+            System.out.println("Cannot merge binary file " + fileName + ".");
+            WorkingTree.write(fileName,
+                    currentBlob != null ? currentBlob : givenBlob);
+            return;
+        }
+        try (OutputStream out = WorkingTree.open(fileName)) {
+            out.write(CONFLICT_START);
+            if (currentBlob != null) {
+                store.writeContents(currentBlob, out);
+            }
+            out.write(CONFLICT_SEPARATOR);
+            if (givenBlob != null) {
+                store.writeContents(givenBlob, out);
+            }
+            out.write(CONFLICT_END);
+        } catch (IOException excp) {
+            throw Utils.error("cannot write %s: %s", fileName,
+                    excp.getMessage());
+        }
     }
 
-    /** Checks if two files have the same contents.
-     * @param fileOne the string contents of one file.
-     * @param fileTwo the string contents of a second file.
-     * @return true if files are equal, false if files are not equal. */
-    boolean checkFileContents(String fileOne, String fileTwo) {
-        return Utils.sha1(fileOne).equals(Utils.sha1(fileTwo));
-    }
+    /** The conflict marker before the current version of a file. */
+    private static final byte[] CONFLICT_START = "<<<<<<< HEAD\n".getBytes();
+    /** The conflict marker between the two versions of a file. */
+    private static final byte[] CONFLICT_SEPARATOR = "=======\n".getBytes();
+    /** The conflict marker after the given version of a file. */
+    private static final byte[] CONFLICT_END = ">>>>>>>\n".getBytes();
 
     /** Special commit specifically for merges.
      * @param message the log message
      * @param firstParent the current branch node.
-     * @param secondParent the given branch node. */
+     * @param secondParent the given branch node.
+     * @param conflicted whether the merge had conflicts, in which case it
+     *                   is committed even if it kept every current file, as
+     *                   it does when only binary files conflicted. */
     void mergeCommit(String message, CommitNode firstParent,
-                     CommitNode secondParent) {
+                     CommitNode secondParent, boolean conflicted) {
         ZonedDateTime now = ZonedDateTime
                 .now(ZoneId.of(ZoneId.SHORT_IDS.get("PST")));
         CommitNode newCommit = new CommitNode(now,
-                message, firstParent, secondParent);
+                message, firstParent, secondParent, stage, conflicted);
         createCommitFile(newCommit);
-        currentBranch.setNode(newCommit);
+        head().setNode(newCommit);
         stage.clearStage();
         stage.clearRemovalStage();
     }
 
 
     /** The internal representaion of a Gitlet Commit. Commits are stored
-     * inside the Commit directory in .gitlet */
-    public class CommitNode implements Serializable {
+     * inside the Commit directory in .gitlet, each in its own file, and refer
+     * to their parents by id so that they can be read one at a time. */
+    public static class CommitNode implements Serializable {
         /** Creates a Commit.
          * @param timestamp is a LocalDateTime object.
          * @param message is a message.
          * @param parent is a pointer that points to the parent.
-         * @param parentTwo is a pointer that points branch after merge.*/
+         * @param parentTwo is a pointer that points branch after merge.
+         * @param stage the stage whose changes this commit records. */
+        private CommitNode(ZonedDateTime timestamp, String message,
+                           CommitNode parent, CommitNode parentTwo,
+                           Staging stage) {
+            this(timestamp, message, parent, parentTwo, stage, false);
+        }
+
+        /** Creates a Commit, which may record no changes if ALLOWEMPTY.
+         * @param timestamp is a LocalDateTime object.
+         * @param message is a message.
+         * @param parent is a pointer that points to the parent.
+         * @param parentTwo is a pointer that points branch after merge.
+         * @param stage the stage whose changes this commit records.
+         * @param allowEmpty whether an empty stage is allowed. */
         private CommitNode(ZonedDateTime timestamp, String message,
-                           CommitNode parent, CommitNode parentTwo) {
+                           CommitNode parent, CommitNode parentTwo,
+                           Staging stage, boolean allowEmpty) {
             strTimestamp = formatTime(timestamp);
+            epochSecond = timestamp.toEpochSecond();
             logMessage = message;
-            commitParent = parent;
-            commitParentTwo = parentTwo;
-            files = new TreeMap<>();
-            fileNameToSHA1 = new TreeMap<>();
-            ancestors = new ArrayList<CommitNode>();
-            if (isInitialCommit) {
-                isInitialCommit = false;
-            } else {
-                if (stage.stagedFiles().size() == 0
-                        && stage.stagedForRemoval().size() == 0) {
-                    Main.exitWithError("No changes added to the commit.");
-                }
-                files.putAll(commitParent.files);
-                fileNameToSHA1.putAll(commitParent.fileNameToSHA1);
-                ancestors.addAll(parent.ancestors);
-                ancestors.add(parent);
-                if (parentTwo != null) {
-                    ancestors.add(parentTwo);
-                }
+            parentId = parent == null ? null : parent.sha1;
+            parentTwoId = parentTwo == null ? null : parentTwo.sha1;
+            if (parent != null && !allowEmpty
+                    && stage.stagedFiles().isEmpty()
+                    && stage.stagedForRemoval().isEmpty()) {
+                Main.exitWithError("No changes added to the commit.");
             }
-            for (String stageFileName : stage.stagedFiles().keySet()) {
-                if (files.containsKey(stageFileName)) {
-                    for (String commitFileName : files.keySet()) {
-                        if (commitFileName.equals(stageFileName)) {
-                            String commitFileSHA1 = Utils.sha1(files
-                                    .get(commitFileName).stringContents());
-                            String stageFileSHA1 = Utils
-                                    .sha1(stage.stagedFiles()
-                                    .get(stageFileName).stringContents());
-                            if (!commitFileSHA1.equals(stageFileSHA1)) {
-                                files.replace(commitFileName,
-                                        stage.stagedFiles().get(stageFileName));
-                                fileNameToSHA1
-                                        .replace(commitFileName, stageFileSHA1);
-                            }
-                        }
-                    }
-                } else {
-                    files.put(stageFileName, stage.stagedFiles()
-                            .get(stageFileName));
-                    String stageFileSHA1 = Utils.sha1(stage.stagedFiles()
-                            .get(stageFileName).stringContents());
-                    fileNameToSHA1.put(stageFileName, stageFileSHA1);
-                }
-            }
-            for (String removeFileName : stage.stagedForRemoval()) {
-                files.remove(removeFileName);
+            FileTree base = parent == null ? FileTree.EMPTY : parent.files;
+            files = base.with(stage.stagedFiles(), stage.stagedForRemoval());
+            sha1 = computeId().toString();
+        }
+
+        /** Returns the id of this commit: the SHA-1 of its parents, time,
+         * message and tree, computed afresh from its contents. */
+        ObjectId computeId() {
+            MessageDigest digest = Utils.newSha1Digest();
+            digest.update(("commit " + parentId + " " + parentTwoId + " "
+                    + epochSecond + " " + strTimestamp + "\n"
+                    + logMessage.length() + "\n" + logMessage + "\n")
+                    .getBytes(StandardCharsets.UTF_8));
+            for (int k = 0; k < files.size(); k += 1) {
+                digest.update(files.path(k).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                digest.update(files.id(k).toBytes());
             }
-            byte[] serializedCommit = Utils.serialize(this);
-            sha1 = Utils.sha1(serializedCommit);
+            return ObjectId.of(digest.digest());
         }
 
         /** Takes a string representation of a LocalDateTime object.
@@ -744,39 +1259,139 @@ public class CommitTree implements Serializable {
          * @return the string of a formatted LocalDateTime.
          */
         public static String formatTime(ZonedDateTime timestamp) {
-            DateTimeFormatter formatter = DateTimeFormatter
-                    .ofPattern("ccc LLL d HH:mm:ss yyyy Z");
-            return timestamp.format(formatter);
+            return timestamp.format(TIME_FORMAT);
+        }
+
+        /** Returns the first parent of this commit, or null for the
+         * initial commit and for the graft points of a shallow repository.
+         * Parents are looked up in the commit cache on every call rather
+         * than held by their children, so that a walk down a long history
+         * keeps no more of it in memory than the cache allows. */
+        CommitNode parent() {
+            if (parentId == null || grafted()) {
+                return null;
+            }
+            return readCommit(parentId);
+        }
+
+        /** Returns the second parent of this commit, looked up as parent()
+         * is, or null if this is not a merge or is a graft point. */
+        CommitNode parentTwo() {
+            if (parentTwoId == null || grafted()) {
+                return null;
+            }
+            return readCommit(parentTwoId);
+        }
+
+        /** Returns true iff this commit is a graft point of the repository
+         * in Main.CWD, whose history stops here. */
+        private boolean grafted() {
+            return ObjectStore.local().shallow().isGraft(id());
+        }
+
+        /** Returns the ids of the parents of this commit, without reading
+         * them. */
+        List<String> parentIds() {
+            ArrayList<String> result = new ArrayList<>();
+            if (parentId != null) {
+                result.add(parentId);
+            }
+            if (parentTwoId != null) {
+                result.add(parentTwoId);
+            }
+            return result;
+        }
+
+        /** Returns the ancestors of this commit: every commit on its
+         * first-parent chain, oldest first, each followed by the second
+         * parent of its child if that child is a merge.  Computed on first
+         * use by walking the first-parent chain. */
+        List<CommitNode> ancestors() {
+            if (ancestors == null) {
+                ArrayList<CommitNode> chain = new ArrayList<>();
+                for (CommitNode c = this; c != null; c = c.parent()) {
+                    chain.add(c);
+                }
+                Collections.reverse(chain);
+                ancestors = new ArrayList<>();
+                for (int i = 1; i < chain.size(); i += 1) {
+                    ancestors.add(chain.get(i - 1));
+                    if (chain.get(i).parentTwo() != null) {
+                        ancestors.add(chain.get(i).parentTwo());
+                    }
+                }
+            }
+            return ancestors;
+        }
+
+        /** Returns the set of the ids of ancestors(). */
+        ObjectIdSet ancestorIds() {
+            if (ancestorIds == null) {
+                ancestorIds = new ObjectIdSet(ancestors().size());
+                for (CommitNode ancestor : ancestors()) {
+                    ancestorIds.add(ancestor.id());
+                }
+            }
+            return ancestorIds;
+        }
+
+        /** Accessor method for the commit id.
+         * @return the SHA1 of this commit. */
+        String sha1() {
+            return sha1;
+        }
+
+        /** Returns the id of this commit as an ObjectId. */
+        ObjectId id() {
+            if (id == null) {
+                id = ObjectId.fromHex(sha1);
+            }
+            return id;
+        }
+
+        /** Accessor method for the commit time.
+         * @return the commit time in seconds since the epoch. */
+        long epochSecond() {
+            return epochSecond;
         }
 
         /** Accessor method for files.
-         * @return the file treemap. */
-        TreeMap<String, Blob> files() {
+         * @return the tree of file names to blob ids. */
+        FileTree files() {
             return files;
         }
 
-        /** Accessor method for file to SHA1 map.
-         * @return the map of filenames to SHA1. */
-        TreeMap<String, String> fileNameToSHA1() {
-            return fileNameToSHA1;
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof CommitNode
+                    && sha1.equals(((CommitNode) obj).sha1);
+        }
+
+        @Override
+        public int hashCode() {
+            return sha1.hashCode();
         }
+
         /** The unique SHA1 for this commit node. */
         private final String sha1;
         /** The timestamp formatted for this commit node. */
         private final String strTimestamp;
+        /** The timestamp of this commit node, in seconds since the epoch. */
+        private final long epochSecond;
         /** The message associated with this commit node. */
         private final String logMessage;
-        /** The parent of this commit node. */
-        private final CommitNode commitParent;
-        /** The second parent of this commit node, from a given branch merge. */
-        private final CommitNode commitParentTwo;
-        /** The ancestors of this commit node. */
-        private final ArrayList<CommitNode> ancestors;
-
-
-        /** The map of names to blobs. */
-        private TreeMap<String, Blob> files;
-        /** The map of file names to SHA1. */
-        private TreeMap<String, String> fileNameToSHA1;
+        /** The id of the parent of this commit node. */
+        private final String parentId;
+        /** The id of the second parent of this commit node. */
+        private final String parentTwoId;
+        /** The ancestors of this commit node, once computed. */
+        private transient ArrayList<CommitNode> ancestors;
+        /** The ids of the ancestors of this commit node, once computed. */
+        private transient ObjectIdSet ancestorIds;
+        /** The id of this commit node, once converted from sha1. */
+        private transient ObjectId id;
+
+        /** The tree of file names to blob ids. */
+        private final FileTree files;
     }
 }
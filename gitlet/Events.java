@@ -0,0 +1,195 @@
+package gitlet;
+
+import java.io.File;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** The Java Flight Recorder events of Gitlet, so that a recording of a
+ * process running Gitlet shows its object reads and writes, file hashing,
+ * commit index rebuilds, tree comparisons, merge-base searches and checkout
+ * writes beside the garbage collections and I/O of the JVM.  They are all
+ * in the category Gitlet, and named gitlet.ObjectRead and so on; record
+ * them with, for example,
+ *     java -XX:StartFlightRecording:filename=gitlet.jfr gitlet.Main ...
+ *
+ * Each event is used in the usual way: created and begun before the
+ * operation, and its fields filled in and committed after it only if
+ * shouldCommit says it is wanted.  When no recording takes the event,
+ * shouldCommit is false and the JIT removes the event altogether, so that
+ * the cost of the instrumentation is next to nothing.  Events are not
+ * recorded with stack traces, which would cost more than most of the
+ * operations they time.
+ * @author Chris Zhan */
+final class Events {
+
+    /** Not instantiable. */
+    private Events() {
+    }
+
+    /** Returns the name of the object type TYPE, a Pack type byte. */
+    static String typeName(byte type) {
+        switch (type) {
+        case Pack.BLOB:
+            return "blob";
+        case Pack.COMMIT:
+            return "commit";
+        case Pack.CHUNK:
+            return "chunk";
+        default:
+            return "unknown";
+        }
+    }
+
+    /** The reading of a stored object. */
+    @Name("gitlet.ObjectRead")
+    @Label("Object Read")
+    @Category("Gitlet")
+    @Description("Reading an object from the object store")
+    @StackTrace(false)
+    static final class ObjectRead extends Event {
+        /** The id of the object. */
+        @Label("Id")
+        String id;
+        /** The type of the object. */
+        @Label("Type")
+        String type;
+        /** The stored size of the object, or -1 if it is missing. */
+        @Label("Size")
+        @DataAmount
+        long size;
+        /** True iff the object was read from a pack. */
+        @Label("Packed")
+        boolean packed;
+    }
+
+    /** The writing of a new object. */
+    @Name("gitlet.ObjectWrite")
+    @Label("Object Write")
+    @Category("Gitlet")
+    @Description("Writing a new loose object into the object store")
+    @StackTrace(false)
+    static final class ObjectWrite extends Event {
+        /** The id of the object. */
+        @Label("Id")
+        String id;
+        /** The type of the object. */
+        @Label("Type")
+        String type;
+        /** The stored size of the object. */
+        @Label("Size")
+        @DataAmount
+        long size;
+    }
+
+    /** The hashing of a working file, whether or not it is then stored. */
+    @Name("gitlet.FileHash")
+    @Label("File Hash")
+    @Category("Gitlet")
+    @Description("Hashing a working file as a blob")
+    @StackTrace(false)
+    static final class FileHash extends Event {
+        /** The path of the file. */
+        @Label("Path")
+        String path;
+        /** The length of the file. */
+        @Label("Size")
+        @DataAmount
+        long size;
+        /** The id of its contents. */
+        @Label("Id")
+        String id;
+        /** True iff the contents were also stored. */
+        @Label("Stored")
+        boolean stored;
+
+        /** Ends this event, for FILE, found to have contents ID, which
+         * were stored iff STORED, and commits it if it is wanted. */
+        void report(File file, ObjectId id, boolean stored) {
+            if (shouldCommit()) {
+                this.path = file.getPath();
+                this.size = file.length();
+                this.id = id.toString();
+                this.stored = stored;
+                commit();
+            }
+        }
+    }
+
+    /** The rebuilding of the commit index from the object store. */
+    @Name("gitlet.IndexRefresh")
+    @Label("Index Refresh")
+    @Category("Gitlet")
+    @Description("Rebuilding the commit index from the stored commits")
+    @StackTrace(false)
+    static final class IndexRefresh extends Event {
+        /** The number of commits indexed. */
+        @Label("Commits")
+        int commits;
+    }
+
+    /** The comparison of two or three file trees, file by file. */
+    @Name("gitlet.TreeDiff")
+    @Label("Tree Diff")
+    @Category("Gitlet")
+    @Description("Comparing the file trees of commits or the working tree")
+    @StackTrace(false)
+    static final class TreeDiff extends Event {
+        /** The command comparing them: status or merge. */
+        @Label("Operation")
+        String operation;
+        /** The id of the commit compared from. */
+        @Label("From")
+        String from;
+        /** The id of the commit compared to, or "working tree". */
+        @Label("To")
+        String to;
+        /** The number of file entries compared, over all the trees. */
+        @Label("Files")
+        int files;
+        /** The number of files found to differ. */
+        @Label("Changed")
+        int changed;
+    }
+
+    /** The search for the split point of a merge. */
+    @Name("gitlet.MergeBase")
+    @Label("Merge Base")
+    @Category("Gitlet")
+    @Description("Finding the latest common ancestor of two commits")
+    @StackTrace(false)
+    static final class MergeBase extends Event {
+        /** The id of the current commit. */
+        @Label("Ours")
+        String ours;
+        /** The id of the commit merged. */
+        @Label("Theirs")
+        String theirs;
+        /** The id of the split point found. */
+        @Label("Base")
+        String base;
+    }
+
+    /** The writing of a stored file into the working tree. */
+    @Name("gitlet.CheckoutWrite")
+    @Label("Checkout Write")
+    @Category("Gitlet")
+    @Description("Writing a stored file into the working tree")
+    @StackTrace(false)
+    static final class CheckoutWrite extends Event {
+        /** The path of the file. */
+        @Label("Path")
+        String path;
+        /** The id of its contents. */
+        @Label("Id")
+        String id;
+        /** The length of the file written. */
+        @Label("Size")
+        @DataAmount
+        long size;
+    }
+}
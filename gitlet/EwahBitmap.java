@@ -0,0 +1,381 @@
+package gitlet;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.IntConsumer;
+
+/** An immutable set of non-negative ints, compressed in the manner of
+ * EWAH (Enhanced Word-Aligned Hybrid) bitmaps.  The bits are grouped into
+ * 64-bit words; a run of words that are all zeros or all ones is stored as
+ * a count, and any other word is stored as it is.  The stored words are
+ * a sequence of groups, each a marker word followed by literal words.  A
+ * marker holds the bit of its run in bit 63, the length of the run (in
+ * words) in bits 32-62, and the number of literal words that follow in
+ * bits 0-31.  The bitmaps of nearby commits, which share long stretches of
+ * objects, thus take little space, and set operations on them skip whole
+ * runs at once.
+ * @author Chris Zhan */
+final class EwahBitmap {
+
+    /** The empty bitmap. */
+    static final EwahBitmap EMPTY = new EwahBitmap(new long[0], 0);
+
+    /** The longest run a marker can count. */
+    private static final long MAX_RUN = (1L << 31) - 1;
+    /** The most literal words a marker can count. */
+    private static final int MAX_LITERALS = Integer.MAX_VALUE;
+
+    /** A bitmap whose stored words are WORDS[0 .. LENGTH-1]. */
+    private EwahBitmap(long[] words, int length) {
+        _words = words;
+        _length = length;
+    }
+
+    /** Returns the bitmap holding the bits set in BITS. */
+    static EwahBitmap of(BitSet bits) {
+        Builder result = new Builder();
+        for (long word : bits.toLongArray()) {
+            result.addWord(word);
+        }
+        return result.build();
+    }
+
+    /** Returns the bitmap holding the members of this or OTHER. */
+    EwahBitmap or(EwahBitmap other) {
+        return combine(other, OR);
+    }
+
+    /** Returns the bitmap holding the members of both this and OTHER. */
+    EwahBitmap and(EwahBitmap other) {
+        return combine(other, AND);
+    }
+
+    /** Returns the bitmap holding the members of this that are not in
+     * OTHER. */
+    EwahBitmap andNot(EwahBitmap other) {
+        return combine(other, AND_NOT);
+    }
+
+    /** Returns true iff K is in this bitmap. */
+    boolean get(int k) {
+        long wordIndex = k >>> 6;
+        Cursor cursor = new Cursor(this);
+        while (!cursor.done()) {
+            if (cursor.inRun()) {
+                if (wordIndex < cursor._runLeft) {
+                    return cursor._runBit;
+                }
+                wordIndex -= cursor._runLeft;
+                cursor.skipRun(cursor._runLeft);
+            } else {
+                long word = cursor.word();
+                if (wordIndex == 0) {
+                    return (word & (1L << k)) != 0;
+                }
+                wordIndex -= 1;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the number of members of this bitmap. */
+    int cardinality() {
+        int result = 0;
+        Cursor cursor = new Cursor(this);
+        while (!cursor.done()) {
+            if (cursor.inRun()) {
+                result += cursor._runBit ? (int) cursor._runLeft * 64 : 0;
+                cursor.skipRun(cursor._runLeft);
+            } else {
+                result += Long.bitCount(cursor.word());
+            }
+        }
+        return result;
+    }
+
+    /** Calls ACTION on each member of this bitmap, in increasing order. */
+    void forEach(IntConsumer action) {
+        Cursor cursor = new Cursor(this);
+        long base = 0;
+        while (!cursor.done()) {
+            if (cursor.inRun()) {
+                long n = cursor._runLeft;
+                if (cursor._runBit) {
+                    for (long i = base; i < base + n * 64; i += 1) {
+                        action.accept((int) i);
+                    }
+                }
+                base += n * 64;
+                cursor.skipRun(n);
+            } else {
+                long word = cursor.word();
+                while (word != 0) {
+                    action.accept((int) base
+                            + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+                base += 64;
+            }
+        }
+    }
+
+    /** Returns the members of this bitmap as an uncompressed BitSet. */
+    BitSet toBitSet() {
+        BitSet result = new BitSet();
+        forEach(result::set);
+        return result;
+    }
+
+    /** Returns the number of bytes this bitmap occupies when written. */
+    int sizeInBytes() {
+        return 4 + 8 * _length;
+    }
+
+    /** Reads a bitmap written by write from IN. */
+    static EwahBitmap read(DataInput in) throws IOException {
+        int length = in.readInt();
+        long[] words = new long[length];
+        for (int i = 0; i < length; i += 1) {
+            words[i] = in.readLong();
+        }
+        return new EwahBitmap(words, length);
+    }
+
+    /** Writes this bitmap to OUT. */
+    void write(DataOutput out) throws IOException {
+        out.writeInt(_length);
+        for (int i = 0; i < _length; i += 1) {
+            out.writeLong(_words[i]);
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof EwahBitmap
+                && toBitSet().equals(((EwahBitmap) obj).toBitSet());
+    }
+
+    @Override
+    public int hashCode() {
+        return toBitSet().hashCode();
+    }
+
+    /** Operation code for union. */
+    private static final int OR = 0;
+    /** Operation code for intersection. */
+    private static final int AND = 1;
+    /** Operation code for difference. */
+    private static final int AND_NOT = 2;
+
+    /** Returns the result of the operation OP applied to words X and Y. */
+    private static long apply(int op, long x, long y) {
+        switch (op) {
+        case OR:
+            return x | y;
+        case AND:
+            return x & y;
+        default:
+            return x & ~y;
+        }
+    }
+
+    /** Returns the bitmap resulting from the operation OP applied to this
+     * and OTHER, word by word, with runs in both combined whole. */
+    private EwahBitmap combine(EwahBitmap other, int op) {
+        Builder result = new Builder();
+        Cursor a = new Cursor(this), b = new Cursor(other);
+        while (!a.done() && !b.done()) {
+            if (a.inRun() && b.inRun()) {
+                long n = Math.min(a._runLeft, b._runLeft);
+                result.addRun(apply(op, a._runBit ? -1 : 0,
+                        b._runBit ? -1 : 0) != 0, n);
+                a.skipRun(n);
+                b.skipRun(n);
+            } else {
+                result.addWord(apply(op, a.word(), b.word()));
+            }
+        }
+        if (op != AND) {
+            result.addRest(a);
+        }
+        if (op == OR) {
+            result.addRest(b);
+        }
+        return result.build();
+    }
+
+    /** Returns the marker word for a run of LENGTH words of BIT followed by
+     * LITERALS literal words. */
+    private static long marker(boolean bit, long length, int literals) {
+        return (bit ? 1L << 63 : 0) | (length << 32)
+                | (literals & 0xffffffffL);
+    }
+
+    /** Returns the run bit of MARKER. */
+    private static boolean runBit(long marker) {
+        return marker < 0;
+    }
+
+    /** Returns the run length of MARKER. */
+    private static long runLength(long marker) {
+        return (marker >>> 32) & MAX_RUN;
+    }
+
+    /** Returns the literal count of MARKER. */
+    private static int literals(long marker) {
+        return (int) marker;
+    }
+
+    /** Assembles the stored words of a bitmap, one uncompressed word or
+     * run of words at a time. */
+    private static final class Builder {
+
+        /** Appends the uncompressed word WORD. */
+        void addWord(long word) {
+            if (word == 0) {
+                addRun(false, 1);
+            } else if (word == -1) {
+                addRun(true, 1);
+            } else {
+                if (_marker < 0 || literals(_words[_marker]) == MAX_LITERALS) {
+                    newMarker(false);
+                }
+                append(word);
+                long m = _words[_marker];
+                _words[_marker] = marker(runBit(m), runLength(m),
+                        literals(m) + 1);
+            }
+        }
+
+        /** Appends N words all of whose bits are BIT. */
+        void addRun(boolean bit, long n) {
+            while (n > 0) {
+                if (_marker < 0 || literals(_words[_marker]) > 0
+                        || runLength(_words[_marker]) == MAX_RUN
+                        || runLength(_words[_marker]) > 0
+                        && runBit(_words[_marker]) != bit) {
+                    newMarker(bit);
+                }
+                long length = runLength(_words[_marker]);
+                long take = Math.min(n, MAX_RUN - length);
+                _words[_marker] = marker(bit, length + take, 0);
+                n -= take;
+            }
+        }
+
+        /** Appends the words remaining under CURSOR. */
+        void addRest(Cursor cursor) {
+            while (!cursor.done()) {
+                if (cursor.inRun()) {
+                    long n = cursor._runLeft;
+                    addRun(cursor._runBit, n);
+                    cursor.skipRun(n);
+                } else {
+                    addWord(cursor.word());
+                }
+            }
+        }
+
+        /** Returns the bitmap built so far. */
+        EwahBitmap build() {
+            return new EwahBitmap(_words, _length);
+        }
+
+        /** Starts a new group whose run bit is BIT. */
+        private void newMarker(boolean bit) {
+            _marker = _length;
+            append(marker(bit, 0, 0));
+        }
+
+        /** Appends WORD to the stored words. */
+        private void append(long word) {
+            if (_length == _words.length) {
+                _words = Arrays.copyOf(_words, 2 * _words.length);
+            }
+            _words[_length] = word;
+            _length += 1;
+        }
+
+        /** The stored words. */
+        private long[] _words = new long[4];
+        /** The number of stored words. */
+        private int _length;
+        /** The index of the current marker, or -1 if there is none. */
+        private int _marker = -1;
+    }
+
+    /** A position in the uncompressed words of a bitmap. */
+    private static final class Cursor {
+
+        /** A cursor at the first word of BITMAP. */
+        Cursor(EwahBitmap bitmap) {
+            _words = bitmap._words;
+            _end = bitmap._length;
+            advance();
+        }
+
+        /** Returns true iff no words remain. */
+        boolean done() {
+            return _runLeft == 0 && _literalsLeft == 0;
+        }
+
+        /** Returns true iff the next word is part of a run. */
+        boolean inRun() {
+            return _runLeft > 0;
+        }
+
+        /** Returns the next word and moves past it. */
+        long word() {
+            long result;
+            if (_runLeft > 0) {
+                _runLeft -= 1;
+                result = _runBit ? -1 : 0;
+            } else {
+                _literalsLeft -= 1;
+                result = _words[_next];
+                _next += 1;
+            }
+            advance();
+            return result;
+        }
+
+        /** Moves past the next N words, which must all be in the current
+         * run. */
+        void skipRun(long n) {
+            _runLeft -= n;
+            advance();
+        }
+
+        /** Moves to the next group if the current one is used up. */
+        private void advance() {
+            while (_runLeft == 0 && _literalsLeft == 0 && _next < _end) {
+                long m = _words[_next];
+                _runBit = runBit(m);
+                _runLeft = runLength(m);
+                _literalsLeft = literals(m);
+                _next += 1;
+            }
+        }
+
+        /** The stored words. */
+        private final long[] _words;
+        /** The number of stored words. */
+        private final int _end;
+        /** The index of the next stored word to read. */
+        private int _next;
+        /** The bit of the current run. */
+        private boolean _runBit;
+        /** The number of words left in the current run. */
+        private long _runLeft;
+        /** The number of literal words left in the current group. */
+        private int _literalsLeft;
+    }
+
+    /** The stored words; only the first _length are in use. */
+    private final long[] _words;
+    /** The number of stored words. */
+    private final int _length;
+}
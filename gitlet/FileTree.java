@@ -0,0 +1,162 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/** An immutable map from file paths to the ids of their blobs: the files
+ * tracked by a commit.  Entries are held in two parallel arrays sorted by
+ * path, so a lookup is a binary search and iteration visits paths in
+ * lexicographic order.  The Kth entry is path(K) -> id(K).  Paths are
+ * interned in the PathTable, so trees loaded by one process share them.
+ * @author Chris Zhan */
+class FileTree implements Serializable, Iterable<String> {
+
+    /** The serial version of the stored form of a tree, fixed at the value
+     * computed for the first version, so that adding methods does not make
+     * stored commits unreadable. */
+    private static final long serialVersionUID = -4611574497712415953L;
+
+    /** The tree with no files. */
+    static final FileTree EMPTY = new FileTree(new String[0], new ObjectId[0]);
+
+    /** A tree whose entries are PATHS[K] -> IDS[K].  PATHS must be sorted
+     * and interned. */
+    private FileTree(String[] paths, ObjectId[] ids) {
+        _paths = paths;
+        _ids = ids;
+    }
+
+    /** Returns the tree holding the entries of ENTRIES. */
+    static FileTree of(SortedMap<String, ObjectId> entries) {
+        String[] paths = new String[entries.size()];
+        ObjectId[] ids = new ObjectId[entries.size()];
+        int k = 0;
+        for (Map.Entry<String, ObjectId> entry : entries.entrySet()) {
+            paths[k] = PathTable.intern(entry.getKey());
+            ids[k] = entry.getValue();
+            k += 1;
+        }
+        return new FileTree(paths, ids);
+    }
+
+    /** Returns this tree with the entries of CHANGED added, or replacing
+     * those of the same paths, and the entries of the paths in REMOVED
+     * taken out (a path in both is taken out).  The result is built in one
+     * pass: each change is found by a binary search in what is left of
+     * this tree, and the runs of unchanged entries between changes are
+     * copied whole, so that no entry is compared or rehashed unless it
+     * changes. */
+    FileTree with(SortedMap<String, ObjectId> changed,
+                  Collection<String> removed) {
+        if (changed.isEmpty() && removed.isEmpty()) {
+            return this;
+        }
+        TreeMap<String, ObjectId> changes = new TreeMap<>(changed);
+        for (String path : removed) {
+            changes.put(path, null);
+        }
+        int n = _paths.length;
+        String[] paths = new String[n + changes.size()];
+        ObjectId[] ids = new ObjectId[paths.length];
+        int k = 0;
+        int size = 0;
+        for (Map.Entry<String, ObjectId> change : changes.entrySet()) {
+            int found = Arrays.binarySearch(_paths, k, n, change.getKey());
+            int end = found >= 0 ? found : -found - 1;
+            System.arraycopy(_paths, k, paths, size, end - k);
+            System.arraycopy(_ids, k, ids, size, end - k);
+            size += end - k;
+            if (change.getValue() != null) {
+                paths[size] = PathTable.intern(change.getKey());
+                ids[size] = change.getValue();
+                size += 1;
+            }
+            k = found >= 0 ? found + 1 : end;
+        }
+        System.arraycopy(_paths, k, paths, size, n - k);
+        System.arraycopy(_ids, k, ids, size, n - k);
+        size += n - k;
+        return new FileTree(Arrays.copyOf(paths, size),
+                Arrays.copyOf(ids, size));
+    }
+
+    /** Returns the number of files in this tree. */
+    int size() {
+        return _paths.length;
+    }
+
+    /** Returns the path of the Kth entry. */
+    String path(int k) {
+        return _paths[k];
+    }
+
+    /** Returns the blob id of the Kth entry. */
+    ObjectId id(int k) {
+        return _ids[k];
+    }
+
+    /** Returns the index of the entry for PATH, or a negative number if
+     * there is none. */
+    int indexOf(String path) {
+        return Arrays.binarySearch(_paths, path);
+    }
+
+    /** Returns true iff this tree has an entry for PATH. */
+    boolean contains(String path) {
+        return indexOf(path) >= 0;
+    }
+
+    /** Returns the blob id of PATH, or null if this tree has no such path. */
+    ObjectId get(String path) {
+        int k = indexOf(path);
+        return k < 0 ? null : _ids[k];
+    }
+
+    /** Returns the paths of this tree, in order. */
+    List<String> paths() {
+        return Collections.unmodifiableList(Arrays.asList(_paths));
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return paths().iterator();
+    }
+
+    /** Writes this tree to OUT as its size followed by each path and id. */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(_paths.length);
+        for (int k = 0; k < _paths.length; k += 1) {
+            out.writeUTF(_paths[k]);
+            _ids[k].write(out);
+        }
+    }
+
+    /** Reads a tree written by writeObject from IN, interning its paths. */
+    private void readObject(ObjectInputStream in)
+        throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int size = in.readInt();
+        _paths = new String[size];
+        _ids = new ObjectId[size];
+        for (int k = 0; k < size; k += 1) {
+            _paths[k] = PathTable.intern(in.readUTF());
+            _ids[k] = ObjectId.read(in);
+        }
+    }
+
+    /** The paths of the entries, in order. */
+    private transient String[] _paths;
+    /** The blob ids of the entries. */
+    private transient ObjectId[] _ids;
+}
@@ -0,0 +1,214 @@
+package gitlet;
+
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/** An integrity check of an object store.  Every stored copy of every
+ * object, loose or packed, is read and hashed again, in parallel, and its
+ * id compared with the id it is stored under.  Then the commit graph is
+ * walked from the roots (branch tips and staged blobs) to check that every
+ * parent and every blob that a commit refers to is present; the parents of
+ * graft points are not expected to be.
+ * @author Chris Zhan */
+class Fsck {
+
+    /** The name of each type of object. */
+    private static final String[] KINDS = { "blob", "commit", "chunk" };
+
+    /** A check of STORE. */
+    Fsck(ObjectStore store) {
+        _store = store;
+    }
+
+    /** Checks the store, with the commits TIPS and blobs STAGED as the
+     * roots of the connectivity check. */
+    void check(Collection<ObjectId> tips, Collection<ObjectId> staged) {
+        long start = System.nanoTime();
+        List<Item> items = items();
+        _problems.addAll(items.parallelStream().map(this::verify)
+                .filter(Objects::nonNull).sorted()
+                .collect(Collectors.toList()));
+        _objects = items.size();
+        checkConnectivity(tips, staged);
+        _nanos = System.nanoTime() - start;
+    }
+
+    /** Returns the problems found, one line each. */
+    List<String> problems() {
+        return Collections.unmodifiableList(_problems);
+    }
+
+    /** Returns the number of stored objects checked. */
+    int objects() {
+        return _objects;
+    }
+
+    /** Returns the total size of the stored objects checked, in bytes. */
+    long bytes() {
+        return _bytes.sum();
+    }
+
+    /** Returns the time the check took, in nanoseconds. */
+    long nanos() {
+        return _nanos;
+    }
+
+    /** A stored copy of an object. */
+    private static class Item {
+        /** The copy of the object with id ID and type TYPE in PACK, or in
+         * a loose file if PACK is null. */
+        Item(ObjectId id, byte type, Pack pack) {
+            this.id = id;
+            this.type = type;
+            this.pack = pack;
+        }
+
+        /** The id the object is stored under. */
+        private final ObjectId id;
+        /** The type of the object. */
+        private final byte type;
+        /** The pack holding this copy, or null if it is loose. */
+        private final Pack pack;
+    }
+
+    /** Returns every stored copy of every object. */
+    private List<Item> items() {
+        ArrayList<Item> result = new ArrayList<>();
+        for (ObjectId id : _store.looseBlobIds().toList()) {
+            result.add(new Item(id, Pack.BLOB, null));
+        }
+        for (ObjectId id : _store.looseCommitIds().toList()) {
+            result.add(new Item(id, Pack.COMMIT, null));
+        }
+        for (ObjectId id : _store.looseChunkIds().toList()) {
+            result.add(new Item(id, Pack.CHUNK, null));
+        }
+        for (Pack pack : _store.packs()) {
+            for (int k = 0; k < pack.size(); k += 1) {
+                result.add(new Item(pack.id(k), pack.type(k), pack));
+            }
+        }
+        return result;
+    }
+
+    /** Reads and hashes ITEM.
+     * @return a description of the problem with it, or null if there is
+     * none. */
+    private String verify(Item item) {
+        String kind = KINDS[item.type];
+        String where = item.pack == null ? ""
+                : " in " + item.pack.packFile().getName();
+        try {
+            byte[] contents;
+            if (item.pack == null) {
+                contents = Utils.readContents(ObjectStore.looseFile(
+                        _store.directory(item.type), item.id));
+            } else {
+                contents = item.pack.contents(item.pack.position(item.id));
+            }
+            _bytes.add(contents.length);
+            ObjectId actual;
+            if (item.type == Pack.BLOB) {
+                Blob blob = Blob.decode(item.id, contents);
+                if (blob.chunked()) {
+                    actual = chunkedId(blob);
+                    if (actual == null) {
+                        return String.format("missing chunk in %s %s%s",
+                                kind, item.id, where);
+                    }
+                } else {
+                    actual = blob.computeId();
+                }
+            } else if (item.type == Pack.CHUNK) {
+                actual = Chunker.idOf(contents);
+            } else {
+                CommitTree.CommitNode commit = Utils.deserialize(contents,
+                        CommitTree.CommitNode.class);
+                actual = commit.id().equals(item.id) ? commit.computeId()
+                        : commit.id();
+            }
+            if (!actual.equals(item.id)) {
+                return String.format("hash mismatch %s %s%s (hashes to %s)",
+                        kind, item.id, where, actual);
+            }
+            return null;
+        } catch (GitletException | IllegalArgumentException excp) {
+            return String.format("corrupt %s %s%s", kind, item.id, where);
+        }
+    }
+
+    /** Returns the SHA-1 of the contents of BLOB, a chunked blob, read
+     * from its chunks, or null if a chunk is missing or the chunks do not
+     * add up to the size of BLOB. */
+    private ObjectId chunkedId(Blob blob) {
+        MessageDigest digest = Utils.newSha1Digest();
+        long size = 0;
+        for (ObjectId chunk : blob.chunks()) {
+            byte[] contents = _store.readRaw(chunk, Pack.CHUNK);
+            if (contents == null) {
+                return null;
+            }
+            digest.update(contents);
+            size += contents.length;
+        }
+        return size == blob.size() ? ObjectId.of(digest.digest()) : null;
+    }
+
+    /** Walks the commit graph from TIPS, recording each missing commit and
+     * blob, and checks that the blobs STAGED are present. */
+    private void checkConnectivity(Collection<ObjectId> tips,
+                                   Collection<ObjectId> staged) {
+        ObjectIdSet visited = new ObjectIdSet();
+        ArrayDeque<ObjectId> pending = new ArrayDeque<>(tips);
+        while (!pending.isEmpty()) {
+            ObjectId id = pending.pop();
+            if (!visited.add(id)) {
+                continue;
+            }
+            if (!_store.hasCommit(id)) {
+                _problems.add("missing commit " + id);
+                continue;
+            }
+            CommitTree.CommitNode commit;
+            try {
+                commit = _store.readCommit(id);
+            } catch (GitletException | IllegalArgumentException excp) {
+                continue;
+            }
+            FileTree files = commit.files();
+            for (int k = 0; k < files.size(); k += 1) {
+                if (!_store.hasBlob(files.id(k))) {
+                    _problems.add(String.format(
+                            "missing blob %s (%s in commit %s)",
+                            files.id(k), files.path(k), id));
+                }
+            }
+            for (String parentId : _store.shallow().parentIds(commit)) {
+                pending.push(ObjectId.fromHex(parentId));
+            }
+        }
+        for (ObjectId id : staged) {
+            if (!_store.hasBlob(id)) {
+                _problems.add("missing blob " + id + " (staged)");
+            }
+        }
+    }
+
+    /** The store being checked. */
+    private final ObjectStore _store;
+    /** The problems found. */
+    private final ArrayList<String> _problems = new ArrayList<>();
+    /** The number of stored objects checked. */
+    private int _objects;
+    /** The total size of the stored objects checked. */
+    private final LongAdder _bytes = new LongAdder();
+    /** The time taken by the check. */
+    private long _nanos;
+}
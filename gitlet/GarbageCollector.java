@@ -0,0 +1,347 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Garbage collection of an object store.  Every object in the store,
+ * loose or packed, is given a position in the sorted list of all ids.  The
+ * objects reachable from the roots (branch tips and staged blobs) are then
+ * marked in a bitmap over those positions by walking the commit graph one
+ * commit at a time, so memory grows with the number of objects rather than
+ * with their size.  The marked objects are repacked into a single new pack;
+ * unmarked objects are deleted once they are older than the grace period,
+ * and are kept as loose files until then.  The new pack gets reachability
+ * bitmaps for the branch tips, and the bitmaps of the old packs let the
+ * next collection skip walking the history they cover.  A shallow
+ * repository gets no bitmaps, since deepening it would make them stale.
+ * @author Chris Zhan */
+class GarbageCollector {
+
+    /** The default grace period, in milliseconds: two weeks. */
+    static final long DEFAULT_GRACE = 14L * 24 * 60 * 60 * 1000;
+
+    /** A collector for STORE that spares unreachable objects younger than
+     * GRACE milliseconds. */
+    GarbageCollector(ObjectStore store, long grace) {
+        _store = store;
+        _cutoff = System.currentTimeMillis() - grace;
+    }
+
+    /** Collects the garbage in the store, keeping every object reachable
+     * from the commits with ids TIPS and the blobs with ids STAGED.  Unless
+     * the store is shallow, the new pack gets a reachability bitmap for
+     * each of TIPS. */
+    void collect(Collection<ObjectId> tips, Collection<ObjectId> staged) {
+        _oldPacks = new ArrayList<>(_store.packs());
+        gatherObjects();
+        BitSet reachable = mark(tips, staged);
+        Pack pack = repack(reachable);
+        if (_store.shallow().isEmpty()) {
+            writeBitmaps(pack, reachable);
+        }
+        sweep(reachable);
+        for (Pack old : _oldPacks) {
+            if (old.packFile().equals(pack.packFile())) {
+                old.close();
+            } else {
+                old.delete();
+            }
+        }
+        _store.setPacks(Collections.singletonList(pack));
+        deleteLegacyFiles();
+        if (_prunedCommits > 0) {
+            CommitTree.reindexCommits();
+        }
+    }
+
+    /** Returns the number of objects in the new pack. */
+    int packed() {
+        return _packed;
+    }
+
+    /** Returns the number of objects deleted. */
+    int pruned() {
+        return _pruned;
+    }
+
+    /** Assigns positions to all objects of the store: sets _ids to their
+     * ids in increasing order and _types to their types. */
+    private void gatherObjects() {
+        ObjectIdSet blobs = _store.looseBlobIds();
+        ObjectIdSet commits = _store.looseCommitIds();
+        ObjectIdSet chunks = _store.looseChunkIds();
+        for (Pack pack : _store.packs()) {
+            for (int k = 0; k < pack.size(); k += 1) {
+                if (pack.type(k) == Pack.BLOB) {
+                    blobs.add(pack.id(k));
+                } else if (pack.type(k) == Pack.COMMIT) {
+                    commits.add(pack.id(k));
+                } else {
+                    chunks.add(pack.id(k));
+                }
+            }
+        }
+        ArrayList<ObjectId> ids = new ArrayList<>(blobs.size()
+                + commits.size() + chunks.size());
+        ids.addAll(blobs.toList());
+        ids.addAll(commits.toList());
+        ids.addAll(chunks.toList());
+        _ids = ids.toArray(new ObjectId[0]);
+        Arrays.sort(_ids);
+        _types = new byte[_ids.length];
+        for (int k = 0; k < _ids.length; k += 1) {
+            _types[k] = commits.contains(_ids[k]) ? Pack.COMMIT
+                    : chunks.contains(_ids[k]) ? Pack.CHUNK : Pack.BLOB;
+        }
+    }
+
+    /** Returns the position of the object with id ID, or a negative number
+     * if it is not in the store. */
+    private int position(ObjectId id) {
+        return Arrays.binarySearch(_ids, id);
+    }
+
+    /** Returns the bitmap of the positions of the objects reachable from
+     * the commits TIPS and the blobs STAGED.  Also records the bitmap of
+     * each tip in _tipBitmaps. */
+    private BitSet mark(Collection<ObjectId> tips,
+                        Collection<ObjectId> staged) {
+        BitSet reachable = new BitSet(_ids.length);
+        for (ObjectId tip : tips) {
+            if (position(tip) >= 0 && !_tipBitmaps.containsKey(tip)) {
+                BitSet bits = reachableFrom(tip);
+                _tipBitmaps.put(tip, bits);
+                reachable.or(bits);
+            }
+        }
+        for (ObjectId id : staged) {
+            markBlob(id, reachable);
+        }
+        return reachable;
+    }
+
+    /** Returns the bitmap of the positions of the objects reachable from
+     * the commit TIP.  The walk stops at commits whose bitmaps are already
+     * known, from an earlier tip or from the bitmap index of an old pack,
+     * and takes their bitmaps instead. */
+    private BitSet reachableFrom(ObjectId tip) {
+        BitSet result = new BitSet(_ids.length);
+        ArrayDeque<ObjectId> pending = new ArrayDeque<>();
+        pending.push(tip);
+        while (!pending.isEmpty()) {
+            ObjectId id = pending.pop();
+            int k = position(id);
+            if (k < 0 || result.get(k)) {
+                continue;
+            }
+            BitSet known = _tipBitmaps.get(id);
+            if (known != null) {
+                result.or(known);
+                continue;
+            }
+            if (addStoredBitmap(id, result)) {
+                continue;
+            }
+            result.set(k);
+            CommitTree.CommitNode commit = _store.readCommit(id);
+            FileTree files = commit.files();
+            for (int i = 0; i < files.size(); i += 1) {
+                markBlob(files.id(i), result);
+            }
+            for (String parentId : _store.shallow().parentIds(commit)) {
+                pending.push(ObjectId.fromHex(parentId));
+            }
+        }
+        return result;
+    }
+
+    /** Sets the position in BITS of the blob with id ID and, the first time
+     * it is set, those of the blob's chunks. */
+    private void markBlob(ObjectId id, BitSet bits) {
+        int b = position(id);
+        if (b < 0 || bits.get(b)) {
+            return;
+        }
+        bits.set(b);
+        for (ObjectId chunk : _store.chunksOf(id)) {
+            int c = position(chunk);
+            if (c >= 0) {
+                bits.set(c);
+            }
+        }
+    }
+
+    /** If an old pack has a reachability bitmap for COMMIT, adds the
+     * positions of the objects in it to RESULT.  Stored bitmaps are not
+     * used in a shallow repository, whose history may since have been
+     * deepened.
+     * @return true iff there was such a bitmap. */
+    private boolean addStoredBitmap(ObjectId commit, BitSet result) {
+        if (!_store.shallow().isEmpty()) {
+            return false;
+        }
+        for (Pack pack : _oldPacks) {
+            BitmapIndex index = pack.bitmaps();
+            EwahBitmap bitmap = index == null ? null : index.get(commit);
+            if (bitmap != null) {
+                bitmap.forEach(k -> {
+                    int p = position(pack.id(k));
+                    if (p >= 0) {
+                        result.set(p);
+                    }
+                });
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Writes the objects at the positions in REACHABLE into a new pack.
+     * @return the new pack. */
+    private Pack repack(BitSet reachable) {
+        ObjectId[] ids = new ObjectId[reachable.cardinality()];
+        byte[] types = new byte[ids.length];
+        int n = 0;
+        for (int k = reachable.nextSetBit(0); k >= 0;
+             k = reachable.nextSetBit(k + 1)) {
+            ids[n] = _ids[k];
+            types[n] = _types[k];
+            n += 1;
+        }
+        _packed = n;
+        return Pack.write(_store.packDirectory(), ids, types, _store);
+    }
+
+    /** Writes the bitmaps of the tips, translated from positions among all
+     * objects to positions in PACK, which holds the objects in REACHABLE. */
+    private void writeBitmaps(Pack pack, BitSet reachable) {
+        int[] packPosition = new int[_ids.length];
+        int n = 0;
+        for (int k = reachable.nextSetBit(0); k >= 0;
+             k = reachable.nextSetBit(k + 1)) {
+            packPosition[k] = n;
+            n += 1;
+        }
+        TreeMap<ObjectId, EwahBitmap> bitmaps = new TreeMap<>();
+        for (Map.Entry<ObjectId, BitSet> entry : _tipBitmaps.entrySet()) {
+            BitSet bits = entry.getValue();
+            BitSet packBits = new BitSet(n);
+            for (int k = bits.nextSetBit(0); k >= 0;
+                 k = bits.nextSetBit(k + 1)) {
+                packBits.set(packPosition[k]);
+            }
+            bitmaps.put(entry.getKey(), EwahBitmap.of(packBits));
+        }
+        new BitmapIndex(bitmaps).write(pack.bitmapFile());
+    }
+
+    /** Deletes the loose copies of the objects in REACHABLE, which are now
+     * packed, and the unreachable objects older than the grace period.
+     * Unreachable objects in the old packs that are still within the grace
+     * period are written out as loose files, keeping the age of their
+     * pack. */
+    private void sweep(BitSet reachable) {
+        for (int k = 0; k < _ids.length; k += 1) {
+            File loose = ObjectStore.looseFile(directory(_types[k]), _ids[k]);
+            if (reachable.get(k)) {
+                loose.delete();
+            } else if (loose.isFile()) {
+                if (loose.lastModified() < _cutoff) {
+                    prune(k, loose);
+                }
+            } else {
+                Pack old = packHolding(k);
+                long age = old.idxFile().lastModified();
+                if (age < _cutoff) {
+                    _pruned += 1;
+                    _prunedCommits += _types[k] == Pack.COMMIT ? 1 : 0;
+                } else {
+                    ObjectStore.writeAtomically(loose,
+                            old.contents(old.position(_ids[k])));
+                    loose.setLastModified(age);
+                }
+            }
+        }
+    }
+
+    /** Deletes LOOSE, the file of the unreachable object at position K. */
+    private void prune(int k, File loose) {
+        if (loose.delete()) {
+            _pruned += 1;
+            _prunedCommits += _types[k] == Pack.COMMIT ? 1 : 0;
+        }
+    }
+
+    /** Returns the old pack holding the object at position K. */
+    private Pack packHolding(int k) {
+        for (Pack pack : _oldPacks) {
+            if (pack.contains(_ids[k], _types[k])) {
+                return pack;
+            }
+        }
+        throw Utils.error("object %s vanished during gc", _ids[k]);
+    }
+
+    /** Returns the folder of loose objects of type TYPE. */
+    private File directory(byte type) {
+        return _store.directory(type);
+    }
+
+    /** Deletes the staging folder used by old versions of Gitlet, and any
+     * temporary files older than the grace period left behind by
+     * interrupted writes. */
+    private void deleteLegacyFiles() {
+        File staging = new File(_store.blobDirectory().getParentFile(),
+                "staging");
+        List<String> staged = Utils.plainFilenamesIn(staging);
+        if (staged != null) {
+            for (String name : staged) {
+                new File(staging, name).delete();
+            }
+            staging.delete();
+        }
+        for (File dir : new File[] { _store.blobDirectory(),
+            _store.commitDirectory(), _store.chunkDirectory(),
+            _store.packDirectory() }) {
+            List<String> names = Utils.plainFilenamesIn(dir);
+            if (names == null) {
+                continue;
+            }
+            for (String name : names) {
+                File file = new File(dir, name);
+                if (name.startsWith("tmp-")
+                        && file.lastModified() < _cutoff) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    /** The store being collected. */
+    private final ObjectStore _store;
+    /** Unreachable objects last modified before this time are deleted. */
+    private final long _cutoff;
+    /** The packs of the store before collection. */
+    private List<Pack> _oldPacks;
+    /** The bitmap of the positions of the objects reachable from each
+     * tip. */
+    private final TreeMap<ObjectId, BitSet> _tipBitmaps = new TreeMap<>();
+    /** The ids of all objects in the store, in increasing order. */
+    private ObjectId[] _ids;
+    /** The type of the object at each position of _ids. */
+    private byte[] _types;
+    /** The number of objects in the new pack. */
+    private int _packed;
+    /** The number of objects deleted. */
+    private int _pruned;
+    /** The number of commits deleted. */
+    private int _prunedCommits;
+}
@@ -1,7 +1,7 @@
 package gitlet;
 import java.io.File;
-import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.List;
 
 /** The class representing the local file version control system of Gitlet.
@@ -23,15 +23,23 @@ public class Gitlet implements Serializable {
      * Errors if .gitlet already exists. */
     Gitlet() {
         GITLET_DIRECTORY.mkdir();
-        FILES_DIRECTORY.mkdir();
+        ObjectStore.local().create();
         _commitTree = new CommitTree();
     }
 
-    /** Adds this file to the stage.
-     * @param file the file to be added.
-     * @param name the name of the file. */
-    void add(File file, String name) {
-        _commitTree.addFile(file, name);
+    /** Adds these working files to the stage.
+     * @param paths the working-tree paths of the files to be added.
+     * @return the number of files added. */
+    int add(List<String> paths) {
+        _commitTree.addFiles(paths);
+        return paths.size();
+    }
+
+    /** Adds the whole working tree to the stage, including the removal of
+     * deleted files.
+     * @return the number of files added. */
+    int addAll() {
+        return _commitTree.addAll();
     }
 
     /** Commits all files from the stage to the CommitTree.
@@ -42,9 +50,10 @@ public class Gitlet implements Serializable {
 
     /** Prints out a message displaying information about each commit,
      * going backwards along the CommitTree until the initial commit.
+     * @param options which commits to show, and how.
      */
-    void log() {
-        _commitTree.log();
+    void log(LogOptions options) {
+        _commitTree.log(options);
     }
 
     void globalLog() {
@@ -61,28 +70,19 @@ public class Gitlet implements Serializable {
             _commitTree.checkoutCommitNodeFile(
                     _commitTree.head().node(), args[2]);
         } else if (args[2].equals("--")) {
-            File commitFile = null;
-            if (args[1].length() == 8) {
-                List<String> commitFileNames = Utils.plainFilenamesIn(
-                        CommitTree.COMMIT_DIRECTORY);
-                boolean foundFile = false;
-                for (String commitFileName : commitFileNames) {
-                    if (args[1].equals(commitFileName.substring(0, 8))) {
-                        commitFile = Utils.join(
-                                CommitTree.COMMIT_DIRECTORY, commitFileName);
-                        foundFile = true;
+            String commitID = args[1];
+            if (commitID.length() == 8) {
+                for (ObjectId id
+                        : ObjectStore.local().commitIds().toList()) {
+                    if (id.toString().startsWith(args[1])) {
+                        commitID = id.toString();
                     }
-                } if (!foundFile) {
-                    Main.exitWithError("No commit with that id exists.");
                 }
-            } else {
-                commitFile = Utils.join(CommitTree.COMMIT_DIRECTORY, args[1]);
             }
-            if (!commitFile.exists()) {
+            CommitTree.CommitNode commitNode = CommitTree.readCommit(commitID);
+            if (commitNode == null) {
                 Main.exitWithError("No commit with that id exists.");
             }
-            CommitTree.CommitNode commitNode = Utils.readObject(commitFile,
-                        CommitTree.CommitNode.class);
             _commitTree.checkoutCommitNodeFile(commitNode, args[3]);
         } else {
             Main.exitWithError("Incorrect operands.");
@@ -116,24 +116,123 @@ public class Gitlet implements Serializable {
     void merge(String branchName) {
         _commitTree.merge(branchName);
     }
+
+    void addRemote(String name, String path) {
+        _commitTree.addRemote(name, path);
+    }
+
+    void rmRemote(String name) {
+        _commitTree.removeRemote(name);
+    }
+
+    void fetch(String remoteName, String branchName, int depth) {
+        _commitTree.fetch(remoteName, branchName, depth);
+    }
+
+    void push(String remoteName, String branchName) {
+        _commitTree.push(remoteName, branchName);
+    }
+
+    void pull(String remoteName, String branchName) {
+        _commitTree.pull(remoteName, branchName);
+    }
+
+    void createBundle(String fileName, List<String> branchNames,
+                      List<String> baseIDs, int depth) {
+        _commitTree.createBundle(fileName, branchNames, baseIDs, depth);
+    }
+
+    void unbundle(String fileName) {
+        _commitTree.unbundle(fileName);
+    }
+
+    /** Makes the entries ENTRIES, in cone mode if CONE, the sparse checkout
+     * of this repository, and updates the working directory to match.
+     * @param cone whether the entries are cone directories.
+     * @param entries the directories or patterns. */
+    void setSparseCheckout(boolean cone, List<String> entries) {
+        _commitTree.applySparse(SparseCheckout.set(cone, entries));
+    }
+
+    /** Turns off the sparse checkout, writing every file of the head
+     * commit back into the working directory. */
+    void disableSparseCheckout() {
+        _commitTree.applySparse(SparseCheckout.disable());
+    }
+
+    /** Prints the entries of the sparse checkout, one per line, after a
+     * line giving its mode. */
+    void listSparseCheckout() {
+        SparseCheckout sparse = SparseCheckout.local();
+        if (!sparse.enabled()) {
+            System.out.println("Sparse checkout is off.");
+            return;
+        }
+        System.out.println(sparse.cone() ? "cone" : "patterns");
+        for (String entry : sparse.entries()) {
+            System.out.println(entry);
+        }
+    }
+    /** Deletes the objects that no branch or staged file refers to and are
+     * older than GRACE milliseconds, and packs the rest, and the refs.
+     * @param grace the grace period of unreachable objects. */
+    void gc(long grace) {
+        ArrayList<ObjectId> tips = new ArrayList<>();
+        for (Branch branch : _commitTree.branches()) {
+            tips.add(ObjectId.fromHex(branch.nodeId()));
+        }
+        GarbageCollector collector = new GarbageCollector(ObjectStore.local(),
+                grace);
+        collector.collect(tips,
+                _commitTree.stage().stagedFiles().values());
+        Refs.local().pack();
+        System.out.printf("Packed %d objects, pruned %d.%n",
+                collector.packed(), collector.pruned());
+    }
+
+    /** Verifies the hashes of all stored objects and the connectivity of
+     * the commit graph, and reports the problems found and the rate at
+     * which objects were checked. */
+    void fsck() {
+        ArrayList<ObjectId> tips = new ArrayList<>();
+        for (Branch branch : _commitTree.branches()) {
+            tips.add(ObjectId.fromHex(branch.nodeId()));
+        }
+        Fsck fsck = new Fsck(ObjectStore.local());
+        fsck.check(tips, _commitTree.stage().stagedFiles().values());
+        for (String problem : fsck.problems()) {
+            System.out.println(problem);
+        }
+        double seconds = Math.max(fsck.nanos(), 1) / 1e9;
+        double megabytes = fsck.bytes() / 1e6;
+        System.out.printf("Checked %d objects (%.1f MB) in %.3f s: "
+                + "%.0f objects/sec, %.1f MB/sec.%n", fsck.objects(),
+                megabytes, seconds, fsck.objects() / seconds,
+                megabytes / seconds);
+        if (!fsck.problems().isEmpty()) {
+            System.out.printf("Found %d problems.%n", fsck.problems().size());
+        }
+    }
+
     /** Reads in and deserializes a Gitlet object from a file named repo in
      * .gitlet directory.
      * @return the gitlet object.
      */
     public static Gitlet readGitlet() {
-        return Utils.readObject(REPO, Gitlet.class);
+        try (Trace trace = Trace.phase("read repository")) {
+            return Utils.readObject(REPO, Gitlet.class);
+        }
     }
 
     /**
-     * Saves the Gitlet object to a file named repo for future use.
+     * Saves the Gitlet object to a file named repo for future use.  The
+     * file is replaced atomically, so a crash leaves either the old or the
+     * new repository behind.
      */
     public void saveGitlet() {
-        try {
-            REPO.createNewFile();
-        } catch (IOException e) {
-            e.printStackTrace();
+        try (Trace trace = Trace.phase("save repository")) {
+            ObjectStore.writeAtomically(REPO, Utils.serialize(this));
         }
-        Utils.writeObject(REPO, this);
     }
 
     /** Accessor method for commit tree.
@@ -0,0 +1,136 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** The graph that log --graph draws to the left of the log: one column,
+ * or lane, for each line of history that is waiting for its next commit,
+ * holding the id of that commit.  A commit is drawn as * in its lane and
+ * the other lanes as |.  Once a commit is shown, its lane waits for its
+ * first parent, and a new lane to its right for each other parent, drawn
+ * as \ branching off it; two lanes waiting for the same commit are joined,
+ * the right one drawn as / running into the left one, and a lane whose
+ * commit has no parents ends.  For example, a merge of a branch with one
+ * commit of its own is drawn as
+ *     * Merged other into master.
+ *     |\
+ *     | * Add k
+ *     * | Add m
+ *     |/
+ *     * Add h
+ * @author Chris Zhan */
+class LogGraph {
+
+    /** Returns the start of the first line of the log entry of the commit
+     * with id ID, which goes in the lane waiting for it, or in a new lane
+     * on the right if none is, followed by a blank.  Makes that commit the
+     * current one. */
+    String commitLine(String id) {
+        _column = _lanes.indexOf(id);
+        if (_column < 0) {
+            _lanes.add(id);
+            _column = _lanes.size() - 1;
+        }
+        char[] line = blank(_lanes.size());
+        for (int i = 0; i < _lanes.size(); i += 1) {
+            line[2 * i] = i == _column ? '*' : '|';
+        }
+        return new String(line);
+    }
+
+    /** Returns the start of the other lines of the log entry of the
+     * current commit, followed by a blank. */
+    String bodyLine() {
+        char[] line = blank(_lanes.size());
+        for (int i = 0; i < _lanes.size(); i += 1) {
+            line[2 * i] = '|';
+        }
+        return new String(line);
+    }
+
+    /** Moves the lane of the current commit on to its parents, whose ids
+     * are PARENTIDS, joining lanes that then wait for the same commit.
+     * @return the lines that draw the change, in order. */
+    List<String> advance(List<String> parentIds) {
+        ArrayList<String> lines = new ArrayList<>();
+        int column = _column;
+        if (parentIds.isEmpty()) {
+            _lanes.remove(column);
+            if (column < _lanes.size()) {
+                char[] line = blank(_lanes.size() + 1);
+                for (int i = 0; i <= _lanes.size(); i += 1) {
+                    if (i < column) {
+                        line[2 * i] = '|';
+                    } else if (i > column) {
+                        line[2 * i - 1] = '/';
+                    }
+                }
+                lines.add(trim(line));
+            }
+        } else {
+            _lanes.set(column, parentIds.get(0));
+            for (int j = 1; j < parentIds.size(); j += 1) {
+                int added = column + j;
+                char[] line = blank(_lanes.size() + 1);
+                for (int i = 0; i < _lanes.size(); i += 1) {
+                    if (i < added) {
+                        line[2 * i] = '|';
+                    } else {
+                        line[2 * i + 1] = '\\';
+                    }
+                }
+                line[2 * added - 1] = '\\';
+                _lanes.add(added, parentIds.get(j));
+                lines.add(trim(line));
+            }
+        }
+        for (int d = duplicate(); d >= 0; d = duplicate()) {
+            int e = _lanes.indexOf(_lanes.get(d));
+            char[] line = blank(_lanes.size());
+            for (int i = 0; i < _lanes.size(); i += 1) {
+                if (i < d) {
+                    line[2 * i] = '|';
+                } else {
+                    line[2 * i - 1] = '/';
+                }
+                if (i > e && i < d) {
+                    line[2 * i - 1] = '_';
+                }
+            }
+            _lanes.remove(d);
+            lines.add(trim(line));
+        }
+        return lines;
+    }
+
+    /** Returns the first lane waiting for the same commit as a lane to its
+     * left, or -1 if there is none. */
+    private int duplicate() {
+        for (int d = 1; d < _lanes.size(); d += 1) {
+            if (_lanes.indexOf(_lanes.get(d)) < d) {
+                return d;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns a line of blanks wide enough for LANES lanes, each followed
+     * by a blank. */
+    private static char[] blank(int lanes) {
+        char[] line = new char[2 * lanes];
+        Arrays.fill(line, ' ');
+        return line;
+    }
+
+    /** Returns LINE without its trailing blanks. */
+    private static String trim(char[] line) {
+        return new String(line).stripTrailing();
+    }
+
+    /** The id of the commit each lane is waiting for, from left to
+     * right. */
+    private final ArrayList<String> _lanes = new ArrayList<>();
+    /** The lane of the current commit. */
+    private int _column;
+}
@@ -0,0 +1,115 @@
+package gitlet;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+
+/** The options accepted by the log command:
+ *      -n N, -N, --max-count=N   show at most N commits.
+ *      --since=DATE, --until=DATE
+ *                                show only commits made in that range, where
+ *                                DATE is yyyy-MM-dd or yyyy-MM-ddTHH:mm:ss
+ *                                in the local time zone.
+ *      --oneline                 show each commit as a short id and message.
+ *      --graph                   show every commit reachable from the
+ *                                head, with a graph of the history, merges
+ *                                and all, to the left of the log.
+ * @author Chris Zhan */
+class LogOptions {
+
+    /** Returns the options given in ARGS[1..], exiting with an error if any
+     * of them are malformed. */
+    static LogOptions parse(String... args) {
+        LogOptions options = new LogOptions();
+        for (int i = 1; i < args.length; i += 1) {
+            String arg = args[i];
+            if (arg.equals("-n") && i + 1 < args.length) {
+                i += 1;
+                options._maxCount = parseCount(args[i]);
+            } else if (arg.startsWith("--max-count=")) {
+                options._maxCount = parseCount(arg.substring(
+                        "--max-count=".length()));
+            } else if (arg.matches("-n?\\d+")) {
+                options._maxCount = parseCount(arg.replaceAll("\\D", ""));
+            } else if (arg.startsWith("--since=")) {
+                options._since = parseDate(arg.substring("--since=".length()));
+            } else if (arg.startsWith("--until=")) {
+                options._until = parseDate(arg.substring("--until=".length()));
+            } else if (arg.equals("--oneline")) {
+                options._oneline = true;
+            } else if (arg.equals("--graph")) {
+                options._graph = true;
+            } else {
+                Main.exitWithError("Incorrect operands.");
+            }
+        }
+        return options;
+    }
+
+    /** Returns the commit count in ARG. */
+    private static int parseCount(String arg) {
+        try {
+            int count = Integer.parseInt(arg);
+            if (count >= 0) {
+                return count;
+            }
+        } catch (NumberFormatException excp) {
+            /* Fall through to the error below. */
+        }
+        Main.exitWithError("Incorrect operands.");
+        return 0;
+    }
+
+    /** Returns the date in ARG as seconds since the epoch. */
+    private static long parseDate(String arg) {
+        try {
+            LocalDateTime time;
+            if (arg.contains("T")) {
+                time = LocalDateTime.parse(arg);
+            } else {
+                time = LocalDate.parse(arg).atStartOfDay();
+            }
+            return time.atZone(ZoneId.systemDefault()).toEpochSecond();
+        } catch (DateTimeParseException excp) {
+            Main.exitWithError("Incorrect operands.");
+            return 0;
+        }
+    }
+
+    /** Returns the maximum number of commits to show. */
+    int maxCount() {
+        return _maxCount;
+    }
+
+    /** Returns the earliest commit time to show, in epoch seconds. */
+    long since() {
+        return _since;
+    }
+
+    /** Returns the latest commit time to show, in epoch seconds. */
+    long until() {
+        return _until;
+    }
+
+    /** Returns true iff commits are shown one per line. */
+    boolean oneline() {
+        return _oneline;
+    }
+
+    /** Returns true iff the history graph is drawn. */
+    boolean graph() {
+        return _graph;
+    }
+
+    /** The maximum number of commits to show. */
+    private int _maxCount = Integer.MAX_VALUE;
+    /** The earliest commit time to show. */
+    private long _since = Long.MIN_VALUE;
+    /** The latest commit time to show. */
+    private long _until = Long.MAX_VALUE;
+    /** True iff commits are shown one per line. */
+    private boolean _oneline;
+    /** True iff the history graph is drawn. */
+    private boolean _graph;
+}
@@ -1,6 +1,9 @@
 package gitlet;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /** Driver class for Gitlet, the tiny stupid version-control system.
  *  @author Chris Zhan
@@ -10,12 +13,38 @@ public class Main {
     /** Current Working Directory. */
     static final File CWD = new File(".");
 
-    /** Usage: java gitlet.Main ARGS, where ARGS contains
-     *  <COMMAND> <OPERAND> .... */
+    /** Usage: java gitlet.Main [--trace[=FILE]] ARGS, where ARGS contains
+     *  <COMMAND> <OPERAND> ....  With --trace, reports where the command
+     *  spent its time (see Trace). */
     public static void main(String... args) {
+        if (args.length > 0 && (args[0].equals("--trace")
+                || args[0].startsWith("--trace="))) {
+            Trace.configure(args[0]);
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+        Trace.configureFromEnvironment();
+        try {
+            run(args);
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+        }
+    }
+
+    /** Runs the command ARGS, throwing a GitletException carrying the error
+     * message if it fails.
+     * @param args the command and its operands. */
+    static void run(String... args) {
         if (args.length == 0) {
             exitWithError("Please enter a command.");
         }
+        try (Trace trace = Trace.phase(args[0])) {
+            dispatch(args);
+        }
+    }
+
+    /** Runs the command ARGS, which has at least one word.
+     * @param args the command and its operands. */
+    private static void dispatch(String... args) {
         switch (args[0]) {
         case "init":
             if (args.length != 1) {
@@ -29,13 +58,7 @@ public class Main {
             break;
         case "rm": rm(args);
             break;
-        case "log":
-            if (args.length != 1) {
-                exitWithError("Incorrect operands.");
-            } else if (!Gitlet.GITLET_DIRECTORY.exists()) {
-                exitWithError("Not in an initialized Gitlet directory.");
-            }
-            log();
+        case "log": log(args);
             break;
         case "global-log":
             if (args.length > 1) {
@@ -65,6 +88,30 @@ public class Main {
             break;
         case "merge": merge(args);
             break;
+        case "add-remote": addRemote(args);
+            break;
+        case "rm-remote": rmRemote(args);
+            break;
+        case "fetch": case "push": case "pull": transfer(args);
+            break;
+        case "bundle": bundle(args);
+            break;
+        case "sparse-checkout": sparseCheckout(args);
+            break;
+        case "batch": Batch.main(args);
+            break;
+        case "gc": gc(args);
+            break;
+        case "pack-refs": packRefs(args);
+            break;
+        case "fsck":
+            if (args.length > 1) {
+                exitWithError("Incorrect operands.");
+            } else if (!Gitlet.GITLET_DIRECTORY.exists()) {
+                exitWithError("Not in an initialized Gitlet directory.");
+            }
+            fsck();
+            break;
         default:
             exitWithError("No command with that name exists.");
             break;
@@ -77,25 +124,47 @@ public class Main {
                     + "already exists in the current directory.");
         } else {
             _gitlet = new Gitlet();
-            _gitlet.saveGitlet();
+            saveGitlet();
         }
     }
 
-    /** Adds and stages a file whose name is in ARGS[1].
-     * @param args the name of the file. */
+    /** Adds and stages the files named in ARGS[1..].  Each name may be a
+     * file, a directory (adding every file under it) or a glob pattern;
+     * -A or --all adds the whole working tree and stages the removal of
+     * deleted files.  With -v or --verbose, reports the number of files
+     * added and the rate at which they were added.
+     * @param args the names of the files. */
     public static void add(String... args) {
-        if (args.length != 2) {
+        boolean all = false, verbose = false;
+        ArrayList<String> names = new ArrayList<>();
+        for (int i = 1; i < args.length; i += 1) {
+            switch (args[i]) {
+            case "-A": case "--all":
+                all = true;
+                break;
+            case "-v": case "--verbose":
+                verbose = true;
+                break;
+            default:
+                names.add(args[i]);
+                break;
+            }
+        }
+        if (all == !names.isEmpty()) {
             exitWithError("Incorrect operands.");
         } else if (!Gitlet.GITLET_DIRECTORY.exists()) {
             exitWithError("Not in an initialized Gitlet directory.");
         }
-        File addedFile = Utils.join(CWD, args[1]);
-        if (!addedFile.exists()) {
-            exitWithError("File does not exist.");
+        long start = System.nanoTime();
+        List<String> paths = all ? null : WorkingTree.expand(names);
+        _gitlet = readGitlet();
+        int added = all ? _gitlet.addAll() : _gitlet.add(paths);
+        saveGitlet();
+        if (verbose) {
+            double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+            System.out.printf("Added %d files in %.3f s (%.0f files/sec).%n",
+                    added, seconds, added / seconds);
         }
-        _gitlet = Gitlet.readGitlet();
-        _gitlet.add(addedFile, args[1]);
-        _gitlet.saveGitlet();
     }
 
     /** Commits all staged files with the message.
@@ -108,12 +177,12 @@ public class Main {
         } else if (!Gitlet.GITLET_DIRECTORY.exists()) {
             exitWithError("Not in an initialized Gitlet directory.");
         }
-        _gitlet = Gitlet.readGitlet();
+        _gitlet = readGitlet();
         if (args[1].equals("")) {
             Main.exitWithError("Please enter a commit message.");
         }
         _gitlet.commit(args[1]);
-        _gitlet.saveGitlet();
+        saveGitlet();
     }
 
     public static void rm(String... args) {
@@ -124,103 +193,343 @@ public class Main {
         } else if (!Gitlet.GITLET_DIRECTORY.exists()) {
             exitWithError("Not in an initialized Gitlet directory.");
         }
-        _gitlet = Gitlet.readGitlet();
+        _gitlet = readGitlet();
         _gitlet.rm(args[1]);
-        _gitlet.saveGitlet();
+        saveGitlet();
     }
 
-    public static void log() {
-        _gitlet = Gitlet.readGitlet();
-        _gitlet.log();
+    /** Prints the log of the current branch, limited and formatted as
+     * requested by the options in ARGS[1..].
+     * @param args the arguments. */
+    public static void log(String... args) {
+        LogOptions options = LogOptions.parse(args);
+        if (!Gitlet.GITLET_DIRECTORY.exists()) {
+            exitWithError("Not in an initialized Gitlet directory.");
+        }
+        _gitlet = readGitlet();
+        _gitlet.log(options);
     }
 
     public static void globalLog() {
-        _gitlet = Gitlet.readGitlet();
+        _gitlet = readGitlet();
         _gitlet.globalLog();
     }
 
     public static void find(String... args) {
-        if (args.length > 2) {
+        if (args.length != 2) {
             exitWithError("Incorrect operands.");
         } else if (!Gitlet.GITLET_DIRECTORY.exists()) {
             exitWithError("Not in an initialized Gitlet directory.");
         }
-        _gitlet = Gitlet.readGitlet();
+        _gitlet = readGitlet();
         _gitlet.find(args[1]);
     }
 
     public static void status() {
-        _gitlet = Gitlet.readGitlet();
+        _gitlet = readGitlet();
         _gitlet.status();
     }
 
     public static void checkout(String... args) {
-        if (args.length > 4) {
+        if (!(args.length == 2
+                || args.length == 3 && args[1].equals("--")
+                || args.length == 4 && args[2].equals("--"))) {
             exitWithError("Incorrect operands.");
         } else if (!Gitlet.GITLET_DIRECTORY.exists()) {
             exitWithError("Not in an initialized Gitlet directory.");
         } else if (!Gitlet.GITLET_DIRECTORY.exists()) {
             exitWithError("Not in an initialized Gitlet directory.");
         }
-        _gitlet = Gitlet.readGitlet();
+        _gitlet = readGitlet();
         _gitlet.checkout(args);
-        _gitlet.saveGitlet();
+        saveGitlet();
     }
 
     public static void branch(String... args) {
-        if (args.length > 2) {
+        if (args.length != 2) {
             exitWithError("Incorrect operands.");
         } else if (!Gitlet.GITLET_DIRECTORY.exists()) {
             exitWithError("Not in an initialized Gitlet directory.");
         } else if (!Gitlet.GITLET_DIRECTORY.exists()) {
             exitWithError("Not in an initialized Gitlet directory.");
         }
-        _gitlet = Gitlet.readGitlet();
+        _gitlet = readGitlet();
         _gitlet.branch(args[1]);
-        _gitlet.saveGitlet();
     }
 
     public static void rmBranch(String... args) {
-        if (args.length > 2) {
+        if (args.length != 2) {
             exitWithError("Incorrect operands.");
         } else if (!Gitlet.GITLET_DIRECTORY.exists()) {
             exitWithError("Not in an initialized Gitlet directory.");
         }
-        _gitlet = Gitlet.readGitlet();
+        _gitlet = readGitlet();
         _gitlet.rmBranch(args[1]);
-        _gitlet.saveGitlet();
     }
 
     public static void reset(String... args) {
-        if (args.length > 2) {
+        if (args.length != 2) {
             exitWithError("Incorrect operands.");
         } else if (!Gitlet.GITLET_DIRECTORY.exists()) {
             exitWithError("Not in an initialized Gitlet directory.");
         }
-        _gitlet = Gitlet.readGitlet();
+        _gitlet = readGitlet();
         _gitlet.reset(args[1]);
-        _gitlet.saveGitlet();
+        saveGitlet();
     }
 
     public static void merge(String... args) {
-        if (args.length > 2) {
+        if (args.length != 2) {
             exitWithError("Incorrect operands.");
         } else if (!Gitlet.GITLET_DIRECTORY.exists()) {
             exitWithError("Not in an initialized Gitlet directory.");
         }
-        _gitlet = Gitlet.readGitlet();
+        _gitlet = readGitlet();
         _gitlet.merge(args[1]);
-        _gitlet.saveGitlet();
+        saveGitlet();
+    }
+
+    /** Records the repository whose .gitlet directory is ARGS[2] as the
+     * remote named ARGS[1].
+     * @param args the arguments. */
+    public static void addRemote(String... args) {
+        if (args.length != 3) {
+            exitWithError("Incorrect operands.");
+        } else if (!Gitlet.GITLET_DIRECTORY.exists()) {
+            exitWithError("Not in an initialized Gitlet directory.");
+        }
+        _gitlet = readGitlet();
+        _gitlet.addRemote(args[1], args[2]);
+        saveGitlet();
+    }
+
+    /** Forgets the remote named ARGS[1].
+     * @param args the arguments. */
+    public static void rmRemote(String... args) {
+        if (args.length != 2) {
+            exitWithError("Incorrect operands.");
+        } else if (!Gitlet.GITLET_DIRECTORY.exists()) {
+            exitWithError("Not in an initialized Gitlet directory.");
+        }
+        _gitlet = readGitlet();
+        _gitlet.rmRemote(args[1]);
+        saveGitlet();
     }
 
-    /** Throws a new GitletException with message MESSAGE.
-     *  Exits with error code 0.
+    /** Fetches, pushes or pulls (according to ARGS[0]) the branch ARGS[2]
+     * of the remote ARGS[1].  A fetch may end with an operand --depth=N,
+     * which copies only the last N commits of the branch.
+     * @param args the arguments. */
+    public static void transfer(String... args) {
+        int depth = Integer.MAX_VALUE;
+        if (args.length == 4 && args[0].equals("fetch")) {
+            depth = depth(args[3]);
+        } else if (args.length != 3) {
+            exitWithError("Incorrect operands.");
+        }
+        if (!Gitlet.GITLET_DIRECTORY.exists()) {
+            exitWithError("Not in an initialized Gitlet directory.");
+        }
+        _gitlet = readGitlet();
+        switch (args[0]) {
+        case "fetch":
+            _gitlet.fetch(args[1], args[2], depth);
+            break;
+        case "push":
+            _gitlet.push(args[1], args[2]);
+            break;
+        default:
+            _gitlet.pull(args[1], args[2]);
+            break;
+        }
+        saveGitlet();
+    }
+
+    /** Writes or reads a bundle.  With ARGS[1] "create", writes to the file
+     * ARGS[2] a bundle of the branches named in the rest of ARGS; an
+     * operand --base=ID leaves out the history of the commit ID, and an
+     * operand --depth=N all but the last N commits of each branch.  With
+     * ARGS[1] "unbundle", reads the bundle in the file ARGS[2].
+     * @param args the arguments. */
+    public static void bundle(String... args) {
+        ArrayList<String> branches = new ArrayList<>();
+        ArrayList<String> bases = new ArrayList<>();
+        int depth = Integer.MAX_VALUE;
+        for (int i = 3; i < args.length; i += 1) {
+            if (args[i].startsWith("--base=")) {
+                bases.add(args[i].substring("--base=".length()));
+            } else if (args[i].startsWith("--depth=")) {
+                depth = depth(args[i]);
+            } else {
+                branches.add(args[i]);
+            }
+        }
+        boolean create = args.length > 1 && args[1].equals("create");
+        boolean unbundle = args.length == 3 && args[1].equals("unbundle");
+        if (create && branches.isEmpty() || !create && !unbundle) {
+            exitWithError("Incorrect operands.");
+        } else if (!Gitlet.GITLET_DIRECTORY.exists()) {
+            exitWithError("Not in an initialized Gitlet directory.");
+        }
+        _gitlet = readGitlet();
+        if (create) {
+            _gitlet.createBundle(args[2], branches, bases, depth);
+        } else {
+            _gitlet.unbundle(args[2]);
+            saveGitlet();
+        }
+    }
+
+    /** Returns N, the depth given by the operand ARG, --depth=N, exiting
+     * with an error unless N is a positive number.
+     * @param arg the operand. */
+    private static int depth(String arg) {
+        int depth = 0;
+        if (arg.startsWith("--depth=")) {
+            try {
+                depth = Integer.parseInt(arg.substring("--depth=".length()));
+            } catch (NumberFormatException excp) {
+                depth = 0;
+            }
+        }
+        if (depth <= 0) {
+            exitWithError("Incorrect operands.");
+        }
+        return depth;
+    }
+
+    /** Configures the sparse checkout.  ARGS[1] "set" makes the rest of
+     * ARGS its entries: glob patterns, or directories if the first is
+     * --cone.  ARGS[1] "list" prints the entries, and ARGS[1] "disable"
+     * turns it off.
+     * @param args the arguments. */
+    public static void sparseCheckout(String... args) {
+        String action = args.length > 1 ? args[1] : "";
+        boolean cone = args.length > 2 && args[2].equals("--cone");
+        List<String> entries = new ArrayList<>();
+        for (int i = cone ? 3 : 2; i < args.length; i += 1) {
+            entries.add(args[i]);
+        }
+        if (!(action.equals("set") && !entries.isEmpty()
+                || (action.equals("list") || action.equals("disable"))
+                    && args.length == 2)) {
+            exitWithError("Incorrect operands.");
+        } else if (!Gitlet.GITLET_DIRECTORY.exists()) {
+            exitWithError("Not in an initialized Gitlet directory.");
+        }
+        _gitlet = readGitlet();
+        switch (action) {
+        case "set":
+            _gitlet.setSparseCheckout(cone, entries);
+            break;
+        case "disable":
+            _gitlet.disableSparseCheckout();
+            break;
+        default:
+            _gitlet.listSparseCheckout();
+            break;
+        }
+    }
+
+    /** Collects garbage: packs the objects reachable from a branch or the
+     * stage, and deletes the others once they are older than the grace
+     * period.  ARGS[1], if present, is --prune=now (no grace period) or
+     * --prune=N, a grace period of N days (by default, 14).
+     * @param args the arguments. */
+    public static void gc(String... args) {
+        long grace = GarbageCollector.DEFAULT_GRACE;
+        if (args.length > 2 || args.length == 2
+                && !args[1].startsWith("--prune=")) {
+            exitWithError("Incorrect operands.");
+        } else if (args.length == 2) {
+            String value = args[1].substring("--prune=".length());
+            try {
+                grace = value.equals("now") ? 0
+                        : Long.parseLong(value) * 24 * 60 * 60 * 1000;
+            } catch (NumberFormatException excp) {
+                grace = -1;
+            }
+            if (grace < 0) {
+                exitWithError("Incorrect operands.");
+            }
+        }
+        if (!Gitlet.GITLET_DIRECTORY.exists()) {
+            exitWithError("Not in an initialized Gitlet directory.");
+        }
+        _gitlet = readGitlet();
+        _gitlet.gc(grace);
+    }
+
+    /** Gathers the branches into the single file packed-refs.
+     * @param args the arguments. */
+    public static void packRefs(String... args) {
+        if (args.length > 1) {
+            exitWithError("Incorrect operands.");
+        } else if (!Gitlet.GITLET_DIRECTORY.exists()) {
+            exitWithError("Not in an initialized Gitlet directory.");
+        }
+        System.out.printf("Packed %d refs.%n", Refs.local().pack());
+    }
+
+    /** Verifies the integrity of the object store. */
+    public static void fsck() {
+        _gitlet = readGitlet();
+        _gitlet.fsck();
+    }
+
+    /** Throws a new GitletException with message MESSAGE, which main
+     * prints before exiting with error code 0.
      * @param message error message to print
      */
     public static void exitWithError(String message) {
-        System.out.println(message);
-        System.exit(0);
+        throw new GitletException(message);
     }
+
+    /** Returns the repository: the one already loaded by this batch
+     * session, if there is one, and otherwise the one saved in .gitlet.
+     * @return a gitlet object. */
+    private static Gitlet readGitlet() {
+        if (_batch == null || _gitlet == null) {
+            _gitlet = Gitlet.readGitlet();
+        }
+        return _gitlet;
+    }
+
+    /** Saves the repository, or in a batch session, records that it must
+     * be saved. */
+    private static void saveGitlet() {
+        if (_batch == null) {
+            _gitlet.saveGitlet();
+        } else {
+            _batch.modified();
+        }
+    }
+
+    /** Starts the batch session BATCH, in which commands share one
+     * repository and leave saving it to BATCH.
+     * @param batch the session. */
+    static void beginBatch(Batch batch) {
+        _batch = batch;
+        _gitlet = null;
+    }
+
+    /** Ends the current batch session. */
+    static void endBatch() {
+        _batch = null;
+    }
+
+    /** Accessor method for the repository of the current session.
+     * @return the gitlet object, or null if none is loaded. */
+    static Gitlet sessionGitlet() {
+        return _gitlet;
+    }
+
+    /** Replaces the repository of the current session with GITLET.
+     * @param gitlet the gitlet object, or null to reload it from .gitlet. */
+    static void restoreSession(Gitlet gitlet) {
+        _gitlet = gitlet;
+    }
+
     /** Accessor method for the gitlet object.
      * @return a gitlet object. */
     Gitlet gitlet() {
@@ -228,5 +537,7 @@ public class Main {
     }
     /** Variable representing the gitlet object. */
     private static Gitlet _gitlet;
+    /** The batch session being run, or null if there is none. */
+    private static Batch _batch;
 
 }
@@ -0,0 +1,160 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/** A cache of objects read from an object store, by id, holding at most a
+ * budget of estimated bytes.  Objects are estimated by a function given to
+ * the cache; when an object added takes the total over the budget, the
+ * least recently used objects are evicted until it fits again, and an
+ * object larger than the whole budget is not kept at all.  Since objects
+ * are immutable, a cached object never goes stale, and a cache lives as
+ * long as the process, so that commands run one after the other, as in a
+ * batch, share it.
+ *
+ * Lookups are counted as hits and misses, both by the cache and, for
+ * --trace, by the Trace counters given to it.  A cache may be used from
+ * several threads.
+ * @author Chris Zhan */
+class ObjectCache<V> {
+
+    /** An empty cache of at most CAPACITY estimated bytes, whose values
+     * are estimated by SIZER, and whose hits and misses are also counted
+     * as HITCOUNTER and MISSCOUNTER. */
+    ObjectCache(long capacity, ToLongFunction<V> sizer,
+                Trace.Counter hitCounter, Trace.Counter missCounter) {
+        _capacity = capacity;
+        _sizer = sizer;
+        _hitCounter = hitCounter;
+        _missCounter = missCounter;
+    }
+
+    /** Returns the budget in bytes set by the environment variable
+     * VARIABLE, with an optional suffix k, m or g, or DEFAULTBYTES if it
+     * is unset or malformed.  A budget of 0 turns a cache off. */
+    static long budget(String variable, long defaultBytes) {
+        String value = System.getenv(variable);
+        if (value == null || value.isBlank()) {
+            return defaultBytes;
+        }
+        value = value.trim().toLowerCase();
+        long unit = 1;
+        switch (value.charAt(value.length() - 1)) {
+        case 'k':
+            unit = 1L << 10;
+            break;
+        case 'm':
+            unit = 1L << 20;
+            break;
+        case 'g':
+            unit = 1L << 30;
+            break;
+        default:
+            break;
+        }
+        if (unit > 1) {
+            value = value.substring(0, value.length() - 1);
+        }
+        try {
+            return Math.max(0, Long.parseLong(value)) * unit;
+        } catch (NumberFormatException excp) {
+            return defaultBytes;
+        }
+    }
+
+    /** Returns the object with id ID, or null if it is not cached, making
+     * it the most recently used. */
+    synchronized V get(ObjectId id) {
+        Entry<V> entry = _entries.get(id);
+        if (entry == null) {
+            _misses += 1;
+            Trace.count(_missCounter, 1);
+            return null;
+        }
+        _hits += 1;
+        Trace.count(_hitCounter, 1);
+        return entry.value;
+    }
+
+    /** Caches VALUE as the object with id ID, evicting the least recently
+     * used objects as needed to stay within the budget. */
+    synchronized void put(ObjectId id, V value) {
+        long size = _sizer.applyAsLong(value);
+        if (size > _capacity) {
+            return;
+        }
+        Entry<V> old = _entries.put(id, new Entry<>(value, size));
+        if (old != null) {
+            _bytes -= old.size;
+        }
+        _bytes += size;
+        Iterator<Entry<V>> eldest = _entries.values().iterator();
+        while (_bytes > _capacity) {
+            Entry<V> entry = eldest.next();
+            _bytes -= entry.size;
+            eldest.remove();
+            _evictions += 1;
+        }
+    }
+
+    /** Empties this cache, without resetting its counts. */
+    synchronized void clear() {
+        _entries.clear();
+        _bytes = 0;
+    }
+
+    /** Returns the number of objects cached. */
+    synchronized int size() {
+        return _entries.size();
+    }
+
+    /** Returns the estimated bytes of the objects cached. */
+    synchronized long bytes() {
+        return _bytes;
+    }
+
+    /** Returns the number of lookups that found their object. */
+    synchronized long hits() {
+        return _hits;
+    }
+
+    /** Returns the number of lookups that did not. */
+    synchronized long misses() {
+        return _misses;
+    }
+
+    /** Returns the number of objects evicted to stay within the budget. */
+    synchronized long evictions() {
+        return _evictions;
+    }
+
+    /** A cached object of type V with its estimated size. */
+    private static final class Entry<V> {
+        /** An entry for VALUE, of SIZE estimated bytes. */
+        Entry(V value, long size) {
+            this.value = value;
+            this.size = size;
+        }
+
+        /** The object. */
+        private final V value;
+        /** Its estimated size in bytes. */
+        private final long size;
+    }
+
+    /** The budget of this cache, in estimated bytes. */
+    private final long _capacity;
+    /** Estimates the size of an object. */
+    private final ToLongFunction<V> _sizer;
+    /** The Trace counters of hits and misses. */
+    private final Trace.Counter _hitCounter, _missCounter;
+    /** The cached objects, least recently used first. */
+    private final Map<ObjectId, Entry<V>> _entries =
+            new LinkedHashMap<>(16, 0.75f, true);
+    /** The estimated bytes of the objects cached. */
+    private long _bytes;
+    /** The number of hits, misses and evictions so far. */
+    private long _hits, _misses, _evictions;
+}
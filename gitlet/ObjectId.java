@@ -0,0 +1,154 @@
+package gitlet;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+
+/** The SHA-1 id of a Gitlet object, held as its 20 binary bytes (two longs
+ * and an int) rather than as a 40-character hexadecimal String.  ObjectIds
+ * are immutable; they order exactly as their hexadecimal numerals do, and
+ * may be used as keys in hashed or sorted maps.
+ * @author Chris Zhan */
+final class ObjectId implements Comparable<ObjectId>, Serializable {
+
+    /** The length of an id in bytes. */
+    static final int LENGTH = 20;
+
+    /** An ObjectId consisting of the bytes HIGH, MIDDLE and LOW, most
+     * significant first. */
+    ObjectId(long high, long middle, int low) {
+        _high = high;
+        _middle = middle;
+        _low = low;
+    }
+
+    /** Returns the ObjectId whose bytes are DIGEST[0 .. LENGTH-1]. */
+    static ObjectId of(byte[] digest) {
+        return of(digest, 0);
+    }
+
+    /** Returns the ObjectId whose bytes are DIGEST[START .. START+LENGTH-1]. */
+    static ObjectId of(byte[] digest, int start) {
+        return new ObjectId(longAt(digest, start), longAt(digest, start + 8),
+                (int) (longAt(digest, start + 12) & 0xffffffffL));
+    }
+
+    /** Returns the ObjectId denoted by the 40-digit hexadecimal numeral HEX.
+     * Throws IllegalArgumentException if HEX is not such a numeral. */
+    static ObjectId fromHex(String hex) {
+        if (!isHex(hex)) {
+            throw new IllegalArgumentException("not an object id: " + hex);
+        }
+        return new ObjectId(Long.parseUnsignedLong(hex.substring(0, 16), 16),
+                Long.parseUnsignedLong(hex.substring(16, 32), 16),
+                Integer.parseUnsignedInt(hex.substring(32), 16));
+    }
+
+    /** Returns true iff HEX is a complete hexadecimal object id. */
+    static boolean isHex(String hex) {
+        if (hex.length() != 2 * LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < hex.length(); i += 1) {
+            if (Character.digit(hex.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Reads an ObjectId written by write from IN. */
+    static ObjectId read(DataInput in) throws IOException {
+        return new ObjectId(in.readLong(), in.readLong(), in.readInt());
+    }
+
+    /** Writes the LENGTH bytes of this id to OUT. */
+    void write(DataOutput out) throws IOException {
+        out.writeLong(_high);
+        out.writeLong(_middle);
+        out.writeInt(_low);
+    }
+
+    /** Returns the LENGTH bytes of this id. */
+    byte[] toBytes() {
+        byte[] result = new byte[LENGTH];
+        for (int i = 0; i < 8; i += 1) {
+            result[i] = (byte) (_high >>> (56 - 8 * i));
+            result[8 + i] = (byte) (_middle >>> (56 - 8 * i));
+        }
+        for (int i = 0; i < 4; i += 1) {
+            result[16 + i] = (byte) (_low >>> (24 - 8 * i));
+        }
+        return result;
+    }
+
+    /** Returns bytes 0-7 of this id. */
+    long high() {
+        return _high;
+    }
+
+    /** Returns bytes 8-15 of this id. */
+    long middle() {
+        return _middle;
+    }
+
+    /** Returns bytes 16-19 of this id. */
+    int low() {
+        return _low;
+    }
+
+    /** Returns the first N hexadecimal digits of this id. */
+    String abbreviate(int n) {
+        return toString().substring(0, n);
+    }
+
+    @Override
+    public String toString() {
+        return Utils.toHex(toBytes());
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof ObjectId)) {
+            return false;
+        }
+        ObjectId other = (ObjectId) obj;
+        return _high == other._high && _middle == other._middle
+                && _low == other._low;
+    }
+
+    /** Since ids are SHA-1 hashes, any of their bits is a good hash. */
+    @Override
+    public int hashCode() {
+        return (int) (_high >>> 32);
+    }
+
+    @Override
+    public int compareTo(ObjectId other) {
+        int cmp = Long.compareUnsigned(_high, other._high);
+        if (cmp == 0) {
+            cmp = Long.compareUnsigned(_middle, other._middle);
+        }
+        if (cmp == 0) {
+            cmp = Integer.compareUnsigned(_low, other._low);
+        }
+        return cmp;
+    }
+
+    /** Returns the big-endian long at BYTES[START .. START+7]. */
+    private static long longAt(byte[] bytes, int start) {
+        long result = 0;
+        for (int i = start; i < start + 8; i += 1) {
+            result = (result << 8) | (bytes[i] & 0xff);
+        }
+        return result;
+    }
+
+    /** Bytes 0-7 of this id. */
+    private final long _high;
+    /** Bytes 8-15 of this id. */
+    private final long _middle;
+    /** Bytes 16-19 of this id. */
+    private final int _low;
+}
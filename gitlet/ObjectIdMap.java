@@ -0,0 +1,65 @@
+package gitlet;
+
+/** A map from ObjectIds to values of type V, using the unboxed,
+ * open-addressed key tables of ObjectIdSet with a parallel array of values.
+ * Mappings cannot be removed, except all at once by clear.
+ * @author Chris Zhan */
+class ObjectIdMap<V> extends ObjectIdSet {
+
+    /** An empty map. */
+    ObjectIdMap() {
+        this(16);
+    }
+
+    /** An empty map with room for EXPECTED mappings before it must grow. */
+    ObjectIdMap(int expected) {
+        super(expected);
+        _values = new Object[capacity()];
+    }
+
+    /** Returns the value mapped to ID, or null if there is none. */
+    @SuppressWarnings("unchecked")
+    V get(ObjectId id) {
+        return (V) _values[slot(id)];
+    }
+
+    /** Returns true iff ID has a mapping. */
+    boolean containsKey(ObjectId id) {
+        return contains(id);
+    }
+
+    /** Maps ID to VALUE, replacing any previous mapping. */
+    void put(ObjectId id, V value) {
+        int k = slot(id);
+        if (used(k)) {
+            _values[k] = value;
+        } else {
+            add(id);
+            _values[slot(id)] = value;
+        }
+    }
+
+    @Override
+    void clear() {
+        super.clear();
+        _values = new Object[capacity()];
+    }
+
+    @Override
+    void grow() {
+        _oldValues = _values;
+        _values = new Object[2 * capacity()];
+        super.grow();
+        _oldValues = null;
+    }
+
+    @Override
+    void moved(int from, int to) {
+        _values[to] = _oldValues[from];
+    }
+
+    /** The value in each slot. */
+    private Object[] _values;
+    /** The values before the tables grew, while they are being moved. */
+    private Object[] _oldValues;
+}
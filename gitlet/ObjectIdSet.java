@@ -0,0 +1,180 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/** A set of ObjectIds.  Ids are kept unboxed, as the two longs and int of
+ * their bytes, in open-addressed tables with linear probing, so that a set
+ * of N ids costs about 20 * N / LOAD_FACTOR bytes and no per-id objects.
+ * Since ids are SHA-1 hashes, their leading bits are used directly as the
+ * hash.  Ids cannot be removed, except all at once by clear.
+ * @author Chris Zhan */
+class ObjectIdSet {
+
+    /** Largest fraction of slots that may be occupied. */
+    static final double LOAD_FACTOR = 0.6;
+
+    /** An empty set. */
+    ObjectIdSet() {
+        this(16);
+    }
+
+    /** An empty set with room for EXPECTED ids before it must grow. */
+    ObjectIdSet(int expected) {
+        allocate(Math.max(16,
+                Integer.highestOneBit((int) (expected / LOAD_FACTOR)) * 2));
+    }
+
+    /** Returns the set of ids named by the plain files in DIR, ignoring
+     * files whose names are not complete ids.  DIR need not exist. */
+    static ObjectIdSet namesIn(File dir) {
+        List<String> names = Utils.plainFilenamesIn(dir);
+        if (names == null) {
+            return new ObjectIdSet();
+        }
+        ObjectIdSet result = new ObjectIdSet(names.size());
+        for (String name : names) {
+            if (ObjectId.isHex(name)) {
+                result.add(ObjectId.fromHex(name));
+            }
+        }
+        return result;
+    }
+
+    /** Returns the number of ids in this set. */
+    int size() {
+        return _size;
+    }
+
+    /** Returns true iff this set has no ids. */
+    boolean isEmpty() {
+        return _size == 0;
+    }
+
+    /** Returns true iff ID is in this set. */
+    boolean contains(ObjectId id) {
+        return _used[slot(id)];
+    }
+
+    /** Adds ID to this set.
+     * @return true iff ID was not already present. */
+    boolean add(ObjectId id) {
+        int k = slot(id);
+        if (_used[k]) {
+            return false;
+        }
+        occupy(k, id);
+        _size += 1;
+        if (_size > _limit) {
+            grow();
+        }
+        return true;
+    }
+
+    /** Adds every id in OTHER to this set. */
+    void addAll(ObjectIdSet other) {
+        for (int k = 0; k < other._used.length; k += 1) {
+            if (other._used[k]) {
+                add(other.idAt(k));
+            }
+        }
+    }
+
+    /** Returns the ids in this set, in no particular order. */
+    List<ObjectId> toList() {
+        ArrayList<ObjectId> result = new ArrayList<>(_size);
+        for (int k = 0; k < _used.length; k += 1) {
+            if (_used[k]) {
+                result.add(idAt(k));
+            }
+        }
+        return result;
+    }
+
+    /** Returns the slot holding ID, or the empty slot where it belongs. */
+    int slot(ObjectId id) {
+        int mask = _used.length - 1;
+        long high = id.high(), middle = id.middle();
+        int low = id.low();
+        for (int k = id.hashCode() & mask; ; k = (k + 1) & mask) {
+            if (!_used[k] || (_highs[k] == high && _middles[k] == middle
+                    && _lows[k] == low)) {
+                return k;
+            }
+        }
+    }
+
+    /** Stores ID in the empty slot K. */
+    void occupy(int k, ObjectId id) {
+        _used[k] = true;
+        _highs[k] = id.high();
+        _middles[k] = id.middle();
+        _lows[k] = id.low();
+    }
+
+    /** Returns the id in the occupied slot K. */
+    ObjectId idAt(int k) {
+        return new ObjectId(_highs[k], _middles[k], _lows[k]);
+    }
+
+    /** Returns true iff slot K is occupied. */
+    boolean used(int k) {
+        return _used[k];
+    }
+
+    /** Removes every id, shrinking the tables back to their smallest
+     * size. */
+    void clear() {
+        allocate(16);
+        _size = 0;
+    }
+
+    /** Returns the number of slots. */
+    int capacity() {
+        return _used.length;
+    }
+
+    /** Doubles the number of slots, rehashing every id. */
+    void grow() {
+        boolean[] used = _used;
+        long[] highs = _highs, middles = _middles;
+        int[] lows = _lows;
+        allocate(2 * used.length);
+        for (int k = 0; k < used.length; k += 1) {
+            if (used[k]) {
+                ObjectId id = new ObjectId(highs[k], middles[k], lows[k]);
+                int j = slot(id);
+                occupy(j, id);
+                moved(k, j);
+            }
+        }
+    }
+
+    /** Called by grow when the id in old slot FROM moves to new slot TO, so
+     * that subclasses can move data kept alongside it. */
+    void moved(int from, int to) {
+    }
+
+    /** Replaces the tables with empty ones of CAPACITY slots. */
+    void allocate(int capacity) {
+        _used = new boolean[capacity];
+        _highs = new long[capacity];
+        _middles = new long[capacity];
+        _lows = new int[capacity];
+        _limit = (int) (capacity * LOAD_FACTOR);
+    }
+
+    /** Which slots are occupied. */
+    private boolean[] _used;
+    /** Bytes 0-7 of the id in each slot. */
+    private long[] _highs;
+    /** Bytes 8-15 of the id in each slot. */
+    private long[] _middles;
+    /** Bytes 16-19 of the id in each slot. */
+    private int[] _lows;
+    /** The number of ids in this set. */
+    private int _size;
+    /** The size beyond which the tables grow. */
+    private int _limit;
+}
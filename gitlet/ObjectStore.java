@@ -0,0 +1,562 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** The object database of a repository.  New blobs are written to the files
+ * folder, new commits to the commits folder and the chunks of large blobs
+ * to the chunks folder of its .gitlet directory, each in a loose file
+ * named by its id; gc later moves the reachable ones
+ * into a pack in the pack folder.  An object is looked up first among the
+ * loose files and then in the packs.  Objects are immutable, so writing an
+ * object whose id is already present does nothing.
+ * @author Chris Zhan */
+class ObjectStore {
+
+    /** The object store of the repository whose .gitlet directory is
+     * GITLETDIRECTORY. */
+    ObjectStore(File gitletDirectory) {
+        _blobDirectory = Utils.join(gitletDirectory, "files");
+        _commitDirectory = Utils.join(gitletDirectory, "commits");
+        _chunkDirectory = Utils.join(gitletDirectory, "chunks");
+        _packDirectory = Utils.join(gitletDirectory, "pack");
+        _shallowFile = Utils.join(gitletDirectory, "shallow");
+    }
+
+    /** Returns the object store of the repository in Main.CWD. */
+    static synchronized ObjectStore local() {
+        if (_local == null) {
+            _local = new ObjectStore(Gitlet.GITLET_DIRECTORY);
+        }
+        return _local;
+    }
+
+    /** Creates the folders of this store, if they do not exist. */
+    void create() {
+        _blobDirectory.mkdirs();
+        _commitDirectory.mkdirs();
+    }
+
+    /** Returns the folder holding loose blobs. */
+    File blobDirectory() {
+        return _blobDirectory;
+    }
+
+    /** Returns the folder holding loose commits. */
+    File commitDirectory() {
+        return _commitDirectory;
+    }
+
+    /** Returns the folder holding loose chunks. */
+    File chunkDirectory() {
+        return _chunkDirectory;
+    }
+
+    /** Returns the folder holding loose objects of type TYPE. */
+    File directory(byte type) {
+        switch (type) {
+        case Pack.BLOB:
+            return _blobDirectory;
+        case Pack.COMMIT:
+            return _commitDirectory;
+        default:
+            return _chunkDirectory;
+        }
+    }
+
+    /** Returns the folder holding packs. */
+    File packDirectory() {
+        return _packDirectory;
+    }
+
+    /** Returns the packs of this store, in order of their names. */
+    synchronized List<Pack> packs() {
+        if (_packs == null) {
+            _packs = new ArrayList<>();
+            List<String> names = Utils.plainFilenamesIn(_packDirectory);
+            if (names != null) {
+                for (String name : names) {
+                    if (name.startsWith("pack-") && name.endsWith(".idx")) {
+                        _packs.add(Pack.open(new File(_packDirectory, name)));
+                    }
+                }
+            }
+        }
+        return Collections.unmodifiableList(_packs);
+    }
+
+    /** Returns the graft points of this store's repository. */
+    synchronized Shallow shallow() {
+        if (_shallow == null) {
+            _shallow = new Shallow(_shallowFile);
+        }
+        return _shallow;
+    }
+
+    /** Deletes the reachability bitmaps of every pack of this store, as
+     * when its graft points change and the history they cover with it. */
+    void dropBitmaps() {
+        for (Pack pack : packs()) {
+            pack.dropBitmaps();
+        }
+    }
+
+    /** Returns the ids of the objects reachable from the commits COMMITS,
+     * read off the reachability bitmaps of the packs of this store, or
+     * null if the store is shallow or one of COMMITS has no bitmap. */
+    ObjectIdSet bitmapReachable(Collection<ObjectId> commits) {
+        if (!shallow().isEmpty()) {
+            return null;
+        }
+        Map<Pack, EwahBitmap> union = new IdentityHashMap<>();
+        for (ObjectId commit : commits) {
+            boolean found = false;
+            for (Pack pack : packs()) {
+                BitmapIndex index = pack.bitmaps();
+                if (index != null && index.get(commit) != null) {
+                    union.merge(pack, index.get(commit), EwahBitmap::or);
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return null;
+            }
+        }
+        ObjectIdSet result = new ObjectIdSet();
+        for (Map.Entry<Pack, EwahBitmap> entry : union.entrySet()) {
+            Pack pack = entry.getKey();
+            entry.getValue().forEach(k -> result.add(pack.id(k)));
+        }
+        return result;
+    }
+
+    /** Returns the ids of the objects reachable from the commits that
+     * have reachability bitmaps in the packs of this store (the branch
+     * tips at its last gc), or null if there are none or the store is
+     * shallow. */
+    ObjectIdSet bitmapped() {
+        ArrayList<ObjectId> commits = new ArrayList<>();
+        for (Pack pack : packs()) {
+            BitmapIndex index = pack.bitmaps();
+            if (index != null) {
+                commits.addAll(index.commits());
+            }
+        }
+        return commits.isEmpty() ? null : bitmapReachable(commits);
+    }
+
+    /** Makes PACKS the packs of this store, closing the old ones, whose
+     * files the caller is about to delete. */
+    synchronized void setPacks(List<Pack> packs) {
+        if (_packs != null) {
+            for (Pack pack : _packs) {
+                pack.close();
+            }
+        }
+        _packs = new ArrayList<>(packs);
+    }
+
+    /** Returns true iff the object with id ID and type TYPE is in this
+     * store. */
+    boolean has(ObjectId id, byte type) {
+        return looseFile(directory(type), id).isFile()
+                || packed(id, type) != null;
+    }
+
+    /** Returns true iff the blob with id ID is in this store. */
+    boolean hasBlob(ObjectId id) {
+        return has(id, Pack.BLOB);
+    }
+
+    /** Stores BLOB, unless a blob with its id is already stored.
+     * @return the id of BLOB. */
+    ObjectId writeBlob(Blob blob) {
+        ObjectId id = blob.id();
+        if (!hasBlob(id)) {
+            writeLoose(id, Pack.BLOB, blob.encode());
+        }
+        return id;
+    }
+
+    /** Stores the contents of FILE as a blob, splitting them into chunks
+     * as they are read if FILE is at least Blob.CHUNK_THRESHOLD bytes
+     * long, so that a large file is never held in memory whole.
+     * @return the id of the blob. */
+    ObjectId writeFile(File file) {
+        Trace.count(Trace.Counter.FILES_HASHED, 1);
+        Events.FileHash event = new Events.FileHash();
+        event.begin();
+        ObjectId result;
+        if (file.length() < Blob.CHUNK_THRESHOLD) {
+            result = writeBlob(new Blob(file));
+        } else {
+            Trace.count(Trace.Counter.BYTES_READ, file.length());
+            try (InputStream in = new BufferedInputStream(
+                    new FileInputStream(file))) {
+                result = writeChunked(in);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        event.report(file, result, true);
+        return result;
+    }
+
+    /** Stores CONTENTS as a blob, splitting them into chunks if they are
+     * at least Blob.CHUNK_THRESHOLD bytes long, as writeFile does.
+     * @return the id of the blob. */
+    ObjectId writeBytes(byte[] contents) {
+        if (contents.length < Blob.CHUNK_THRESHOLD) {
+            return writeBlob(new Blob(contents));
+        }
+        try {
+            return writeChunked(new ByteArrayInputStream(contents));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Stores the bytes of STREAM as a chunked blob, writing each chunk
+     * that is not yet stored.
+     * @return the id of the blob. */
+    private ObjectId writeChunked(InputStream stream) throws IOException {
+        MessageDigest digest = Utils.newSha1Digest();
+        ArrayList<ObjectId> chunks = new ArrayList<>();
+        long size = 0;
+        try (InputStream in = new DigestInputStream(stream, digest)) {
+            Chunker chunker = new Chunker(in);
+            for (byte[] chunk = chunker.next(); chunk != null;
+                 chunk = chunker.next()) {
+                ObjectId id = Chunker.idOf(chunk);
+                if (!has(id, Pack.CHUNK)) {
+                    _chunkDirectory.mkdirs();
+                    writeLoose(id, Pack.CHUNK, chunk);
+                }
+                chunks.add(id);
+                size += chunk.length;
+            }
+        }
+        return writeBlob(new Blob(ObjectId.of(digest.digest()), size, chunks));
+    }
+
+    /** Returns the blob with id ID, as stored: either with its contents or
+     * with the ids of its chunks, from the blob cache if it is there.
+     * Throws a GitletException if it is
+     * missing or unreadable. */
+    Blob readBlob(ObjectId id) {
+        Blob result = _blobs.get(id);
+        if (result != null) {
+            return result;
+        }
+        byte[] contents = readRaw(id, Pack.BLOB);
+        if (contents == null) {
+            throw Utils.error("Blob %s is missing; run fsck.", id);
+        }
+        try {
+            result = Blob.decode(id, contents);
+        } catch (IllegalArgumentException excp) {
+            throw Utils.error("Object %s is corrupt; run fsck.", id);
+        }
+        _blobs.put(id, result);
+        return result;
+    }
+
+    /** Returns the contents of the blob with id ID, joining its chunks if
+     * it has any. */
+    byte[] readContents(ObjectId id) {
+        Blob blob = readBlob(id);
+        if (!blob.chunked()) {
+            return blob.byteContents();
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (ObjectId chunk : blob.chunks()) {
+            out.writeBytes(readChunk(chunk));
+        }
+        return out.toByteArray();
+    }
+
+    /** Writes the contents of the blob with id ID to FILE, one chunk at a
+     * time. */
+    void writeContents(ObjectId id, File file) {
+        try (OutputStream out = new FileOutputStream(file)) {
+            writeContents(id, out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Writes the contents of the blob with id ID to OUT, one chunk at a
+     * time. */
+    void writeContents(ObjectId id, OutputStream out) throws IOException {
+        Blob blob = readBlob(id);
+        if (!blob.chunked()) {
+            out.write(blob.byteContents());
+        }
+        for (ObjectId chunk : blob.chunks()) {
+            out.write(readChunk(chunk));
+        }
+        Trace.count(Trace.Counter.BYTES_WRITTEN, blob.size());
+    }
+
+    /** Returns true iff the blob with id ID looks binary (see
+     * Blob.isBinary).  Only the first chunk of a chunked blob is read. */
+    boolean isBinary(ObjectId id) {
+        Blob blob = readBlob(id);
+        if (!blob.chunked()) {
+            return Blob.isBinary(blob.byteContents());
+        }
+        List<ObjectId> chunks = blob.chunks();
+        return !chunks.isEmpty() && Blob.isBinary(readChunk(chunks.get(0)));
+    }
+
+    /** Returns the ids of the chunks of the blob with id ID, or an empty
+     * list if it is stored whole or missing.  Only the first byte of a
+     * blob stored whole is read. */
+    List<ObjectId> chunksOf(ObjectId id) {
+        File loose = looseFile(_blobDirectory, id);
+        int tag;
+        if (loose.isFile()) {
+            try (InputStream in = new FileInputStream(loose)) {
+                tag = in.read();
+            } catch (IOException excp) {
+                tag = -1;
+            }
+        } else {
+            Pack pack = packed(id, Pack.BLOB);
+            tag = pack == null ? -1 : pack.firstByte(pack.position(id));
+        }
+        if (tag != Blob.CHUNKED) {
+            return Collections.emptyList();
+        }
+        return readBlob(id).chunks();
+    }
+
+    /** Returns the bytes of the chunk with id ID.  Throws a GitletException
+     * if it is missing. */
+    byte[] readChunk(ObjectId id) {
+        byte[] contents = readRaw(id, Pack.CHUNK);
+        if (contents == null) {
+            throw Utils.error("Chunk %s is missing; run fsck.", id);
+        }
+        return contents;
+    }
+
+    /** Returns true iff the commit with id ID is in this store. */
+    boolean hasCommit(ObjectId id) {
+        return has(id, Pack.COMMIT);
+    }
+
+    /** Stores COMMIT, unless a commit with its id is already stored. */
+    void writeCommit(CommitTree.CommitNode commit) {
+        if (!hasCommit(commit.id())) {
+            writeLoose(commit.id(), Pack.COMMIT, Utils.serialize(commit));
+        }
+    }
+
+    /** Writes CONTENTS, the stored form of the object with id ID and type
+     * TYPE, as a loose object. */
+    private void writeLoose(ObjectId id, byte type, byte[] contents) {
+        Events.ObjectWrite event = new Events.ObjectWrite();
+        event.begin();
+        writeAtomically(looseFile(directory(type), id), contents);
+        if (event.shouldCommit()) {
+            event.id = id.toString();
+            event.type = Events.typeName(type);
+            event.size = contents.length;
+            event.commit();
+        }
+    }
+
+    /** Returns the commit with id ID, or null if there is none.  Throws a
+     * GitletException if it is unreadable. */
+    CommitTree.CommitNode readCommit(ObjectId id) {
+        byte[] contents = readRaw(id, Pack.COMMIT);
+        if (contents == null) {
+            return null;
+        }
+        return deserialize(id, contents, CommitTree.CommitNode.class);
+    }
+
+    /** Returns the stored contents of the object with id ID and type TYPE,
+     * or null if there is none. */
+    byte[] readRaw(ObjectId id, byte type) {
+        Events.ObjectRead event = new Events.ObjectRead();
+        event.begin();
+        File loose = looseFile(directory(type), id);
+        Pack pack = null;
+        byte[] result = null;
+        if (loose.isFile()) {
+            result = Utils.readContents(loose);
+        } else {
+            pack = packed(id, type);
+            if (pack != null) {
+                result = pack.contents(pack.position(id));
+            }
+        }
+        if (result != null) {
+            Trace.count(Trace.Counter.OBJECTS_LOADED, 1);
+        }
+        if (event.shouldCommit()) {
+            event.id = id.toString();
+            event.type = Events.typeName(type);
+            event.size = result == null ? -1 : result.length;
+            event.packed = pack != null;
+            event.commit();
+        }
+        return result;
+    }
+
+    /** Copies the stored bytes of the object with id ID and type TYPE to
+     * the end of OUT, file to file.
+     * @return the number of bytes copied. */
+    long transferTo(ObjectId id, byte type, WritableByteChannel out) {
+        File loose = looseFile(directory(type), id);
+        if (loose.isFile()) {
+            try (FileChannel in = FileChannel.open(loose.toPath(),
+                    StandardOpenOption.READ)) {
+                return Pack.transfer(in, 0, in.size(), out);
+            } catch (IOException excp) {
+                throw Utils.error("cannot read object %s: %s", id,
+                        excp.getMessage());
+            }
+        }
+        Pack pack = packed(id, type);
+        if (pack == null) {
+            throw Utils.error("Object %s is missing; run fsck.", id);
+        }
+        return pack.transferTo(pack.position(id), out);
+    }
+
+    /** Adds PACK, just written into the pack folder, to this store. */
+    synchronized void addPack(Pack pack) {
+        if (_packs != null) {
+            _packs.add(pack);
+        }
+    }
+
+    /** Returns the ids of all loose blobs. */
+    ObjectIdSet looseBlobIds() {
+        return ObjectIdSet.namesIn(_blobDirectory);
+    }
+
+    /** Returns the ids of all loose commits. */
+    ObjectIdSet looseCommitIds() {
+        return ObjectIdSet.namesIn(_commitDirectory);
+    }
+
+    /** Returns the ids of all loose chunks. */
+    ObjectIdSet looseChunkIds() {
+        return ObjectIdSet.namesIn(_chunkDirectory);
+    }
+
+    /** Returns the ids of all commits, loose or packed. */
+    ObjectIdSet commitIds() {
+        ObjectIdSet result = looseCommitIds();
+        for (Pack pack : packs()) {
+            for (int k = 0; k < pack.size(); k += 1) {
+                if (pack.type(k) == Pack.COMMIT) {
+                    result.add(pack.id(k));
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns the object of class EXPECTEDCLASS serialized in CONTENTS,
+     * the stored form of the object with id ID.  Throws a GitletException
+     * if CONTENTS is corrupt. */
+    private static <T extends Serializable> T deserialize(
+            ObjectId id, byte[] contents, Class<T> expectedClass) {
+        try {
+            return Utils.deserialize(contents, expectedClass);
+        } catch (IllegalArgumentException excp) {
+            throw Utils.error("Object %s is corrupt; run fsck.", id);
+        }
+    }
+
+    /** Returns the loose file that does or would hold the object with id ID
+     * in the folder DIR. */
+    static File looseFile(File dir, ObjectId id) {
+        return new File(dir, id.toString());
+    }
+
+    /** Returns the pack holding the object with id ID and type TYPE, or
+     * null if there is none. */
+    private Pack packed(ObjectId id, byte type) {
+        for (Pack pack : packs()) {
+            if (pack.contains(id, type)) {
+                return pack;
+            }
+        }
+        return null;
+    }
+
+    /** Writes CONTENTS to FILE by way of a temporary file in the same
+     * folder, so that FILE is either absent or complete, even when several
+     * threads write the same FILE at once. */
+    static void writeAtomically(File file, byte[] contents) {
+        try {
+            File temp = Files.createTempFile(file.getParentFile().toPath(),
+                    "tmp-", null).toFile();
+            Utils.writeContents(temp, contents);
+            moveAtomically(temp, file);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Renames the file SOURCE to TARGET, replacing any existing TARGET in
+     * a single step. */
+    static void moveAtomically(File source, File target) throws IOException {
+        Files.move(source.toPath(), target.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** The folder holding loose blobs. */
+    private final File _blobDirectory;
+    /** The folder holding loose commits. */
+    private final File _commitDirectory;
+    /** The folder holding loose chunks. */
+    private final File _chunkDirectory;
+    /** The folder holding packs. */
+    private final File _packDirectory;
+    /** The file listing the graft points of a shallow repository. */
+    private final File _shallowFile;
+    /** The graft points, once read. */
+    private Shallow _shallow;
+    /** The packs of this store, once read. */
+    private List<Pack> _packs;
+    /** The blobs most recently read, up to the budget set by the
+     * environment variable GITLET_BLOB_CACHE, a sixteenth of the heap by
+     * default. */
+    private final ObjectCache<Blob> _blobs = new ObjectCache<>(
+            ObjectCache.budget("GITLET_BLOB_CACHE",
+                    Runtime.getRuntime().maxMemory() / 16),
+            Blob::estimatedSize, Trace.Counter.BLOB_CACHE_HITS,
+            Trace.Counter.BLOB_CACHE_MISSES);
+    /** The store of the repository in Main.CWD, once created. */
+    private static ObjectStore _local;
+}
@@ -0,0 +1,259 @@
+package gitlet;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+/** The objects of a store that are reachable from some tips but that a
+ * receiver lacks.  The commit graph is walked down from the tips, breadth
+ * first, and the walk stops at the first commits whose whole history the
+ * receiver already has, since holding such a commit implies holding its
+ * ancestors.  It also stops at the sender's graft points and, if the walk
+ * is limited in depth, at the commits that many steps from a tip; those
+ * commits form the boundary of the walk, and become graft points of the
+ * receiver.  Only the blobs of the commits reached are then checked
+ * against the receiver, and only the chunks of the blobs it lacks.
+ *
+ * When the walk is not limited in depth, the sender is not shallow, one
+ * of its packs has reachability bitmaps (see BitmapIndex) for all the
+ * tips, and the receiver's objects are known from its own bitmaps, the
+ * objects are found without walking the graph: the bitmaps of the tips
+ * are ORed together, and the receiver's objects are removed with an
+ * ANDNOT.  Only what is left is checked against the receiver, and only
+ * the commits left are read, to list them in the order of the walk.
+ * @author Chris Zhan */
+class ObjectWalk {
+
+    /** What a receiver has. */
+    interface Receiver {
+        /** Returns true iff the receiver has the object with id ID and
+         * type TYPE. */
+        boolean has(ObjectId id, byte type);
+    }
+
+    /** The objects of FROM reachable from the commits TIPS in fewer than
+     * DEPTH steps that RECEIVER lacks, not walking past the commits for
+     * which COMPLETE is true.  COMPLETE implies that RECEIVER has the
+     * commit; it is stricter for a shallow receiver, whose commits may
+     * lead to history it lacks. */
+    ObjectWalk(ObjectStore from, Collection<ObjectId> tips, int depth,
+               Predicate<ObjectId> complete, Receiver receiver) {
+        this(from, tips, depth, complete, receiver, null);
+    }
+
+    /** As for ObjectWalk(FROM, TIPS, DEPTH, COMPLETE, RECEIVER), where
+     * HAVE, if not null, holds objects RECEIVER has along with everything
+     * reachable from them, as read off its reachability bitmaps. */
+    ObjectWalk(ObjectStore from, Collection<ObjectId> tips, int depth,
+               Predicate<ObjectId> complete, Receiver receiver,
+               ObjectIdSet have) {
+        ArrayList<ObjectId> ids = new ArrayList<>();
+        ObjectIdSet chunks = new ObjectIdSet();
+        Pack pack = have != null && depth == Integer.MAX_VALUE
+                && from.shallow().isEmpty() ? bitmapPack(from, tips) : null;
+        if (pack != null) {
+            readBitmaps(from, pack, tips, complete, receiver, have, ids,
+                    chunks);
+        } else {
+            walk(from, tips, depth, complete, receiver, ids, chunks);
+        }
+        ObjectIdSet commitIds = new ObjectIdSet(_commits.size());
+        for (CommitTree.CommitNode commit : _commits) {
+            commitIds.add(commit.id());
+            ids.add(commit.id());
+        }
+        _ids = ids.toArray(new ObjectId[0]);
+        Arrays.sort(_ids);
+        _types = new byte[_ids.length];
+        for (int k = 0; k < _ids.length; k += 1) {
+            _types[k] = commitIds.contains(_ids[k]) ? Pack.COMMIT
+                    : chunks.contains(_ids[k]) ? Pack.CHUNK : Pack.BLOB;
+        }
+    }
+
+    /** Walks the commit graph of FROM down from TIPS as described for
+     * the constructor, adding the commits RECEIVER lacks to _commits, the
+     * blobs and chunks it lacks to IDS, and the chunks also to CHUNKS. */
+    private void walk(ObjectStore from, Collection<ObjectId> tips, int depth,
+                      Predicate<ObjectId> complete, Receiver receiver,
+                      List<ObjectId> ids, ObjectIdSet chunks) {
+        ObjectIdSet seen = new ObjectIdSet();
+        ObjectIdSet blobs = new ObjectIdSet();
+        ArrayDeque<ObjectId> pending = new ArrayDeque<>(tips);
+        ArrayDeque<Integer> levels = new ArrayDeque<>();
+        for (int k = 0; k < tips.size(); k += 1) {
+            levels.add(1);
+        }
+        while (!pending.isEmpty()) {
+            ObjectId id = pending.removeFirst();
+            int level = levels.removeFirst();
+            if (!seen.add(id) || complete.test(id)) {
+                continue;
+            }
+            CommitTree.CommitNode commit = readCommit(from, id);
+            if (!receiver.has(id, Pack.COMMIT)) {
+                _commits.add(commit);
+                FileTree files = commit.files();
+                for (int k = 0; k < files.size(); k += 1) {
+                    ObjectId blob = files.id(k);
+                    if (!blobs.contains(blob)
+                            && !receiver.has(blob, Pack.BLOB)) {
+                        blobs.add(blob);
+                    }
+                }
+            }
+            List<String> parentIds = from.shallow().parentIds(commit);
+            if (level >= depth || parentIds.isEmpty()) {
+                if (!commit.parentIds().isEmpty()) {
+                    _boundary.add(id);
+                }
+                continue;
+            }
+            for (String parentId : parentIds) {
+                pending.addLast(ObjectId.fromHex(parentId));
+                levels.addLast(level + 1);
+            }
+        }
+        ids.addAll(blobs.toList());
+        for (ObjectId blob : blobs.toList()) {
+            for (ObjectId chunk : from.chunksOf(blob)) {
+                if (!receiver.has(chunk, Pack.CHUNK) && chunks.add(chunk)) {
+                    ids.add(chunk);
+                }
+            }
+        }
+    }
+
+    /** Finds the objects of PACK, a pack of FROM with bitmaps for all of
+     * TIPS, reachable from TIPS but not from the objects in HAVE, and
+     * adds those RECEIVER lacks as walk does.  The commits among them are
+     * read in the order of the walk, which stops at those for which
+     * COMPLETE is true. */
+    private void readBitmaps(ObjectStore from, Pack pack,
+                             Collection<ObjectId> tips,
+                             Predicate<ObjectId> complete, Receiver receiver,
+                             ObjectIdSet have, List<ObjectId> ids,
+                             ObjectIdSet chunks) {
+        BitmapIndex index = pack.bitmaps();
+        EwahBitmap want = EwahBitmap.EMPTY;
+        for (ObjectId tip : tips) {
+            want = want.or(index.get(tip));
+        }
+        BitSet had = new BitSet(pack.size());
+        for (ObjectId id : have.toList()) {
+            int k = pack.position(id);
+            if (k >= 0) {
+                had.set(k);
+            }
+        }
+        ObjectIdSet commits = new ObjectIdSet();
+        want.andNot(EwahBitmap.of(had)).forEach(k -> {
+            ObjectId id = pack.id(k);
+            byte type = pack.type(k);
+            if (type == Pack.COMMIT) {
+                commits.add(id);
+            } else if (!receiver.has(id, type)) {
+                ids.add(id);
+                if (type == Pack.CHUNK) {
+                    chunks.add(id);
+                }
+            }
+        });
+        ObjectIdSet seen = new ObjectIdSet();
+        ArrayDeque<ObjectId> pending = new ArrayDeque<>(tips);
+        while (!pending.isEmpty()) {
+            ObjectId id = pending.removeFirst();
+            if (!commits.contains(id) || !seen.add(id)
+                    || complete.test(id)) {
+                continue;
+            }
+            CommitTree.CommitNode commit = readCommit(from, id);
+            if (!receiver.has(id, Pack.COMMIT)) {
+                _commits.add(commit);
+            }
+            for (String parentId : commit.parentIds()) {
+                pending.addLast(ObjectId.fromHex(parentId));
+            }
+        }
+    }
+
+    /** Returns a pack of FROM with reachability bitmaps for all of TIPS,
+     * or null if there is none. */
+    private static Pack bitmapPack(ObjectStore from,
+                                   Collection<ObjectId> tips) {
+        for (Pack pack : from.packs()) {
+            BitmapIndex index = pack.bitmaps();
+            boolean all = index != null;
+            for (ObjectId tip : tips) {
+                all = all && index.get(tip) != null;
+            }
+            if (all) {
+                return pack;
+            }
+        }
+        return null;
+    }
+
+    /** Returns the commit with id ID in FROM, which must be there. */
+    private static CommitTree.CommitNode readCommit(ObjectStore from,
+                                                    ObjectId id) {
+        CommitTree.CommitNode commit = from.readCommit(id);
+        if (commit == null) {
+            throw Utils.error("Object %s is missing; run fsck.", id);
+        }
+        return commit;
+    }
+
+    /** Returns the commits found, in the order in which they were
+     * reached: nearest the tips first. */
+    List<CommitTree.CommitNode> commits() {
+        return Collections.unmodifiableList(_commits);
+    }
+
+    /** Returns the commits at which the walk stopped although they have
+     * parents. */
+    List<ObjectId> boundary() {
+        return Collections.unmodifiableList(_boundary);
+    }
+
+    /** Returns the number of objects found. */
+    int size() {
+        return _ids.length;
+    }
+
+    /** Returns the id of the Kth object found, in order of increasing
+     * id. */
+    ObjectId id(int k) {
+        return _ids[k];
+    }
+
+    /** Returns the type of the Kth object found. */
+    byte type(int k) {
+        return _types[k];
+    }
+
+    /** Returns the ids of the objects found, in increasing order. */
+    ObjectId[] ids() {
+        return _ids.clone();
+    }
+
+    /** Returns the types of the objects found, in the order of ids(). */
+    byte[] types() {
+        return _types.clone();
+    }
+
+    /** The commits found. */
+    private final ArrayList<CommitTree.CommitNode> _commits =
+            new ArrayList<>();
+    /** The commits at which the walk stopped short of their parents. */
+    private final ArrayList<ObjectId> _boundary = new ArrayList<>();
+    /** The ids of all objects found, in increasing order. */
+    private final ObjectId[] _ids;
+    /** The type of each object in _ids. */
+    private final byte[] _types;
+}
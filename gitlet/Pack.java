@@ -0,0 +1,427 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/** A pack: many objects stored in one file, with an index.  The objects of
+ * a pack are numbered 0 .. size()-1 in the order of their ids; that number
+ * is the object's position, and sets of packed objects may be represented
+ * as bitmaps over positions.
+ *
+ * A pack named NAME consists of NAME.pack, holding the serialized objects
+ * back to back, and NAME.idx, holding for each position the object's id,
+ * its type (BLOB, COMMIT or CHUNK), and the offset and length of its bytes in
+ * NAME.pack.  The whole index is read into memory when the pack is opened;
+ * object bytes are read from NAME.pack on demand.  NAME is the SHA-1 of
+ * the ids of the pack's objects, so two packs with the same objects have
+ * the same name.  A pack may also have reachability bitmaps, in
+ * NAME.bitmap; see BitmapIndex.
+ * @author Chris Zhan */
+class Pack {
+
+    /** Type of a blob object. */
+    static final byte BLOB = 0;
+    /** Type of a commit object. */
+    static final byte COMMIT = 1;
+    /** Type of a chunk of a large blob. */
+    static final byte CHUNK = 2;
+
+    /** The first word of every index file. */
+    private static final int IDX_MAGIC = 0x47495858;
+    /** The index format version. */
+    private static final int VERSION = 1;
+
+    /** A pack whose data is in PACKFILE and whose index entries are
+     * IDS, TYPES, OFFSETS and LENGTHS. */
+    private Pack(File packFile, ObjectId[] ids, byte[] types, long[] offsets,
+                 int[] lengths) {
+        _packFile = packFile;
+        _ids = ids;
+        _types = types;
+        _offsets = offsets;
+        _lengths = lengths;
+    }
+
+    /** Returns the pack whose index is the file IDXFILE. */
+    static Pack open(File idxFile) {
+        String name = idxFile.getName();
+        File packFile = new File(idxFile.getParentFile(),
+                name.substring(0, name.length() - ".idx".length()) + ".pack");
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(idxFile)))) {
+            if (in.readInt() != IDX_MAGIC || in.readInt() != VERSION) {
+                throw Utils.error("bad pack index: %s", name);
+            }
+            int size = in.readInt();
+            ObjectId[] ids = new ObjectId[size];
+            byte[] types = new byte[size];
+            long[] offsets = new long[size];
+            int[] lengths = new int[size];
+            for (int k = 0; k < size; k += 1) {
+                ids[k] = ObjectId.read(in);
+                types[k] = in.readByte();
+                offsets[k] = in.readLong();
+                lengths[k] = in.readInt();
+            }
+            return new Pack(packFile, ids, types, offsets, lengths);
+        } catch (IOException excp) {
+            throw Utils.error("cannot read pack index %s: %s", name,
+                    excp.getMessage());
+        }
+    }
+
+    /** Writes a pack into DIR holding the objects with ids IDS, which must
+     * be sorted and distinct, and whose types are TYPES, copying each one
+     * from SOURCE with FileChannel.transferTo, so that object bytes go from
+     * file to file without passing through the Java heap.
+     * @return the new pack. */
+    static Pack write(File dir, ObjectId[] ids, byte[] types,
+                      ObjectStore source) {
+        try (Writer writer = new Writer(dir)) {
+            for (int k = 0; k < ids.length; k += 1) {
+                writer.transfer(ids[k], types[k], source);
+            }
+            return writer.finish();
+        }
+    }
+
+    /** Writes a new pack into a folder, one object at a time, in order of
+     * increasing id.  Objects go to a temporary data file; finish() names
+     * the pack and writes its index last, so a pack without an index is
+     * incomplete and is ignored.  Closing an unfinished writer discards
+     * what it has written. */
+    static class Writer implements AutoCloseable {
+
+        /** A writer of a new pack in DIR. */
+        Writer(File dir) {
+            _dir = dir;
+            dir.mkdirs();
+            try {
+                _temp = File.createTempFile("tmp-", ".pack", dir);
+                _out = FileChannel.open(_temp.toPath(),
+                        StandardOpenOption.WRITE);
+            } catch (IOException excp) {
+                throw Utils.error("cannot write pack: %s", excp.getMessage());
+            }
+        }
+
+        /** Returns the number of objects written so far. */
+        int size() {
+            return _size;
+        }
+
+        /** Appends the object with id ID and type TYPE, copying its stored
+         * bytes from SOURCE. */
+        void transfer(ObjectId id, byte type, ObjectStore source) {
+            long offset = start(id, type);
+            _lengths[_size] = (int) source.transferTo(id, type, _out);
+            _offsets[_size] = offset;
+            _size += 1;
+        }
+
+        /** Appends the object with id ID, type TYPE and stored bytes
+         * CONTENTS. */
+        void add(ObjectId id, byte type, byte[] contents) {
+            long offset = start(id, type);
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(contents);
+                while (buffer.hasRemaining()) {
+                    _out.write(buffer);
+                }
+            } catch (IOException excp) {
+                throw Utils.error("cannot write pack: %s", excp.getMessage());
+            }
+            _lengths[_size] = contents.length;
+            _offsets[_size] = offset;
+            _size += 1;
+        }
+
+        /** Names the pack, writes its index and returns it. */
+        Pack finish() {
+            ObjectId[] ids = Arrays.copyOf(_ids, _size);
+            byte[] types = Arrays.copyOf(_types, _size);
+            long[] offsets = Arrays.copyOf(_offsets, _size);
+            int[] lengths = Arrays.copyOf(_lengths, _size);
+            MessageDigest digest = Utils.newSha1Digest();
+            for (ObjectId id : ids) {
+                digest.update(id.toBytes());
+            }
+            String name = "pack-" + Utils.toHex(digest.digest());
+            File packFile = new File(_dir, name + ".pack");
+            try {
+                _out.close();
+                ObjectStore.moveAtomically(_temp, packFile);
+                File tempIdx = File.createTempFile("tmp-", ".idx", _dir);
+                try (DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(
+                                new FileOutputStream(tempIdx)))) {
+                    out.writeInt(IDX_MAGIC);
+                    out.writeInt(VERSION);
+                    out.writeInt(ids.length);
+                    for (int k = 0; k < ids.length; k += 1) {
+                        ids[k].write(out);
+                        out.writeByte(types[k]);
+                        out.writeLong(offsets[k]);
+                        out.writeInt(lengths[k]);
+                    }
+                }
+                ObjectStore.moveAtomically(tempIdx,
+                        new File(_dir, name + ".idx"));
+            } catch (IOException excp) {
+                throw Utils.error("cannot write pack: %s", excp.getMessage());
+            }
+            _finished = true;
+            return new Pack(packFile, ids, types, offsets, lengths);
+        }
+
+        @Override
+        public void close() {
+            if (!_finished) {
+                try {
+                    _out.close();
+                } catch (IOException excp) {
+                    /* The file is being discarded anyway. */
+                }
+                _temp.delete();
+                _finished = true;
+            }
+        }
+
+        /** Records the id ID and type TYPE of the next object, growing the
+         * index arrays as needed.
+         * @return the offset at which the object's bytes start. */
+        private long start(ObjectId id, byte type) {
+            if (_size > 0 && _ids[_size - 1].compareTo(id) >= 0) {
+                throw new IllegalArgumentException("pack ids out of order");
+            }
+            if (_size == _ids.length) {
+                int capacity = Math.max(16, 2 * _size);
+                _ids = Arrays.copyOf(_ids, capacity);
+                _types = Arrays.copyOf(_types, capacity);
+                _offsets = Arrays.copyOf(_offsets, capacity);
+                _lengths = Arrays.copyOf(_lengths, capacity);
+            }
+            _ids[_size] = id;
+            _types[_size] = type;
+            try {
+                return _out.position();
+            } catch (IOException excp) {
+                throw Utils.error("cannot write pack: %s", excp.getMessage());
+            }
+        }
+
+        /** The folder of the new pack. */
+        private final File _dir;
+        /** The temporary data file. */
+        private File _temp;
+        /** The open temporary data file. */
+        private FileChannel _out;
+        /** The ids of the objects written. */
+        private ObjectId[] _ids = new ObjectId[0];
+        /** Their types. */
+        private byte[] _types = new byte[0];
+        /** Their offsets in the data file. */
+        private long[] _offsets = new long[0];
+        /** Their lengths. */
+        private int[] _lengths = new int[0];
+        /** The number of objects written. */
+        private int _size;
+        /** True once the pack is finished or discarded. */
+        private boolean _finished;
+    }
+
+    /** Returns the number of objects in this pack. */
+    int size() {
+        return _ids.length;
+    }
+
+    /** Returns the position of the object with id ID, or a negative number
+     * if it is not in this pack. */
+    int position(ObjectId id) {
+        return Arrays.binarySearch(_ids, id);
+    }
+
+    /** Returns true iff the object with id ID, of type TYPE, is in this
+     * pack. */
+    boolean contains(ObjectId id, byte type) {
+        int k = position(id);
+        return k >= 0 && _types[k] == type;
+    }
+
+    /** Returns the id of the object at position K. */
+    ObjectId id(int k) {
+        return _ids[k];
+    }
+
+    /** Returns the type of the object at position K. */
+    byte type(int k) {
+        return _types[k];
+    }
+
+    /** Returns the serialized contents of the object at position K. */
+    byte[] contents(int k) {
+        ByteBuffer buffer = ByteBuffer.allocate(_lengths[k]);
+        try {
+            FileChannel channel = channel();
+            long position = _offsets[k];
+            while (buffer.hasRemaining()) {
+                int n = channel.read(buffer, position + buffer.position());
+                if (n < 0) {
+                    throw Utils.error("truncated pack: %s",
+                            _packFile.getName());
+                }
+            }
+        } catch (IOException excp) {
+            throw Utils.error("cannot read pack %s: %s", _packFile.getName(),
+                    excp.getMessage());
+        }
+        Trace.count(Trace.Counter.BYTES_READ, _lengths[k]);
+        return buffer.array();
+    }
+
+    /** Returns the first stored byte of the object at position K, or -1 if
+     * it is empty. */
+    int firstByte(int k) {
+        if (_lengths[k] == 0) {
+            return -1;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(1);
+        try {
+            if (channel().read(buffer, _offsets[k]) < 1) {
+                throw Utils.error("truncated pack: %s", _packFile.getName());
+            }
+        } catch (IOException excp) {
+            throw Utils.error("cannot read pack %s: %s", _packFile.getName(),
+                    excp.getMessage());
+        }
+        return buffer.get(0) & 0xff;
+    }
+
+    /** Copies the stored bytes of the object at position K to the end of
+     * OUT.
+     * @return the number of bytes copied. */
+    long transferTo(int k, WritableByteChannel out) {
+        try {
+            return transfer(channel(), _offsets[k], _lengths[k], out);
+        } catch (IOException excp) {
+            throw Utils.error("cannot read pack %s: %s", _packFile.getName(),
+                    excp.getMessage());
+        }
+    }
+
+    /** Copies the LENGTH bytes of IN starting at POSITION to OUT.
+     * @return LENGTH. */
+    static long transfer(FileChannel in, long position, long length,
+                         WritableByteChannel out) throws IOException {
+        long done = 0;
+        while (done < length) {
+            long n = in.transferTo(position + done, length - done, out);
+            if (n <= 0) {
+                throw new IOException("unexpected end of file");
+            }
+            done += n;
+        }
+        return length;
+    }
+
+    /** Returns the data file of this pack. */
+    File packFile() {
+        return _packFile;
+    }
+
+    /** Returns the index file of this pack. */
+    File idxFile() {
+        return sibling(".idx");
+    }
+
+    /** Returns the reachability bitmap file of this pack, which need not
+     * exist. */
+    File bitmapFile() {
+        return sibling(".bitmap");
+    }
+
+    /** Returns the reachability bitmaps of this pack, or null if it has
+     * none. */
+    synchronized BitmapIndex bitmaps() {
+        if (!_bitmapsRead) {
+            _bitmaps = BitmapIndex.read(bitmapFile());
+            _bitmapsRead = true;
+        }
+        return _bitmaps;
+    }
+
+    /** Deletes the reachability bitmaps of this pack, which no longer
+     * describe the history of its store. */
+    synchronized void dropBitmaps() {
+        bitmapFile().delete();
+        _bitmaps = null;
+        _bitmapsRead = true;
+    }
+
+    /** Deletes the files of this pack. */
+    void delete() {
+        close();
+        bitmapFile().delete();
+        idxFile().delete();
+        _packFile.delete();
+    }
+
+    /** Returns the file of this pack with extension SUFFIX. */
+    private File sibling(String suffix) {
+        String name = _packFile.getName();
+        return new File(_packFile.getParentFile(),
+                name.substring(0, name.length() - ".pack".length()) + suffix);
+    }
+
+    /** Closes the data file of this pack, if it is open.  It is reopened by
+     * the next read. */
+    synchronized void close() {
+        if (_channel != null) {
+            try {
+                _channel.close();
+            } catch (IOException excp) {
+                /* Nothing was written, so nothing is lost. */
+            }
+            _channel = null;
+        }
+    }
+
+    /** Returns the open data file of this pack.  Positional reads on a
+     * FileChannel are safe from several threads at once. */
+    private synchronized FileChannel channel() throws IOException {
+        if (_channel == null) {
+            _channel = FileChannel.open(_packFile.toPath(),
+                    StandardOpenOption.READ);
+        }
+        return _channel;
+    }
+
+    /** The file holding the objects of this pack. */
+    private final File _packFile;
+    /** The id of the object at each position, in increasing order. */
+    private final ObjectId[] _ids;
+    /** The type of the object at each position. */
+    private final byte[] _types;
+    /** The offset in _packFile of the object at each position. */
+    private final long[] _offsets;
+    /** The length in bytes of the object at each position. */
+    private final int[] _lengths;
+    /** The open data file, or null if it is not open. */
+    private FileChannel _channel;
+    /** The reachability bitmaps, if _bitmapsRead. */
+    private BitmapIndex _bitmaps;
+    /** True iff the bitmap file has been read. */
+    private boolean _bitmapsRead;
+}
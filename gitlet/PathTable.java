@@ -0,0 +1,26 @@
+package gitlet;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/** The table of every file path seen by this process.  Each distinct path
+ * is stored once, so that the trees of all loaded commits (and the stage)
+ * share a single String per path instead of each holding its own copy.
+ * @author Chris Zhan */
+class PathTable {
+
+    /** Returns the canonical copy of PATH, adding PATH to the table if it is
+     * not there yet. */
+    static String intern(String path) {
+        String canonical = PATHS.putIfAbsent(path, path);
+        return canonical == null ? path : canonical;
+    }
+
+    /** Returns the number of distinct paths in the table. */
+    static int size() {
+        return PATHS.size();
+    }
+
+    /** The canonical copy of each path. */
+    private static final ConcurrentHashMap<String, String> PATHS =
+            new ConcurrentHashMap<>();
+}
@@ -0,0 +1,268 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** The branches of a repository, each a ref: a name and the id of the
+ * commit it points to.  A ref is kept in a file of its own under
+ * refs/heads in the .gitlet directory, named by the ref's name (so that
+ * origin/master is the file refs/heads/origin/master) and holding the
+ * commit id on a line, so that creating, moving or deleting a branch
+ * writes one small file and nothing else.  Each file is written to a
+ * temporary file in refs and renamed into place, so a reader sees the old
+ * id or the new one, never a mixture.
+ *
+ * Thousands of refs in files of their own cost a file each to list, so
+ * pack-refs (and gc) gathers them into the single file packed-refs, one
+ * "ID NAME" line per ref in order of name, and deletes their files.  A ref
+ * in a file of its own overrides a packed ref of the same name, so moving
+ * a packed ref writes only its own file again; deleting one rewrites
+ * packed-refs.  A ref whose name cannot be a file, because it is not a
+ * plain relative path or because another ref's file or directory is in
+ * the way (as with a and a/b), is kept in packed-refs instead.
+ * @author Chris Zhan */
+class Refs {
+
+    /** The first line of packed-refs. */
+    private static final String HEADER = "# pack-refs\n";
+
+    /** The refs of the repository whose .gitlet directory is
+     * GITLETDIRECTORY. */
+    Refs(File gitletDirectory) {
+        _refsDirectory = new File(gitletDirectory, "refs");
+        _headsDirectory = new File(_refsDirectory, "heads");
+        _packedFile = new File(gitletDirectory, "packed-refs");
+    }
+
+    /** Returns the refs of the repository in Main.CWD. */
+    static synchronized Refs local() {
+        if (_local == null) {
+            _local = new Refs(Gitlet.GITLET_DIRECTORY);
+        }
+        return _local;
+    }
+
+    /** Returns the id of the commit the ref NAME points to, or null if
+     * there is no such ref. */
+    ObjectId get(String name) {
+        if (isLooseName(name)) {
+            File file = new File(_headsDirectory, name);
+            if (file.isFile()) {
+                return readLoose(file, name);
+            }
+        }
+        return packed().get(name);
+    }
+
+    /** Returns every ref, by name, in order of name. */
+    TreeMap<String, ObjectId> all() {
+        TreeMap<String, ObjectId> result = new TreeMap<>(packed());
+        collectLoose(_headsDirectory, "", result);
+        return result;
+    }
+
+    /** Points the ref NAME to the commit with id ID, creating the ref if it
+     * does not exist. */
+    void set(String name, ObjectId id) {
+        File file = isLooseName(name) ? new File(_headsDirectory, name)
+                : null;
+        if (file != null && !blocked(file)) {
+            file.getParentFile().mkdirs();
+            write(file, (id + "\n").getBytes(StandardCharsets.UTF_8));
+        } else {
+            TreeMap<String, ObjectId> packed = new TreeMap<>(packed());
+            packed.put(name, id);
+            writePacked(packed);
+        }
+    }
+
+    /** Deletes the ref NAME.  Returns false if there was no such ref. */
+    boolean delete(String name) {
+        boolean result = false;
+        if (isLooseName(name)) {
+            File file = new File(_headsDirectory, name);
+            if (file.isFile()) {
+                result = file.delete();
+                pruneDirectories(file.getParentFile());
+            }
+        }
+        if (packed().containsKey(name)) {
+            TreeMap<String, ObjectId> packed = new TreeMap<>(packed());
+            packed.remove(name);
+            writePacked(packed);
+            result = true;
+        }
+        return result;
+    }
+
+    /** Gathers every ref into packed-refs and deletes the files of refs of
+     * their own, leaving alone any changed meanwhile.  Returns the number
+     * of refs packed. */
+    int pack() {
+        TreeMap<String, ObjectId> loose = new TreeMap<>();
+        collectLoose(_headsDirectory, "", loose);
+        TreeMap<String, ObjectId> packed = new TreeMap<>(packed());
+        packed.putAll(loose);
+        if (!loose.isEmpty() || !_packedFile.isFile()) {
+            writePacked(packed);
+        }
+        for (Map.Entry<String, ObjectId> ref : loose.entrySet()) {
+            File file = new File(_headsDirectory, ref.getKey());
+            if (ref.getValue().equals(readLoose(file, ref.getKey()))) {
+                file.delete();
+                pruneDirectories(file.getParentFile());
+            }
+        }
+        return packed.size();
+    }
+
+    /** Returns true iff NAME can be the path of a file under
+     * refs/heads: '/'-separated names, none of them empty, "." or "..",
+     * holding no backslashes or control characters. */
+    private static boolean isLooseName(String name) {
+        if (name.isEmpty()) {
+            return false;
+        }
+        for (String part : name.split("/", -1)) {
+            if (part.isEmpty() || part.equals(".") || part.equals("..")) {
+                return false;
+            }
+        }
+        for (int i = 0; i < name.length(); i += 1) {
+            char c = name.charAt(i);
+            if (c < ' ' || c == '\\' || c == 0x7f) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns true iff FILE, the file of a ref, cannot be written because
+     * a directory is in its place or a file in the place of one of the
+     * directories leading to it. */
+    private boolean blocked(File file) {
+        if (file.isDirectory()) {
+            return true;
+        }
+        for (File dir = file.getParentFile(); !dir.equals(_headsDirectory);
+             dir = dir.getParentFile()) {
+            if (dir.isFile()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the id in FILE, the file of the ref NAME, or null if FILE
+     * has gone.  Throws a GitletException if it holds no id. */
+    private static ObjectId readLoose(File file, String name) {
+        byte[] contents;
+        try {
+            contents = Files.readAllBytes(file.toPath());
+        } catch (IOException excp) {
+            return null;
+        }
+        String hex = new String(contents, StandardCharsets.UTF_8).trim();
+        if (!ObjectId.isHex(hex)) {
+            throw Utils.error("Ref %s is corrupt.", name);
+        }
+        return ObjectId.fromHex(hex);
+    }
+
+    /** Adds to RESULT the refs in files under the directory DIR, whose
+     * names start with PREFIX. */
+    private static void collectLoose(File dir, String prefix,
+                                     TreeMap<String, ObjectId> result) {
+        String[] names = dir.list();
+        if (names == null) {
+            return;
+        }
+        Trace.count(Trace.Counter.DIRS_LISTED, 1);
+        Arrays.sort(names);
+        for (String name : names) {
+            File file = new File(dir, name);
+            if (file.isDirectory()) {
+                collectLoose(file, prefix + name + "/", result);
+            } else {
+                ObjectId id = readLoose(file, prefix + name);
+                if (id != null) {
+                    result.put(prefix + name, id);
+                }
+            }
+        }
+    }
+
+    /** Deletes DIR and the directories above it, up to refs/heads, for as
+     * long as they are empty. */
+    private void pruneDirectories(File dir) {
+        while (!dir.equals(_headsDirectory) && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+    }
+
+    /** Returns the packed refs, by name, reading packed-refs on first
+     * use. */
+    private TreeMap<String, ObjectId> packed() {
+        if (_packed == null) {
+            _packed = new TreeMap<>();
+            if (_packedFile.isFile()) {
+                String text = new String(Utils.readContents(_packedFile),
+                        StandardCharsets.UTF_8);
+                for (String line : text.split("\n")) {
+                    int space = line.indexOf(' ');
+                    if (line.startsWith("#") || line.isEmpty()) {
+                        continue;
+                    } else if (space < 0
+                            || !ObjectId.isHex(line.substring(0, space))) {
+                        throw Utils.error("packed-refs is corrupt.");
+                    }
+                    _packed.put(line.substring(space + 1),
+                            ObjectId.fromHex(line.substring(0, space)));
+                }
+            }
+        }
+        return _packed;
+    }
+
+    /** Replaces the packed refs with PACKED. */
+    private void writePacked(TreeMap<String, ObjectId> packed) {
+        StringBuilder text = new StringBuilder(HEADER);
+        for (Map.Entry<String, ObjectId> ref : packed.entrySet()) {
+            text.append(ref.getValue()).append(' ').append(ref.getKey())
+                    .append('\n');
+        }
+        write(_packedFile, text.toString().getBytes(StandardCharsets.UTF_8));
+        _packed = packed;
+    }
+
+    /** Replaces FILE with CONTENTS in a single step, by way of a temporary
+     * file in refs, where it is not mistaken for a ref. */
+    private void write(File file, byte[] contents) {
+        _refsDirectory.mkdirs();
+        try {
+            File temp = Files.createTempFile(_refsDirectory.toPath(),
+                    "tmp-", null).toFile();
+            Utils.writeContents(temp, contents);
+            ObjectStore.moveAtomically(temp, file);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** The refs of the repository in Main.CWD, once used. */
+    private static Refs _local;
+
+    /** The directory holding refs/heads and temporary files. */
+    private final File _refsDirectory;
+    /** The directory holding the refs in files of their own. */
+    private final File _headsDirectory;
+    /** The file holding the packed refs. */
+    private final File _packedFile;
+    /** The packed refs, by name, once read. */
+    private TreeMap<String, ObjectId> _packed;
+}
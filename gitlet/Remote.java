@@ -0,0 +1,87 @@
+package gitlet;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+/** Another repository on this machine, named by the path of its .gitlet
+ * directory, from which commits may be fetched and to which they may be
+ * pushed.
+ *
+ * Objects move between two stores without either side listing all of its
+ * objects: the sending side finds the objects the receiver lacks with an
+ * ObjectWalk, asking the receiver about each commit and blob by id unless
+ * the bitmaps of both sides settle it, and copies them, file to file, into
+ * a single new pack in the receiving store.  A transfer may be limited to
+ * the last few commits of a branch, leaving the receiver shallow (see
+ * Shallow).
+ * @author Chris Zhan */
+class Remote {
+
+    /** The remote repository whose .gitlet directory is GITLETDIRECTORY. */
+    private Remote(File gitletDirectory) {
+        _gitletDirectory = gitletDirectory;
+        _store = new ObjectStore(gitletDirectory);
+        _refs = new Refs(gitletDirectory);
+    }
+
+    /** Returns the remote repository whose .gitlet directory is at PATH,
+     * relative to Main.CWD.  Exits with an error if there is none. */
+    static Remote open(String path) {
+        File dir = new File(path);
+        if (!dir.isAbsolute()) {
+            dir = new File(Main.CWD, path);
+        }
+        if (!new File(dir, "repo").isFile()) {
+            Main.exitWithError("Remote directory not found.");
+        }
+        return new Remote(dir);
+    }
+
+    /** Returns the object store of this repository. */
+    ObjectStore store() {
+        return _store;
+    }
+
+    /** Returns the id of the commit at the head of this repository's branch
+     * named NAME, or null if it has no such branch. */
+    ObjectId branch(String name) {
+        return _refs.get(name);
+    }
+
+    /** Points this repository's branch NAME to the commit with id ID,
+     * creating the branch if need be. */
+    void setBranch(String name, ObjectId id) {
+        _refs.set(name, id);
+        CommitIndex.invalidate(_gitletDirectory);
+    }
+
+    /** Copies into TO the objects reachable from the commit TIP in FROM
+     * that TO lacks, going back at most DEPTH commits from TIP, and
+     * updates the graft points of TO to match.  If TO is shallow, a
+     * commit it has may still lead to history it lacks, so the walk passes
+     * through such commits rather than stopping at them.
+     * @return the commits copied, nearest TIP first. */
+    static List<CommitTree.CommitNode> transfer(ObjectStore from,
+                                                ObjectStore to,
+                                                ObjectId tip, int depth) {
+        Shallow grafts = to.shallow();
+        ObjectWalk missing = new ObjectWalk(from,
+                Collections.singletonList(tip), depth,
+                id -> grafts.isEmpty() && to.hasCommit(id), to::has,
+                to.bitmapped());
+        if (missing.size() > 0) {
+            to.addPack(Pack.write(to.packDirectory(), missing.ids(),
+                    missing.types(), from));
+        }
+        grafts.update(missing.boundary(), to);
+        return missing.commits();
+    }
+
+    /** The .gitlet directory of this repository. */
+    private final File _gitletDirectory;
+    /** The object store of this repository. */
+    private final ObjectStore _store;
+    /** The branches of this repository. */
+    private final Refs _refs;
+}
@@ -0,0 +1,248 @@
+package gitlet;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Random;
+
+/** A generator of synthetic repositories for benchmarks and soak tests,
+ *  whose main program may be invoked as follows:
+ *      java gitlet.RepoGenerator [--OPTION=VALUE]...
+ *  in an empty directory.  It creates a repository there and fills it with
+ *  a history of the requested shape, writing blobs and commits straight
+ *  through the object store rather than running one Gitlet command per
+ *  step, so that a history of a hundred thousand commits takes minutes
+ *  rather than days.
+ *
+ *  The first commit on master adds FILES files, WIDTH to a directory.
+ *  Then BRANCHES branches fork from it, and each following commit goes on a
+ *  branch chosen at random and rewrites CHANGES of the files chosen at
+ *  random.  Every MERGE-EVERY commits, the commit is instead a merge of
+ *  another random branch, taking the other branch's version of every file,
+ *  so that branches merging each other produce criss-cross merges.  File
+ *  sizes follow an exponential distribution of mean SIZE, capped at
+ *  MAX-SIZE; sizes from Blob.CHUNK_THRESHOLD up are chunked as usual.
+ *  Commits are a minute apart, starting at the start of 2020.  The same
+ *  options and SEED always generate the same repository, down to its
+ *  commit ids.  At the end, master is checked out into the working tree.
+ *
+ *  The options, with their defaults, are --seed=0, --commits=1000,
+ *  --files=1000, --width=100, --changes=3, --branches=4,
+ *  --merge-every=20 (0 for no merges), --size=4096 and --max-size=65536;
+ *  every count but --merge-every must be positive.
+ *  @author Chris Zhan
+ */
+public class RepoGenerator {
+
+    /** The number of commits after which the commits read are forgotten,
+     *  so that memory does not grow with the length of the history. */
+    private static final int FORGET_EVERY = 1000;
+
+    /** The time of the first generated commit. */
+    private static final ZonedDateTime START =
+            ZonedDateTime.of(2020, 1, 1, 0, 0, 0, 0, ZoneId.of("UTC"));
+
+    /** Generates a repository in Main.CWD as ARGS describe. */
+    public static void main(String... args) {
+        try {
+            RepoGenerator generator = new RepoGenerator(args);
+            long start = System.nanoTime();
+            generator.generate();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Generated %d commits (%d merges) of %d files "
+                    + "on %d branches in %.3f s.%n", generator._made,
+                    generator._merges, generator._files,
+                    generator._branches + 1, seconds);
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+        }
+    }
+
+    /** A generator of the repository described by the options ARGS. */
+    RepoGenerator(String... args) {
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (!arg.startsWith("--") || equals < 0) {
+                Main.exitWithError("Incorrect operands.");
+            }
+            String name = arg.substring(2, equals);
+            long value = 0;
+            try {
+                value = Long.parseLong(arg.substring(equals + 1));
+            } catch (NumberFormatException excp) {
+                Main.exitWithError("Incorrect operands.");
+            }
+            if (name.equals("seed")) {
+                _seed = value;
+                continue;
+            } else if (value < 0 || value > Integer.MAX_VALUE) {
+                Main.exitWithError("Incorrect operands.");
+            }
+            switch (name) {
+            case "commits": _commits = (int) value;
+                break;
+            case "files": _files = (int) value;
+                break;
+            case "width": _width = (int) value;
+                break;
+            case "changes": _changes = (int) value;
+                break;
+            case "branches": _branches = (int) value;
+                break;
+            case "merge-every": _mergeEvery = (int) value;
+                break;
+            case "size": _size = (int) value;
+                break;
+            case "max-size": _maxSize = (int) value;
+                break;
+            default:
+                Main.exitWithError("Incorrect operands.");
+            }
+        }
+        if (_files == 0 || _width == 0 || _commits == 0 || _changes == 0
+                || _maxSize == 0) {
+            Main.exitWithError("Incorrect operands.");
+        }
+        _changes = Math.min(_changes, _files);
+    }
+
+    /** Creates the repository and its history. */
+    void generate() {
+        if (Gitlet.GITLET_DIRECTORY.exists()) {
+            Main.exitWithError("A Gitlet version-control system "
+                    + "already exists in the current directory.");
+        } else if (!WorkingTree.files().isEmpty()) {
+            Main.exitWithError("The current directory is not empty.");
+        }
+        _random = new Random(_seed);
+        Gitlet gitlet = new Gitlet();
+        _tree = gitlet.commitTree();
+        ArrayList<String> names = new ArrayList<>();
+        names.add("master");
+        for (int k = 0; k < _files; k += 1) {
+            stage(k);
+        }
+        commit("Add " + _files + " files", null);
+        for (int b = 1; b <= _branches; b += 1) {
+            _tree.createBranch("branch" + b);
+            names.add("branch" + b);
+        }
+        while (_made < _commits) {
+            String name = names.get(_random.nextInt(names.size()));
+            _tree.switchBranch(name);
+            if (_mergeEvery == 0 || names.size() == 1
+                    || (_made + 1) % _mergeEvery != 0
+                    || !merge(names, name)) {
+                for (int i = 0; i < _changes; i += 1) {
+                    stage(_random.nextInt(_files));
+                }
+                commit("Change " + _changes + " files on " + name, null);
+            }
+            if (_made % FORGET_EVERY == 0) {
+                forget();
+            }
+        }
+        _tree.switchBranch("master");
+        CommitTree.reindexCommits();
+        _tree.reset(_tree.head().nodeId());
+        gitlet.saveGitlet();
+    }
+
+    /** Commits, on the current branch NAME, a merge of another branch from
+     *  NAMES, taking its version of every file that differs.  As with
+     *  git merge --no-ff, a merge is made even if one branch already
+     *  contains the other, unless they are at the same commit.
+     *  @return false if the branches were at the same commit, and so no
+     *  merge was made. */
+    private boolean merge(ArrayList<String> names, String name) {
+        String other = name;
+        while (other.equals(name)) {
+            other = names.get(_random.nextInt(names.size()));
+        }
+        CommitTree.CommitNode ours = _tree.head().node();
+        CommitTree.CommitNode theirs = null;
+        for (Branch branch : _tree.branches()) {
+            if (branch.name().equals(other)) {
+                theirs = branch.node();
+            }
+        }
+        if (theirs.id().equals(ours.id())) {
+            return false;
+        }
+        FileTree files = theirs.files();
+        for (int k = 0; k < files.size(); k += 1) {
+            if (!files.id(k).equals(ours.files().get(files.path(k)))) {
+                _tree.stage().addId(files.path(k), files.id(k));
+            }
+        }
+        commit("Merged " + other + " into " + name + ".", theirs);
+        _merges += 1;
+        return true;
+    }
+
+    /** Stages new contents for the Kth file. */
+    private void stage(int k) {
+        String path = "d" + (k / _width) + "/f" + k + ".txt";
+        ObjectId id = ObjectStore.local().writeBytes(contents());
+        _tree.stage().addId(path, id);
+    }
+
+    /** Commits the stage on the current branch with log message MESSAGE
+     *  and second parent SECONDPARENT, or none if it is null. */
+    private void commit(String message, CommitTree.CommitNode secondParent) {
+        _tree.generateCommit(START.plusMinutes(_made), message,
+                secondParent);
+        _made += 1;
+    }
+
+    /** Forgets the commits read and made so far, and the commit of each
+     *  branch, so that only the branch heads are read back. */
+    private void forget() {
+        CommitTree.forgetLoadedCommits();
+        for (Branch branch : _tree.branches()) {
+            branch.forgetNode();
+        }
+    }
+
+    /** Returns random text whose length is drawn from the size
+     *  distribution, in lines of up to 64 characters. */
+    private byte[] contents() {
+        double size = -_size * Math.log(1 - _random.nextDouble());
+        byte[] result = new byte[(int) Math.max(1, Math.min(size,
+                _maxSize))];
+        _random.nextBytes(result);
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = i % 64 == 63 || i == result.length - 1 ? (byte) '\n'
+                    : (byte) ('a' + (result[i] & 0xff) % 26);
+        }
+        return result;
+    }
+
+    /** The seed of the random choices. */
+    private long _seed;
+    /** The number of commits to make, including the first. */
+    private int _commits = 1000;
+    /** The number of files. */
+    private int _files = 1000;
+    /** The number of files in each directory. */
+    private int _width = 100;
+    /** The number of files changed by each commit but the first. */
+    private int _changes = 3;
+    /** The number of branches besides master. */
+    private int _branches = 4;
+    /** The number of commits from one merge to the next, or 0. */
+    private int _mergeEvery = 20;
+    /** The mean size of a file version, in bytes. */
+    private int _size = 4096;
+    /** The largest size of a file version, in bytes. */
+    private int _maxSize = 65536;
+
+    /** The source of every random choice. */
+    private Random _random;
+    /** The commit tree of the repository being generated. */
+    private CommitTree _tree;
+    /** The number of commits made so far. */
+    private int _made;
+    /** The number of merges made so far. */
+    private int _merges;
+}
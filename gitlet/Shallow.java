@@ -0,0 +1,119 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+/** The graft points of a shallow repository: the commits whose parents the
+ * repository deliberately lacks, kept in the file shallow of its .gitlet
+ * directory, one id per line.  A graft point is treated as a root commit
+ * by every walk of the history (log, merge, gc, fsck and transfers), so a
+ * repository that holds only the last few commits of a branch works as if
+ * that were the whole history.  Every commit in a store either has all its
+ * parents in the store or is a graft point.
+ * @author Chris Zhan */
+class Shallow {
+
+    /** The graft points listed in FILE, which need not exist. */
+    Shallow(File file) {
+        _file = file;
+        if (file.isFile()) {
+            String text = new String(Utils.readContents(file),
+                    StandardCharsets.UTF_8);
+            for (String line : text.split("\n")) {
+                if (ObjectId.isHex(line)) {
+                    _grafts.add(ObjectId.fromHex(line));
+                }
+            }
+        }
+    }
+
+    /** Returns true iff the repository has no graft points, and so holds
+     * complete histories. */
+    synchronized boolean isEmpty() {
+        return _grafts.isEmpty();
+    }
+
+    /** Returns true iff the commit with id ID is a graft point. */
+    synchronized boolean isGraft(ObjectId id) {
+        return !_grafts.isEmpty() && _grafts.contains(id);
+    }
+
+    /** Returns the graft points, in increasing order. */
+    synchronized List<ObjectId> ids() {
+        return new ArrayList<>(_grafts);
+    }
+
+    /** Returns the ids of the parents of COMMIT that a walk of this
+     * repository's history should follow: none if COMMIT is a graft point,
+     * and otherwise all of them. */
+    List<String> parentIds(CommitTree.CommitNode commit) {
+        if (isGraft(commit.id())) {
+            return Collections.emptyList();
+        }
+        return commit.parentIds();
+    }
+
+    /** Brings the graft points up to date after commits were added to
+     * STORE, this repository's store.  Each commit of BOUNDARY, whose
+     * parents the sender did not send, becomes a graft point if STORE lacks
+     * one of its parents; each old graft point whose parents STORE now has
+     * stops being one.  Saves the list if it changed, and then deletes the
+     * reachability bitmaps of STORE, which describe the old history. */
+    synchronized void update(Collection<ObjectId> boundary,
+                             ObjectStore store) {
+        boolean changed = false;
+        for (ObjectId id : new ArrayList<>(_grafts)) {
+            if (hasParents(id, store)) {
+                _grafts.remove(id);
+                changed = true;
+            }
+        }
+        for (ObjectId id : boundary) {
+            if (!hasParents(id, store) && _grafts.add(id)) {
+                changed = true;
+            }
+        }
+        if (changed) {
+            write();
+            store.dropBitmaps();
+        }
+    }
+
+    /** Returns true iff STORE has every parent of the commit with id ID. */
+    private static boolean hasParents(ObjectId id, ObjectStore store) {
+        CommitTree.CommitNode commit = store.readCommit(id);
+        if (commit == null) {
+            return false;
+        }
+        for (String parentId : commit.parentIds()) {
+            if (!store.hasCommit(ObjectId.fromHex(parentId))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Saves the graft points, deleting the file if there are none. */
+    private void write() {
+        if (_grafts.isEmpty()) {
+            _file.delete();
+            return;
+        }
+        StringBuilder text = new StringBuilder();
+        for (ObjectId id : _grafts) {
+            text.append(id).append("\n");
+        }
+        ObjectStore.writeAtomically(_file,
+                text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** The file listing the graft points. */
+    private final File _file;
+    /** The graft points. */
+    private final TreeSet<ObjectId> _grafts = new TreeSet<>();
+}
@@ -0,0 +1,216 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** The sparse-checkout configuration of a repository: which paths of a
+ * commit are materialized in the working tree.  Checkout, reset and merge
+ * write only the included paths, and status, add -A and the working-tree
+ * scans behind them look only at the included paths, so the excluded ones
+ * are never written, hashed or listed.  Commits still record every path,
+ * and a merge conflict in an excluded file still writes that file.
+ *
+ * The configuration is kept in the file sparse-checkout of the .gitlet
+ * directory: the word "cone" or "patterns" on the first line, then one
+ * entry per line.  In cone mode the entries are directories; a path is
+ * included if it lies in one of them, or directly in the root or in a
+ * directory leading to one of them.  In pattern mode the entries are glob
+ * patterns, each excluding the paths it matches if it starts with '!' and
+ * including them otherwise, the last matching pattern winning.  A pattern
+ * ending in '/' matches only directories; a pattern without '/' matches a
+ * file or directory name at any depth; any other pattern matches paths
+ * from the root.  A path lying in a matched directory is matched too.
+ * Cone mode lets whole directories be skipped unread; pattern mode must
+ * look at every path.
+ * @author Chris Zhan */
+class SparseCheckout {
+
+    /** The file holding the configuration. */
+    static final File CONFIG = Utils.join(Gitlet.GITLET_DIRECTORY,
+            "sparse-checkout");
+
+    /** A configuration in cone mode if CONE, with entries ENTRIES, or the
+     * configuration including everything if ENTRIES is null. */
+    private SparseCheckout(boolean cone, List<String> entries) {
+        _cone = cone;
+        _entries = entries;
+        if (entries != null && !cone) {
+            for (String entry : entries) {
+                boolean negated = entry.startsWith("!");
+                String pattern = negated ? entry.substring(1) : entry;
+                boolean dirOnly = pattern.endsWith("/");
+                boolean anchored = pattern.startsWith("/");
+                pattern = pattern.replaceAll("^/+|/+$", "");
+                _negated.add(negated);
+                _dirOnly.add(dirOnly);
+                _anchored.add(anchored || pattern.contains("/"));
+                _matchers.add(FileSystems.getDefault()
+                        .getPathMatcher("glob:" + pattern));
+            }
+        }
+    }
+
+    /** Returns the configuration of the repository in Main.CWD, reading it
+     * on first use. */
+    static synchronized SparseCheckout local() {
+        if (_local == null) {
+            _local = read();
+        }
+        return _local;
+    }
+
+    /** Returns the configuration in CONFIG, or the one including
+     * everything if there is none. */
+    private static SparseCheckout read() {
+        if (!CONFIG.isFile()) {
+            return new SparseCheckout(false, null);
+        }
+        String text = new String(Utils.readContents(CONFIG),
+                StandardCharsets.UTF_8);
+        ArrayList<String> lines = new ArrayList<>();
+        for (String line : text.split("\n")) {
+            if (!line.isEmpty()) {
+                lines.add(line);
+            }
+        }
+        if (lines.isEmpty()) {
+            return new SparseCheckout(false, null);
+        }
+        boolean cone = lines.get(0).equals("cone");
+        return new SparseCheckout(cone, lines.subList(1, lines.size()));
+    }
+
+    /** Makes the configuration with entries ENTRIES, in cone mode if CONE,
+     * the configuration of the repository in Main.CWD, and saves it.
+     * Exits with an error if an entry of a cone is not a directory path.
+     * @return the new configuration. */
+    static synchronized SparseCheckout set(boolean cone,
+                                           List<String> entries) {
+        ArrayList<String> cleaned = new ArrayList<>();
+        for (String entry : entries) {
+            if (cone) {
+                entry = entry.replaceAll("^/+|/+$", "");
+                if (entry.isEmpty() || entry.startsWith("!")
+                        || entry.matches(".*[*?\\[{].*")) {
+                    Main.exitWithError("Cone mode takes directories, "
+                            + "not patterns.");
+                }
+            }
+            cleaned.add(entry);
+        }
+        StringBuilder text = new StringBuilder(cone ? "cone" : "patterns");
+        text.append("\n");
+        for (String entry : cleaned) {
+            text.append(entry).append("\n");
+        }
+        ObjectStore.writeAtomically(CONFIG,
+                text.toString().getBytes(StandardCharsets.UTF_8));
+        _local = new SparseCheckout(cone, cleaned);
+        return _local;
+    }
+
+    /** Deletes the configuration of the repository in Main.CWD, so that
+     * every path is included again.
+     * @return the new configuration. */
+    static synchronized SparseCheckout disable() {
+        CONFIG.delete();
+        _local = new SparseCheckout(false, null);
+        return _local;
+    }
+
+    /** Returns true iff this configuration excludes some paths. */
+    boolean enabled() {
+        return _entries != null;
+    }
+
+    /** Returns true iff this configuration is in cone mode. */
+    boolean cone() {
+        return _cone;
+    }
+
+    /** Returns the entries of this configuration. */
+    List<String> entries() {
+        return _entries == null ? Collections.emptyList()
+                : Collections.unmodifiableList(_entries);
+    }
+
+    /** Returns true iff the file at the working-tree path PATH is
+     * included. */
+    boolean includes(String path) {
+        if (_entries == null) {
+            return true;
+        }
+        int slash = path.lastIndexOf('/');
+        if (_cone) {
+            return slash < 0 || inCone(path.substring(0, slash));
+        }
+        boolean included = false;
+        for (int i = 0; i < _matchers.size(); i += 1) {
+            if (included == _negated.get(i) && matches(i, path)) {
+                included = !included;
+            }
+        }
+        return included;
+    }
+
+    /** Returns true iff some file under the directory at the working-tree
+     * path DIR may be included, so that DIR must be scanned. */
+    boolean mayInclude(String dir) {
+        return _entries == null || !_cone || inCone(dir);
+    }
+
+    /** Returns true iff the directory DIR is a cone directory, lies in
+     * one, or leads to one. */
+    private boolean inCone(String dir) {
+        for (String cone : _entries) {
+            if (dir.equals(cone) || dir.startsWith(cone + "/")
+                    || cone.startsWith(dir + "/")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns true iff the Ith pattern matches the file PATH, or one of
+     * the directories it lies in. */
+    private boolean matches(int i, String path) {
+        PathMatcher matcher = _matchers.get(i);
+        int end = path.indexOf('/');
+        while (true) {
+            String prefix = end < 0 ? path : path.substring(0, end);
+            if (end >= 0 || !_dirOnly.get(i)) {
+                String subject = _anchored.get(i) ? prefix
+                        : prefix.substring(prefix.lastIndexOf('/') + 1);
+                if (matcher.matches(Paths.get(subject))) {
+                    return true;
+                }
+            }
+            if (end < 0) {
+                return false;
+            }
+            end = path.indexOf('/', end + 1);
+        }
+    }
+
+    /** True iff this configuration is in cone mode. */
+    private final boolean _cone;
+    /** The entries of this configuration, or null if it includes every
+     * path. */
+    private final List<String> _entries;
+    /** In pattern mode, the matcher of each pattern. */
+    private final ArrayList<PathMatcher> _matchers = new ArrayList<>();
+    /** In pattern mode, whether each pattern excludes what it matches. */
+    private final ArrayList<Boolean> _negated = new ArrayList<>();
+    /** In pattern mode, whether each pattern matches only directories. */
+    private final ArrayList<Boolean> _dirOnly = new ArrayList<>();
+    /** In pattern mode, whether each pattern is matched from the root. */
+    private final ArrayList<Boolean> _anchored = new ArrayList<>();
+    /** The configuration of the repository in Main.CWD, once read. */
+    private static SparseCheckout _local;
+}
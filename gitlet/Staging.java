@@ -1,65 +1,43 @@
 package gitlet;
 
-import java.io.File;
-import java.io.IOException;
 import java.io.Serializable;
-import java.util.List;
-import java.util.ArrayList;
 import java.util.TreeMap;
+import java.util.TreeSet;
 
 public class Staging implements Serializable {
 
-    /** Staging Folder that stores files that are gitlet added. */
-    static final File STAGING_DIRECTORY = Utils.join(
-            Gitlet.GITLET_DIRECTORY, "staging");
     Staging() {
-        STAGING_DIRECTORY.mkdir();
         stagedFiles = new TreeMap<>();
     }
 
-    /** Adds a file to the staging area by placing it in the
-     * staging directory.
+    /** Adds a file to the staging area.  Its blob is written straight into
+     * the object store (unless it is already there), so the stage itself
+     * records only the blob's id, and committing it copies nothing.
      * @param fileBlob the blob representing the file.
      * @param name the name of the file. */
     void addFile(Blob fileBlob, String name) {
-        String sha1 = Utils.sha1(fileBlob.stringContents());
-        stagedFiles.put(name, fileBlob);
-        File addedFile = Utils.join(STAGING_DIRECTORY, sha1);
-        try {
-            addedFile.createNewFile();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        Utils.writeObject(addedFile, fileBlob);
+        addId(name, ObjectStore.local().writeBlob(fileBlob));
     }
 
-    /** Removes a specified file from the staging area.
+    /** Stages the blob with id ID, which must already be in the object
+     * store, as the contents of the file NAME.
+     * @param name the name of the file.
+     * @param id the id of its blob. */
+    void addId(String name, ObjectId id) {
+        stagedFiles.put(PathTable.intern(name), id);
+        stagedForRemoval.remove(name);
+    }
+
+    /** Removes a specified file from the staging area.  Its blob stays in
+     * the object store until it is garbage collected.
      * @param fileName the name of the file to be removed. */
     void removeFile(String fileName) {
-        File toRemove = Utils.join(STAGING_DIRECTORY, fileName);
-        toRemove.delete();
         stagedFiles.remove(fileName);
     }
 
-    /** Clears the stage. This will copy all files in the stagind directory to
-     * .gitlet/files. It will also delete all files in the staging directory and
-     * clear the TreeMap stagedFiles to prepare for new stagings.
-     * This should be called after a commit. */
+    /** Clears the stage.  Staged blobs are already in the object store, so
+     * this only forgets their ids.  This should be called after a commit. */
     void clearStage() {
-        List<String> stagedFilesSHA1 = Utils.plainFilenamesIn(
-                Staging.STAGING_DIRECTORY);
-        for (String name : stagedFilesSHA1) {
-            File stagedFile = Utils.join(Staging.STAGING_DIRECTORY, name);
-            File newTrackedFile = Utils.join(Gitlet.FILES_DIRECTORY, name);
-            try {
-                newTrackedFile.createNewFile();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-            Blob stagedContents = Utils.readObject(stagedFile, Blob.class);
-            Utils.writeObject(newTrackedFile, stagedContents);
-            stagedFile.delete();
-        }
         stagedFiles.clear();
     }
 
@@ -70,19 +48,19 @@ public class Staging implements Serializable {
     }
 
     /** Accessor method for the stageMap.
-     * @return the list of staged files */
-    TreeMap<String, Blob> stagedFiles() {
+     * @return the map of staged file names to blob ids. */
+    TreeMap<String, ObjectId> stagedFiles() {
         return stagedFiles;
     }
 
     /** Accessor method for the removed files.
-     * @return the list of files staged for removals.
+     * @return the set of files staged for removal, in order.
      */
-    ArrayList<String> stagedForRemoval() {
+    TreeSet<String> stagedForRemoval() {
         return stagedForRemoval;
     }
-    /** The list of files that need to be staged. */
-    private TreeMap<String, Blob> stagedFiles;
-    /** The list of files that are staged for removal. */
-    private ArrayList<String> stagedForRemoval = new ArrayList<>();
+    /** The ids of the blobs of the files that need to be staged. */
+    private TreeMap<String, ObjectId> stagedFiles;
+    /** The files that are staged for removal. */
+    private TreeSet<String> stagedForRemoval = new TreeSet<>();
 }
@@ -0,0 +1,297 @@
+package gitlet;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Opt-in tracing of where a command spends its time.  A command is
+ * divided into phases, each opened by phase and closed by close, usually
+ * in a try-with-resources statement; phases nest, and repeated phases of
+ * one name under one parent are added together.  While a phase is open,
+ * the counts reported to count (bytes read and written, objects loaded,
+ * files hashed, directories listed, cache hits and misses) are added to
+ * it and to every phase enclosing it, from whichever thread they come, so
+ * that worker threads of a parallel phase count towards it.
+ * When the outermost phase, the command, closes, every phase is reported
+ * with its wall time and counts: as a summary on standard error, or as
+ * one JSON object per phase appended to a file.
+ *
+ * Tracing is off unless turned on by the --trace option (summary) or
+ * --trace=FILE (JSON lines to FILE) before the command, or by the
+ * environment variable GITLET_TRACE, set to 1 for a summary or to a file
+ * name.  When it is off, phase returns a shared inert phase and count
+ * returns at once, so the instrumentation costs next to nothing.
+ * @author Chris Zhan */
+final class Trace implements AutoCloseable {
+
+    /** The quantities counted. */
+    enum Counter {
+        /** Bytes read from files. */
+        BYTES_READ("bytesRead"),
+        /** Bytes written to files. */
+        BYTES_WRITTEN("bytesWritten"),
+        /** Objects read from the object store. */
+        OBJECTS_LOADED("objectsLoaded"),
+        /** Working files hashed. */
+        FILES_HASHED("filesHashed"),
+        /** Directories listed. */
+        DIRS_LISTED("dirsListed"),
+        /** Commits found in the commit cache. */
+        COMMIT_CACHE_HITS("commitCacheHits"),
+        /** Commits that had to be read. */
+        COMMIT_CACHE_MISSES("commitCacheMisses"),
+        /** Blobs found in the blob cache. */
+        BLOB_CACHE_HITS("blobCacheHits"),
+        /** Blobs that had to be read. */
+        BLOB_CACHE_MISSES("blobCacheMisses");
+
+        /** A counter named NAME in JSON output. */
+        Counter(String name) {
+            _name = name;
+        }
+
+        /** The name of this counter in JSON output. */
+        private final String _name;
+    }
+
+    /** The inert phase, returned when tracing is off. */
+    private static final Trace NONE = new Trace(null, null);
+
+    /** A phase named NAME inside PARENT, or a command if PARENT is null. */
+    private Trace(String name, Trace parent) {
+        _name = name;
+        _parent = parent;
+        _counts = new LongAdder[Counter.values().length];
+        for (int i = 0; i < _counts.length; i += 1) {
+            _counts[i] = new LongAdder();
+        }
+    }
+
+    /** Sets up tracing as the --trace option ARG, which is --trace or
+     * --trace=FILE, asks. */
+    static void configure(String arg) {
+        int equals = arg.indexOf('=');
+        setDestination(equals < 0 ? "1" : arg.substring(equals + 1));
+    }
+
+    /** Sets up tracing as the environment variable GITLET_TRACE asks,
+     * unless the --trace option has already. */
+    static void configureFromEnvironment() {
+        if (!_enabled) {
+            setDestination(System.getenv("GITLET_TRACE"));
+        }
+    }
+
+    /** Sends traces to standard error if DESTINATION is 1 or "stderr", to
+     * the file named DESTINATION otherwise, and nowhere if it is null,
+     * empty or 0. */
+    private static void setDestination(String destination) {
+        if (destination == null || destination.isEmpty()
+                || destination.equals("0")) {
+            _enabled = false;
+            _file = null;
+        } else {
+            _enabled = true;
+            boolean summary = destination.equals("1")
+                    || destination.equals("stderr");
+            _file = summary ? null : destination;
+        }
+    }
+
+    /** Returns true iff tracing is on. */
+    static boolean enabled() {
+        return _enabled;
+    }
+
+    /** Opens and returns the phase named NAME inside the current one, or
+     * a command named NAME if no phase is open.  Must be called from the
+     * thread running the command. */
+    static Trace phase(String name) {
+        if (!_enabled) {
+            return NONE;
+        }
+        Trace parent = _current;
+        Trace result = null;
+        if (parent != null) {
+            for (Trace child : parent._children) {
+                if (child._name.equals(name)) {
+                    result = child;
+                }
+            }
+        }
+        if (result == null) {
+            result = new Trace(name, parent);
+            if (parent != null) {
+                parent._children.add(result);
+            }
+        }
+        result._calls += 1;
+        result._start = System.nanoTime();
+        _current = result;
+        return result;
+    }
+
+    /** Adds N to COUNTER in the open phases. */
+    static void count(Counter counter, long n) {
+        for (Trace phase = _current; phase != null; phase = phase._parent) {
+            phase._counts[counter.ordinal()].add(n);
+        }
+    }
+
+    /** Closes this phase, reporting the whole trace if it is a command. */
+    @Override
+    public void close() {
+        if (this == NONE) {
+            return;
+        }
+        _nanos += System.nanoTime() - _start;
+        _current = _parent;
+        if (_parent == null) {
+            report();
+        }
+    }
+
+    /** Reports this command and its phases. */
+    private void report() {
+        if (_file == null) {
+            PrintStream err = System.err;
+            print(err, "");
+            err.flush();
+            return;
+        }
+        try (PrintWriter out = new PrintWriter(new FileWriter(_file,
+                true))) {
+            printJson(out, _name, _name);
+        } catch (IOException excp) {
+            System.err.println("cannot write trace: " + excp.getMessage());
+        }
+    }
+
+    /** Prints a summary line for this phase, indented by INDENT, and then
+     * those of its phases, to OUT. */
+    private void print(PrintStream out, String indent) {
+        StringBuilder line = new StringBuilder("[trace] ").append(indent)
+                .append(_name);
+        if (_calls > 1) {
+            line.append(" (x").append(_calls).append(")");
+        }
+        line.append(": ").append(String.format(Locale.ROOT, "%.3f ms",
+                _nanos / 1e6));
+        long read = get(Counter.BYTES_READ);
+        long written = get(Counter.BYTES_WRITTEN);
+        if (read > 0) {
+            line.append(", read ").append(bytes(read));
+        }
+        if (written > 0) {
+            line.append(", wrote ").append(bytes(written));
+        }
+        append(line, Counter.OBJECTS_LOADED, "objects loaded");
+        append(line, Counter.FILES_HASHED, "files hashed");
+        append(line, Counter.DIRS_LISTED, "directories listed");
+        appendCache(line, Counter.COMMIT_CACHE_HITS,
+                Counter.COMMIT_CACHE_MISSES, "commit");
+        appendCache(line, Counter.BLOB_CACHE_HITS, Counter.BLOB_CACHE_MISSES,
+                "blob");
+        out.println(line);
+        for (Trace child : _children) {
+            child.print(out, indent + "  ");
+        }
+    }
+
+    /** Appends ", N WHAT" to LINE if the count N of COUNTER is not 0. */
+    private void append(StringBuilder line, Counter counter, String what) {
+        long n = get(counter);
+        if (n > 0) {
+            line.append(", ").append(n).append(" ").append(what);
+        }
+    }
+
+    /** Appends ", WHAT cache H/N hits (P%)" to LINE if there were any
+     * lookups, counted as HITS and MISSES, in the cache. */
+    private void appendCache(StringBuilder line, Counter hits,
+                             Counter misses, String what) {
+        long found = get(hits);
+        long lookups = found + get(misses);
+        if (lookups > 0) {
+            line.append(String.format(Locale.ROOT,
+                    ", %s cache %d/%d hits (%.0f%%)", what, found, lookups,
+                    100.0 * found / lookups));
+        }
+    }
+
+    /** Prints a JSON line for this phase, whose path of phase names is
+     * PATH, in command COMMAND, and then those of its phases, to OUT. */
+    private void printJson(PrintWriter out, String command, String path) {
+        StringBuilder line = new StringBuilder("{\"command\":")
+                .append(quote(command)).append(",\"phase\":")
+                .append(quote(path)).append(",\"calls\":").append(_calls)
+                .append(",\"ms\":").append(String.format(Locale.ROOT,
+                        "%.3f", _nanos / 1e6));
+        for (Counter counter : Counter.values()) {
+            line.append(",\"").append(counter._name).append("\":")
+                    .append(get(counter));
+        }
+        out.println(line.append("}"));
+        for (Trace child : _children) {
+            child.printJson(out, command, path + "/" + child._name);
+        }
+    }
+
+    /** Returns the count of COUNTER in this phase. */
+    private long get(Counter counter) {
+        return _counts[counter.ordinal()].sum();
+    }
+
+    /** Returns N bytes in readable units. */
+    private static String bytes(long n) {
+        if (n < 1024) {
+            return n + " B";
+        } else if (n < 1024 * 1024) {
+            return String.format(Locale.ROOT, "%.1f KB", n / 1024.0);
+        }
+        return String.format(Locale.ROOT, "%.1f MB", n / (1024.0 * 1024));
+    }
+
+    /** Returns S as a JSON string. */
+    private static String quote(String s) {
+        StringBuilder result = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i += 1) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                result.append('\\').append(c);
+            } else if (c < ' ') {
+                result.append(String.format("\\u%04x", (int) c));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.append('"').toString();
+    }
+
+    /** True iff tracing is on. */
+    private static volatile boolean _enabled;
+    /** The file receiving JSON lines, or null for a summary on standard
+     * error. */
+    private static String _file;
+    /** The innermost open phase, or null. */
+    private static volatile Trace _current;
+
+    /** The name of this phase. */
+    private final String _name;
+    /** The phase enclosing this one, or null for a command. */
+    private final Trace _parent;
+    /** The phases inside this one, in the order first opened. */
+    private final ArrayList<Trace> _children = new ArrayList<>();
+    /** The counts of this phase, by Counter ordinal. */
+    private final LongAdder[] _counts;
+    /** The number of times this phase was opened. */
+    private int _calls;
+    /** The time at which this phase was last opened. */
+    private long _start;
+    /** The total wall time of this phase, in nanoseconds. */
+    private long _nanos;
+}
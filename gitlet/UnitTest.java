@@ -3,8 +3,32 @@ package gitlet;
 import ucb.junit.textui;
 import org.junit.Test;
 import static org.junit.Assert.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 
 /** The suite of all JUnit tests for the gitlet package.
  *  @author Chris Zhan
@@ -34,6 +58,509 @@ public class UnitTest {
         String epochTime = CommitTree.CommitNode.formatTime(epochDay);
     }
 
-}
+    @Test
+    public void sha1Test() {
+        assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d",
+                Utils.sha1("abc"));
+        assertEquals(Utils.sha1("ab", "c"), Utils.sha1("abc".getBytes()));
+        assertEquals(Utils.sha1("abc"), Utils.sha1Id("abc").toString());
+    }
+
+    @Test
+    public void objectIdTest() {
+        String hex = "a9993e364706816aba3e25717850c26c9cd0d89d";
+        ObjectId id = ObjectId.fromHex(hex);
+        assertEquals(hex, id.toString());
+        assertEquals(id, ObjectId.of(id.toBytes()));
+        assertEquals(id.hashCode(), ObjectId.fromHex(hex).hashCode());
+        assertEquals("a9993e3", id.abbreviate(7));
+        ObjectId larger = ObjectId.fromHex(
+                "f9993e364706816aba3e25717850c26c9cd0d89d");
+        assertTrue(id.compareTo(larger) < 0);
+        assertTrue(larger.compareTo(id) > 0);
+        assertFalse(ObjectId.isHex("a9993e3"));
+    }
+
+    @Test
+    public void objectIdMapTest() {
+        ObjectIdMap<Integer> map = new ObjectIdMap<>();
+        ObjectIdSet set = new ObjectIdSet();
+        for (int i = 0; i < 1000; i += 1) {
+            map.put(Utils.sha1Id(Integer.toString(i)), i);
+            assertTrue(set.add(Utils.sha1Id(Integer.toString(i))));
+        }
+        assertFalse(set.add(Utils.sha1Id("7")));
+        map.put(Utils.sha1Id("7"), -7);
+        assertEquals(1000, map.size());
+        assertEquals(1000, set.size());
+        assertEquals(Integer.valueOf(-7), map.get(Utils.sha1Id("7")));
+        assertEquals(Integer.valueOf(999), map.get(Utils.sha1Id("999")));
+        assertNull(map.get(Utils.sha1Id("1000")));
+        assertTrue(set.contains(Utils.sha1Id("500")));
+        assertFalse(set.contains(Utils.sha1Id("1000")));
+        assertEquals(1000, set.toList().size());
+    }
+
+    @Test
+    public void objectCacheTest() {
+        ObjectCache<String> cache = new ObjectCache<>(10, String::length,
+                Trace.Counter.BLOB_CACHE_HITS,
+                Trace.Counter.BLOB_CACHE_MISSES);
+        ObjectId a = Utils.sha1Id("a");
+        ObjectId b = Utils.sha1Id("b");
+        ObjectId c = Utils.sha1Id("c");
+        cache.put(a, "aaaa");
+        cache.put(b, "bbbb");
+        assertEquals("aaaa", cache.get(a));
+        cache.put(c, "cccc");
+        assertNull(cache.get(b));
+        assertEquals("aaaa", cache.get(a));
+        assertEquals("cccc", cache.get(c));
+        assertEquals(8, cache.bytes());
+        assertEquals(1, cache.evictions());
+        cache.put(b, "bbbbbbbbbbb");
+        assertNull(cache.get(b));
+        assertEquals(2, cache.size());
+        assertEquals(3, cache.hits());
+        assertEquals(2, cache.misses());
+        cache.clear();
+        assertNull(cache.get(a));
+        assertEquals(0, cache.bytes());
+    }
+
+    @Test
+    public void fileTreeTest() {
+        TreeMap<String, ObjectId> entries = new TreeMap<>();
+        entries.put(new String("b.txt"), Utils.sha1Id("b"));
+        entries.put(new String("a.txt"), Utils.sha1Id("a"));
+        FileTree tree = FileTree.of(entries);
+        assertEquals(2, tree.size());
+        assertEquals("a.txt", tree.path(0));
+        assertEquals(Utils.sha1Id("b"), tree.get("b.txt"));
+        assertNull(tree.get("c.txt"));
+        assertFalse(tree.contains("c.txt"));
+        FileTree copy = FileTree.of(entries);
+        assertSame(tree.path(1), copy.path(1));
+        assertEquals(0, FileTree.EMPTY.size());
+    }
+
+    @Test
+    public void fileTreeWithTest() {
+        TreeMap<String, ObjectId> entries = new TreeMap<>();
+        for (String path : new String[] {"a", "b", "c", "d/e", "f"}) {
+            entries.put(path, Utils.sha1Id(path));
+        }
+        FileTree tree = FileTree.of(entries);
+        TreeMap<String, ObjectId> changed = new TreeMap<>();
+        changed.put("0", Utils.sha1Id("new"));
+        changed.put("c", Utils.sha1Id("changed"));
+        changed.put("d/a", Utils.sha1Id("new"));
+        changed.put("g", Utils.sha1Id("new"));
+        FileTree result = tree.with(changed,
+                new TreeSet<>(Arrays.asList("b", "f", "g", "missing")));
+        assertEquals(Arrays.asList("0", "a", "c", "d/a", "d/e"),
+                result.paths());
+        assertEquals(Utils.sha1Id("changed"), result.get("c"));
+        assertEquals(Utils.sha1Id("d/e"), result.get("d/e"));
+        assertSame(tree, tree.with(new TreeMap<>(), new TreeSet<>()));
+        assertEquals(entries.keySet().size(),
+                FileTree.EMPTY.with(entries, new TreeSet<>()).size());
+    }
+
+    @Test
+    public void ewahBitmapTest() {
+        BitSet x = new BitSet();
+        x.set(3);
+        x.set(100, 1000);
+        x.set(5000);
+        BitSet y = new BitSet();
+        y.set(0, 200);
+        y.set(4999, 5002);
+        EwahBitmap ex = EwahBitmap.of(x), ey = EwahBitmap.of(y);
+        assertEquals(x, ex.toBitSet());
+        assertEquals(x.cardinality(), ex.cardinality());
+        assertTrue(ex.get(500));
+        assertFalse(ex.get(1000));
+        BitSet union = (BitSet) x.clone();
+        union.or(y);
+        assertEquals(union, ex.or(ey).toBitSet());
+        BitSet both = (BitSet) x.clone();
+        both.and(y);
+        assertEquals(both, ex.and(ey).toBitSet());
+        BitSet diff = (BitSet) x.clone();
+        diff.andNot(y);
+        assertEquals(diff, ex.andNot(ey).toBitSet());
+        assertTrue(ex.sizeInBytes() < x.toLongArray().length * 8);
+    }
+
+    @Test
+    public void chunkerTest() throws IOException {
+        byte[] original = new byte[2 << 20];
+        new Random(0).nextBytes(original);
+        int edit = original.length / 2;
+        byte[] edited = new byte[original.length + 10];
+        System.arraycopy(original, 0, edited, 0, edit);
+        System.arraycopy(original, edit, edited, edit + 10,
+                original.length - edit);
+        List<ObjectId> before = chunkIds(original);
+        List<ObjectId> after = chunkIds(edited);
+        assertTrue(before.size() > 10);
+        HashSet<ObjectId> changed = new HashSet<>(after);
+        changed.removeAll(before);
+        assertTrue(changed.size() <= 2);
+        assertTrue(after.size() - changed.size() >= before.size() - 2);
+        assertEquals(before.get(0), after.get(0));
+        assertEquals(before.get(before.size() - 1),
+                after.get(after.size() - 1));
+    }
+
+    /** Returns the ids of the chunks of CONTENTS, checking that they are
+     * within the size bounds and together make up CONTENTS. */
+    private static List<ObjectId> chunkIds(byte[] contents)
+        throws IOException {
+        Chunker chunker = new Chunker(new ByteArrayInputStream(contents));
+        ByteArrayOutputStream joined = new ByteArrayOutputStream();
+        ArrayList<ObjectId> result = new ArrayList<>();
+        for (byte[] chunk = chunker.next(); chunk != null;
+             chunk = chunker.next()) {
+            assertTrue(chunk.length <= Chunker.MAX_SIZE);
+            assertTrue(chunk.length >= Chunker.MIN_SIZE
+                    || joined.size() + chunk.length == contents.length);
+            joined.write(chunk);
+            result.add(Chunker.idOf(chunk));
+        }
+        assertArrayEquals(contents, joined.toByteArray());
+        return result;
+    }
+
+    @Test
+    public void bitmapIndexTest() throws IOException {
+        File file = File.createTempFile("bitmaps", ".bitmap");
+        file.deleteOnExit();
+        BitSet bits = new BitSet();
+        bits.set(2, 9);
+        ObjectId commit = Utils.sha1Id("commit");
+        TreeMap<ObjectId, EwahBitmap> bitmaps = new TreeMap<>();
+        bitmaps.put(commit, EwahBitmap.of(bits));
+        new BitmapIndex(bitmaps).write(file);
+        BitmapIndex index = BitmapIndex.read(file);
+        assertEquals(1, index.size());
+        assertEquals(bits, index.get(commit).toBitSet());
+        assertNull(index.get(Utils.sha1Id("other")));
+    }
+
+    @Test
+    public void repoGeneratorTest() throws IOException {
+        String[] options = { "--seed=7", "--commits=40", "--files=30",
+            "--width=5", "--branches=3", "--merge-every=4",
+            "--size=3000", "--max-size=40000" };
+        File first = Files.createTempDirectory("gen").toFile();
+        File second = Files.createTempDirectory("gen").toFile();
+        File other = Files.createTempDirectory("gen").toFile();
+        try {
+            Map<String, String> env =
+                    Collections.singletonMap("GITLET_CHUNK_THRESHOLD",
+                            "20000");
+            String made = run(first, env, "gitlet.RepoGenerator", options);
+            assertTrue(made, made.startsWith("Generated 40 commits"));
+            run(second, env, "gitlet.RepoGenerator", options);
+            options[0] = "--seed=8";
+            run(other, env, "gitlet.RepoGenerator", options);
+            String log = run(first, env, "gitlet.Main", "global-log");
+            assertEquals(41 + 1, log.split("===").length);
+            assertEquals(log, run(second, env, "gitlet.Main",
+                    "global-log"));
+            assertEquals(snapshot(first), snapshot(second));
+            assertFalse(snapshot(first).equals(snapshot(other)));
+        } finally {
+            deleteTree(first);
+            deleteTree(second);
+            deleteTree(other);
+        }
+    }
+
+    @Test
+    public void logGraphTest() {
+        LogGraph graph = new LogGraph();
+        assertEquals("* ", graph.commitLine("m"));
+        assertEquals(Arrays.asList("|\\"),
+                graph.advance(Arrays.asList("a", "b")));
+        assertEquals("* | ", graph.commitLine("a"));
+        assertEquals(Arrays.asList("|\\ \\"),
+                graph.advance(Arrays.asList("c", "d")));
+        assertEquals("| | * ", graph.commitLine("b"));
+        assertEquals("| | | ", graph.bodyLine());
+        assertEquals(Arrays.asList("|_|/"),
+                graph.advance(Arrays.asList("c")));
+        assertEquals("| * ", graph.commitLine("d"));
+        assertEquals(Arrays.asList(), graph.advance(Arrays.asList()));
+        assertEquals("* ", graph.commitLine("c"));
+        assertEquals(Arrays.asList(), graph.advance(Arrays.asList()));
+    }
+
+    @Test
+    public void commitIndexTest() throws IOException {
+        File dir = Files.createTempDirectory("index").toFile();
+        try {
+            Map<String, String> none = Collections.emptyMap();
+            run(dir, none, "gitlet.Main", "init");
+            Utils.writeContents(new File(dir, "f.txt"), "f\n");
+            run(dir, none, "gitlet.Main", "add", "f.txt");
+            run(dir, none, "gitlet.Main", "commit", "Add f");
+            run(dir, none, "gitlet.Main", "global-log");
+
+            File index = new File(dir, ".gitlet/index");
+            File records = new File(index, "records");
+            assertEquals(2 * CommitIndex.RECORD_SIZE, records.length());
+            File bucket = new File(index,
+                    "find/" + Utils.sha1("Add g").substring(0, 2));
+            Files.write(new File(index, "messages").toPath(),
+                    new byte[] { 0, 0, 0, 5, 'o', 'r', 'p', 'h', 'a', 'n' },
+                    StandardOpenOption.APPEND);
+            Files.write(records.toPath(), new byte[11],
+                    StandardOpenOption.APPEND);
+            Files.write(bucket.toPath(), (Utils.sha1("Add g") + " 12ab")
+                    .getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+
+            Utils.writeContents(new File(dir, "g.txt"), "g\n");
+            run(dir, none, "gitlet.Main", "add", "g.txt");
+            run(dir, none, "gitlet.Main", "commit", "Add g");
+            assertEquals(3 * CommitIndex.RECORD_SIZE, records.length());
+            String log = run(dir, none, "gitlet.Main", "log");
+            String globalLog = run(dir, none, "gitlet.Main", "global-log");
+            assertEquals(logEntries(log), logEntries(globalLog));
+            Matcher head = Pattern.compile("commit ([0-9a-f]{40})")
+                    .matcher(log);
+            assertTrue(head.find());
+            assertEquals(head.group(1) + "\n",
+                    run(dir, none, "gitlet.Main", "find", "Add g"));
+        } finally {
+            deleteTree(dir);
+        }
+    }
+
+    /** Returns the set of the entries of the log or global-log output
+     * LOG. */
+    private static TreeSet<String> logEntries(String log) {
+        TreeSet<String> result = new TreeSet<>(Arrays.asList(
+                log.split("===\n")));
+        result.remove("");
+        return result;
+    }
+
+    @Test
+    public void traceTest() throws IOException {
+        File plain = Files.createTempDirectory("trace").toFile();
+        File traced = Files.createTempDirectory("trace").toFile();
+        File traces = Files.createTempDirectory("trace").toFile();
+        File optionTrace = new File(traces, "option.jsonl");
+        File envTrace = new File(traces, "env.jsonl");
+        try {
+            Map<String, String> none = Collections.emptyMap();
+            Map<String, String> env = Collections.singletonMap(
+                    "GITLET_TRACE", envTrace.getPath());
+            String[][] commands = { { "init" }, { "add", "f.txt" },
+                { "commit", "Add f" }, { "status" }, { "log" } };
+            for (String[] command : commands) {
+                Utils.writeContents(new File(plain, "f.txt"), "wug\n");
+                Utils.writeContents(new File(traced, "f.txt"), "wug\n");
+                String expected = run(plain, none, "gitlet.Main", command);
+                String[] args = new String[command.length + 1];
+                args[0] = "--trace=" + optionTrace.getPath();
+                System.arraycopy(command, 0, args, 1, command.length);
+                String actual = command[0].equals("status")
+                        ? run(traced, env, "gitlet.Main", command)
+                        : run(traced, none, "gitlet.Main", args);
+                if (!command[0].equals("log")) {
+                    assertEquals(expected, actual);
+                } else {
+                    String stamps = "(?m)^(commit|Date:) .*$";
+                    assertEquals(expected.replaceAll(stamps, ""),
+                            actual.replaceAll(stamps, ""));
+                }
+            }
+            List<String> phases = tracePhases(optionTrace);
+            assertTrue(phases.containsAll(Arrays.asList("init",
+                    "add", "add/read repository",
+                    "add/hash and store files", "add/save repository",
+                    "commit", "commit/write commit", "log",
+                    "log/walk history")));
+            assertFalse(phases.contains("status"));
+            phases = tracePhases(envTrace);
+            assertEquals("status", phases.get(0));
+            assertTrue(phases.contains("status/hash working files"));
+        } finally {
+            deleteTree(plain);
+            deleteTree(traced);
+            deleteTree(traces);
+        }
+    }
 
+    /** Returns the phases named in the trace FILE, in order, checking that
+     * each line is a JSON object with the fields Trace writes. */
+    private static List<String> tracePhases(File file) throws IOException {
+        String counters = "";
+        for (int i = 0; i < Trace.Counter.values().length; i += 1) {
+            counters += ",\"[a-zA-Z]+\":\\d+";
+        }
+        Pattern line = Pattern.compile("\\{\"command\":\"([^\"]*)\","
+                + "\"phase\":\"([^\"]*)\",\"calls\":[1-9]\\d*,"
+                + "\"ms\":\\d+\\.\\d{3}" + counters + "\\}");
+        ArrayList<String> result = new ArrayList<>();
+        for (String text : Files.readAllLines(file.toPath())) {
+            Matcher matcher = line.matcher(text);
+            assertTrue(text, matcher.matches());
+            assertTrue(text, matcher.group(2).equals(matcher.group(1))
+                    || matcher.group(2).startsWith(matcher.group(1) + "/"));
+            result.add(matcher.group(2));
+        }
+        return result;
+    }
 
+    @Test
+    public void eventsTest() throws IOException {
+        assertFalse(new Events.ObjectWrite().isEnabled());
+        assertFalse(new Events.CheckoutWrite().shouldCommit());
+        File dir = Files.createTempDirectory("events").toFile();
+        File recordings = Files.createTempDirectory("events").toFile();
+        try {
+            Map<String, String> none = Collections.emptyMap();
+            run(dir, none, "gitlet.Main", "init");
+            Utils.writeContents(new File(dir, "f.txt"), "wug\n");
+            run(dir, none, "gitlet.Main", "add", "f.txt");
+            List<RecordedEvent> commit = record(dir,
+                    new File(recordings, "commit.jfr"), "commit", "Add f");
+            Utils.writeContents(new File(dir, "f.txt"), "not wug\n");
+            List<RecordedEvent> checkout = record(dir,
+                    new File(recordings, "checkout.jfr"),
+                    "checkout", "--", "f.txt");
+            assertEquals("wug\n", Utils.readContentsAsString(
+                    new File(dir, "f.txt")));
+
+            RecordedEvent written = only(commit, "gitlet.ObjectWrite");
+            assertEquals("commit", written.getString("type"));
+            assertTrue(ObjectId.isHex(written.getString("id")));
+            assertTrue(written.getLong("size") > 0);
+
+            RecordedEvent file = only(checkout, "gitlet.CheckoutWrite");
+            assertEquals("f.txt", new File(file.getString("path")).getName());
+            assertEquals(4, file.getLong("size"));
+            boolean commitRead = false, blobRead = false;
+            for (RecordedEvent event : checkout) {
+                if (!event.getEventType().getName()
+                        .equals("gitlet.ObjectRead")) {
+                    continue;
+                }
+                assertFalse(event.getBoolean("packed"));
+                assertTrue(event.getLong("size") > 0);
+                if (event.getString("type").equals("commit")) {
+                    commitRead |= event.getString("id")
+                            .equals(written.getString("id"));
+                } else if (event.getString("type").equals("blob")) {
+                    blobRead |= event.getString("id")
+                            .equals(file.getString("id"));
+                }
+            }
+            assertTrue(commitRead);
+            assertTrue(blobRead);
+        } finally {
+            deleteTree(dir);
+            deleteTree(recordings);
+        }
+    }
+
+    /** Runs gitlet with arguments ARGS in the directory DIR, recording
+     * its flight recorder events in RECORDING, and returns those of
+     * Gitlet. */
+    private static List<RecordedEvent> record(File dir, File recording,
+                                              String... args)
+        throws IOException {
+        run(dir, Collections.singletonMap("JAVA_TOOL_OPTIONS",
+                "-XX:StartFlightRecording:filename=" + recording.getPath()),
+                "gitlet.Main", args);
+        ArrayList<RecordedEvent> result = new ArrayList<>();
+        for (RecordedEvent event
+                 : RecordingFile.readAllEvents(recording.toPath())) {
+            if (event.getEventType().getName().startsWith("gitlet.")) {
+                result.add(event);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the one event named NAME among EVENTS. */
+    private static RecordedEvent only(List<RecordedEvent> events,
+                                      String name) {
+        RecordedEvent result = null;
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals(name)) {
+                assertNull(result);
+                result = event;
+            }
+        }
+        assertNotNull(name, result);
+        return result;
+    }
+
+    /** Runs the main program of the class named MAIN with arguments ARGS
+     * in a new JVM, in the directory DIR, with the environment variables
+     * ENV set, and returns its standard output and error. */
+    private static String run(File dir, Map<String, String> env,
+                              String main, String... args)
+        throws IOException {
+        ArrayList<String> classPath = new ArrayList<>();
+        for (String entry : System.getProperty("java.class.path")
+                 .split(File.pathSeparator)) {
+            classPath.add(new File(entry).getAbsolutePath());
+        }
+        ArrayList<String> command = new ArrayList<>(Arrays.asList("java",
+                "-cp", String.join(File.pathSeparator, classPath), main));
+        command.addAll(Arrays.asList(args));
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.directory(dir).redirectErrorStream(true);
+        builder.environment().putAll(env);
+        Process process = builder.start();
+        String output = new String(process.getInputStream().readAllBytes(),
+                StandardCharsets.UTF_8);
+        try {
+            process.waitFor();
+        } catch (InterruptedException excp) {
+            throw new IOException(excp);
+        }
+        return output;
+    }
+
+    /** Returns the SHA-1 hash of each file under DIR other than the
+     * objects and caches in .gitlet, by path: the working files, the refs
+     * and the repository file. */
+    private static TreeMap<String, String> snapshot(File dir)
+        throws IOException {
+        TreeMap<String, String> result = new TreeMap<>();
+        Path root = dir.toPath();
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                String name = root.relativize(path).toString()
+                        .replace(File.separatorChar, '/');
+                if (Files.isRegularFile(path)
+                        && (!name.startsWith(".gitlet/")
+                            || name.startsWith(".gitlet/refs/")
+                            || name.equals(".gitlet/packed-refs"))) {
+                    result.put(name, Utils.sha1(Files.readAllBytes(path)));
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Deletes DIR and everything under it. */
+    private static void deleteTree(File dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            for (Path path : (Iterable<Path>) paths
+                    .sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,214 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+
+/** The working directory of a repository, Main.CWD.  Files in it are named
+ * by their paths relative to Main.CWD, with components separated by '/'.
+ * The .gitlet directory, any subdirectory holding a repository of its own,
+ * and the paths a sparse checkout excludes are not part of the working
+ * tree.
+ * @author Chris Zhan */
+class WorkingTree {
+
+    /** Returns the paths of all plain files in the working tree, in
+     * lexicographic order. */
+    static List<String> files() {
+        return filesUnder("");
+    }
+
+    /** Returns the paths of all plain files in the working tree under the
+     * directory DIR (a path, or "" for the whole tree), in lexicographic
+     * order. */
+    static List<String> filesUnder(String dir) {
+        WorkingTreeWatch watch = WorkingTreeWatch.active();
+        if (watch != null) {
+            return watch.filesUnder(dir);
+        }
+        try (Trace trace = Trace.phase("scan working tree")) {
+            ArrayList<String> result = new ArrayList<>();
+            collect(dir.isEmpty() ? Main.CWD : file(dir), dir, result);
+            result.sort(null);
+            return result;
+        }
+    }
+
+    /** Returns the id of the contents of the working file at PATH, which
+     * the watch of a batch session may know without reading the file. */
+    static ObjectId idOf(String path) {
+        WorkingTreeWatch watch = WorkingTreeWatch.active();
+        return watch == null ? Blob.idOf(file(path)) : watch.idOf(path);
+    }
+
+    /** Returns the File denoted by the working-tree path PATH. */
+    static File file(String path) {
+        return Utils.join(Main.CWD, path);
+    }
+
+    /** Returns the working-tree path of NAME, a file name given on the
+     * command line relative to Main.CWD, or null if NAME lies outside the
+     * working tree. */
+    static String pathOf(String name) {
+        Path root = Main.CWD.toPath().toAbsolutePath().normalize();
+        Path path = root.resolve(name).normalize();
+        if (!path.startsWith(root)) {
+            return null;
+        }
+        return root.relativize(path).toString().replace(File.separatorChar,
+                '/');
+    }
+
+    /** Returns the paths of the plain files named by NAMES, in
+     * lexicographic order.  Each name may be the path of a file, the path
+     * of a directory (denoting every file under it), or a glob pattern
+     * such as *.txt or src/**.java.  Exits with an error if a name denotes
+     * no file. */
+    static List<String> expand(Collection<String> names) {
+        TreeSet<String> result = new TreeSet<>();
+        List<String> allFiles = null;
+        for (String name : names) {
+            if (isGlob(name)) {
+                if (allFiles == null) {
+                    allFiles = files();
+                }
+                PathMatcher matcher = FileSystems.getDefault()
+                        .getPathMatcher("glob:" + name);
+                boolean matched = false;
+                for (String path : allFiles) {
+                    if (matcher.matches(Paths.get(path))) {
+                        result.add(path);
+                        matched = true;
+                    }
+                }
+                if (!matched) {
+                    Main.exitWithError("File does not exist.");
+                }
+                continue;
+            }
+            String path = pathOf(name);
+            File file = path == null ? null : file(path);
+            if (file == null || !file.exists()
+                    || isGitletDirectory(path)) {
+                Main.exitWithError("File does not exist.");
+            } else if (file.isDirectory()) {
+                result.addAll(filesUnder(path));
+            } else {
+                result.add(path);
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Deletes the working file at PATH, if there is one, together with any
+     * directories that are left empty by its removal.
+     * @return true iff a file was deleted. */
+    static boolean delete(String path) {
+        touched(path);
+        File file = file(path);
+        if (file.isDirectory() || !file.delete()) {
+            return false;
+        }
+        File root = Main.CWD.getAbsoluteFile();
+        for (File dir = file.getAbsoluteFile().getParentFile();
+             dir != null && !dir.equals(root); dir = dir.getParentFile()) {
+            String[] contents = dir.list();
+            if (contents == null || contents.length > 0 || !dir.delete()) {
+                break;
+            }
+        }
+        return true;
+    }
+
+    /** Returns a buffered stream writing over the working file at PATH,
+     * creating any missing directories above it. */
+    static OutputStream open(String path) throws IOException {
+        touched(path);
+        File file = file(path);
+        File parent = file.getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        return new BufferedOutputStream(new FileOutputStream(file));
+    }
+
+    /** Writes the contents of the stored blob BLOBID to the working file
+     * at PATH, creating any missing directories above it.  The blob is
+     * streamed to the file, one chunk at a time if it is chunked. */
+    static void write(String path, ObjectId blobID) {
+        Events.CheckoutWrite event = new Events.CheckoutWrite();
+        event.begin();
+        touched(path);
+        File file = file(path);
+        File parent = file.getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        ObjectStore.local().writeContents(blobID, file);
+        if (event.shouldCommit()) {
+            event.path = path;
+            event.id = blobID.toString();
+            event.size = file.length();
+            event.commit();
+        }
+    }
+
+    /** Tells the watch of a batch session, if any, that the working file
+     * at PATH is about to change. */
+    private static void touched(String path) {
+        WorkingTreeWatch watch = WorkingTreeWatch.active();
+        if (watch != null) {
+            watch.touched(path);
+        }
+    }
+
+    /** Returns true iff NAME contains glob metacharacters. */
+    private static boolean isGlob(String name) {
+        return name.matches(".*[*?\\[{].*");
+    }
+
+    /** Returns true iff PATH is, or is inside, the .gitlet directory. */
+    private static boolean isGitletDirectory(String path) {
+        return path.equals(".gitlet") || path.startsWith(".gitlet/");
+    }
+
+    /** Adds to RESULT the paths of the plain files under DIR, whose own
+     * path is PREFIX, that the sparse checkout includes.  Directories it
+     * cannot include are not read. */
+    private static void collect(File dir, String prefix,
+                                List<String> result) {
+        SparseCheckout sparse = SparseCheckout.local();
+        if (!prefix.isEmpty() && !sparse.mayInclude(prefix)) {
+            return;
+        }
+        String[] names = dir.list();
+        if (names == null) {
+            return;
+        }
+        Trace.count(Trace.Counter.DIRS_LISTED, 1);
+        Arrays.sort(names);
+        for (String name : names) {
+            String path = prefix.isEmpty() ? name : prefix + "/" + name;
+            File file = new File(dir, name);
+            if (file.isFile()) {
+                if (sparse.includes(path)) {
+                    result.add(path);
+                }
+            } else if (file.isDirectory() && !name.equals(".gitlet")
+                    && !new File(file, ".gitlet").isDirectory()) {
+                collect(file, path, result);
+            }
+        }
+    }
+}
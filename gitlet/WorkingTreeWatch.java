@@ -0,0 +1,346 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/** A watch of the working tree for the length of a batch session, so that
+ * commands after the first need not list every directory and hash every
+ * file to learn what changed.  The watch keeps the paths of all files in
+ * the working tree, with the id of each once it has been hashed, and has a
+ * WatchService report every file created, deleted or modified in each
+ * directory.  Before the tree is used, the watch brings itself up to date
+ * by re-examining only the paths reported since, and the rest of the tree
+ * is taken from what it already knows.
+ *
+ * Watch services deliver events some time after the changes they report.
+ * So that no change made before a command is missed, the watch creates a
+ * cookie file in the .gitlet directory, which is watched too, and reads
+ * events until the cookie's arrives: events from one service come in
+ * order, so every earlier change has then been reported.  If the cookie
+ * does not arrive in time, or the service overflows and loses events, the
+ * watch falls back on a full scan of the tree.
+ *
+ * The watch knows every file; the sparse checkout is applied when the tree
+ * is asked for, so that sparse-checkout can change it in a session.
+ * @author Chris Zhan */
+final class WorkingTreeWatch implements AutoCloseable {
+
+    /** The longest wait, in milliseconds, for a cookie's event. */
+    private static final long COOKIE_TIMEOUT = 2000;
+
+    /** The prefix of the names of cookie files. */
+    private static final String COOKIE = "watch-cookie-";
+
+    /** A watch of the working tree Main.CWD using SERVICE. */
+    private WorkingTreeWatch(WatchService service) {
+        _service = service;
+        _root = Main.CWD.toPath().toAbsolutePath().normalize();
+    }
+
+    /** Starts watching the working tree for a session, unless the file
+     * system offers no watch service, in which case commands scan the
+     * tree as usual.  Returns the watch, to be closed when the session
+     * ends, or null. */
+    static WorkingTreeWatch start() {
+        try {
+            _active = new WorkingTreeWatch(
+                    FileSystems.getDefault().newWatchService());
+            _active._cookieKey = _active._root.resolve(".gitlet").register(
+                    _active._service, StandardWatchEventKinds.ENTRY_CREATE);
+            _active.rescan();
+        } catch (IOException | UnsupportedOperationException excp) {
+            _active = null;
+        }
+        return _active;
+    }
+
+    /** Returns the watch of the current session, or null. */
+    static WorkingTreeWatch active() {
+        return _active;
+    }
+
+    /** Stops watching. */
+    @Override
+    public void close() {
+        if (_active == this) {
+            _active = null;
+        }
+        try {
+            _service.close();
+        } catch (IOException excp) {
+            /* The watch is over either way. */
+        }
+    }
+
+    /** Returns the paths of the files in the working tree under the
+     * directory DIR ("" for the whole tree) that the sparse checkout
+     * includes, in lexicographic order. */
+    List<String> filesUnder(String dir) {
+        sync();
+        SortedMap<String, ObjectId> files = dir.isEmpty() ? _files
+                : _files.subMap(dir + "/", dir + "0");
+        SparseCheckout sparse = SparseCheckout.local();
+        ArrayList<String> result = new ArrayList<>(files.size());
+        for (String path : files.keySet()) {
+            if (sparse.includes(path)) {
+                result.add(path);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the id of the contents of the working file at PATH, hashing
+     * it only if it has changed since it was last hashed. */
+    ObjectId idOf(String path) {
+        ObjectId id = _files.get(path);
+        if (id == null) {
+            id = Blob.idOf(WorkingTree.file(path));
+            if (_files.containsKey(path)) {
+                _files.put(path, id);
+            }
+        }
+        return id;
+    }
+
+    /** Records that Gitlet is about to change or delete the working file
+     * at PATH, so that an id hashed before is not used again in the same
+     * command, before the change is reported. */
+    void touched(String path) {
+        if (_files.containsKey(path)) {
+            _files.put(path, null);
+        }
+    }
+
+    /** Brings the known tree up to date with the changes reported since
+     * the last call, scanning the whole tree instead if some may have been
+     * missed. */
+    private void sync() {
+        try (Trace trace = Trace.phase("sync working tree watch")) {
+            TreeSet<String> dirty = new TreeSet<>();
+            if (!drain(dirty)) {
+                rescan();
+                return;
+            }
+            String refreshed = null;
+            for (String path : dirty) {
+                if (refreshed == null
+                        || !path.startsWith(refreshed + "/")) {
+                    refresh(path);
+                    refreshed = path;
+                }
+            }
+        } catch (ClosedWatchServiceException excp) {
+            rescan();
+        }
+    }
+
+    /** Creates a cookie and adds to DIRTY the paths of the events reported
+     * until its event arrives.  Returns false if events may have been lost
+     * or the cookie did not arrive in time. */
+    private boolean drain(TreeSet<String> dirty) {
+        _cookies += 1;
+        String cookie = COOKIE + _cookies;
+        Path cookieFile = _root.resolve(".gitlet").resolve(cookie);
+        try {
+            Files.deleteIfExists(cookieFile);
+            Files.createFile(cookieFile);
+        } catch (IOException excp) {
+            return false;
+        }
+        boolean complete = false;
+        long deadline = System.nanoTime()
+                + TimeUnit.MILLISECONDS.toNanos(COOKIE_TIMEOUT);
+        try {
+            while (!complete) {
+                long wait = deadline - System.nanoTime();
+                WatchKey key = wait <= 0 ? null
+                        : _service.poll(wait, TimeUnit.NANOSECONDS);
+                if (key == null) {
+                    return false;
+                }
+                try {
+                    if (key == _cookieKey) {
+                        complete = hasCookie(key, cookie);
+                    } else if (!addEvents(key, dirty)) {
+                        return false;
+                    }
+                } finally {
+                    key.reset();
+                }
+            }
+            return true;
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            try {
+                Files.deleteIfExists(cookieFile);
+            } catch (IOException excp) {
+                /* A stray cookie is harmless. */
+            }
+        }
+    }
+
+    /** Returns true iff the events of KEY, the key of the .gitlet
+     * directory, include the creation of the cookie COOKIE. */
+    private static boolean hasCookie(WatchKey key, String cookie) {
+        boolean result = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            result |= event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+                    && event.context().toString().equals(cookie);
+        }
+        return result;
+    }
+
+    /** Adds to DIRTY the paths named by the events of KEY, the key of a
+     * directory of the working tree, leaving out changes to the attributes
+     * of watched directories, whose contents are watched in their own
+     * right.  A .gitlet directory appearing or disappearing makes its
+     * directory dirty, since that makes it a repository of its own or not;
+     * nothing else in a repository of its own counts.  Returns false if
+     * events were lost. */
+    private boolean addEvents(WatchKey key, TreeSet<String> dirty) {
+        String dir = _dirs.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                return false;
+            } else if (dir == null) {
+                continue;
+            }
+            String name = event.context().toString();
+            String path = dir.isEmpty() ? name : dir + "/" + name;
+            if (name.equals(".gitlet")) {
+                if (!dir.isEmpty()) {
+                    dirty.add(dir);
+                }
+            } else if (_nested.contains(dir)) {
+                continue;
+            } else if (event.kind() != StandardWatchEventKinds.ENTRY_MODIFY
+                    || !_keys.containsKey(path)) {
+                dirty.add(path);
+            }
+        }
+        return true;
+    }
+
+    /** Forgets everything known about PATH and the paths under it, and
+     * examines it afresh: a file is added, unhashed, and a directory is
+     * watched and its files added. */
+    private void refresh(String path) {
+        _files.remove(path);
+        _files.subMap(path + "/", path + "0").clear();
+        SortedMap<String, WatchKey> keys = _keys.subMap(path + "/",
+                path + "0");
+        for (WatchKey key : keys.values()) {
+            key.cancel();
+            _dirs.remove(key);
+        }
+        keys.clear();
+        WatchKey key = _keys.remove(path);
+        if (key != null) {
+            key.cancel();
+            _dirs.remove(key);
+        }
+        _nested.remove(path);
+        _nested.subSet(path + "/", path + "0").clear();
+        File file = WorkingTree.file(path);
+        if (file.isFile()) {
+            _files.put(path, null);
+        } else if (file.isDirectory()) {
+            collect(file, path);
+        }
+    }
+
+    /** Forgets everything known and scans the whole tree. */
+    private void rescan() {
+        for (WatchKey key : _keys.values()) {
+            key.cancel();
+            _dirs.remove(key);
+        }
+        _keys.clear();
+        _nested.clear();
+        _files.clear();
+        collect(Main.CWD, "");
+    }
+
+    /** Watches the directory DIR, whose path is PREFIX, and everything
+     * under it, adding its files, unless it is a repository of its own, of
+     * which only the .gitlet directory is watched for. */
+    private void collect(File dir, String prefix) {
+        try {
+            register(dir.toPath(), prefix);
+        } catch (IOException excp) {
+            return;
+        }
+        if (!prefix.isEmpty() && new File(dir, ".gitlet").isDirectory()) {
+            _nested.add(prefix);
+            return;
+        }
+        String[] names = dir.list();
+        if (names == null) {
+            return;
+        }
+        Trace.count(Trace.Counter.DIRS_LISTED, 1);
+        Arrays.sort(names);
+        for (String name : names) {
+            String path = prefix.isEmpty() ? name : prefix + "/" + name;
+            File file = new File(dir, name);
+            if (file.isFile()) {
+                _files.put(path, null);
+            } else if (file.isDirectory() && !name.equals(".gitlet")) {
+                collect(file, path);
+            }
+        }
+    }
+
+    /** Has the watch service report changes in the directory DIR, whose
+     * path is PREFIX. */
+    private void register(Path dir, String prefix) throws IOException {
+        WatchKey key = dir.register(_service,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        _dirs.put(key, prefix);
+        _keys.put(prefix, key);
+    }
+
+    /** The watch of the current session, or null. */
+    private static WorkingTreeWatch _active;
+
+    /** The service reporting changes. */
+    private final WatchService _service;
+    /** The absolute path of the working tree. */
+    private final Path _root;
+    /** The key of the .gitlet directory, where cookies are created. */
+    private WatchKey _cookieKey;
+    /** The path of each watched directory of the working tree, by its
+     * key. */
+    private final Map<WatchKey, String> _dirs = new HashMap<>();
+    /** The key of each watched directory, by its path. */
+    private final TreeMap<String, WatchKey> _keys = new TreeMap<>();
+    /** The paths of the watched directories that are repositories of their
+     * own. */
+    private final TreeSet<String> _nested = new TreeSet<>();
+    /** The files of the working tree, each with the id of its contents,
+     * or null if it has not been hashed since it last changed. */
+    private final TreeMap<String, ObjectId> _files = new TreeMap<>();
+    /** The number of cookies created so far. */
+    private int _cookies;
+}
@@ -77,6 +77,9 @@ The instructions each have one of the following forms:
           Defines the variable VAR to have the literal value VALUE.  VALUE is
           taken to be a raw Python string (as in r"VALUE").  Substitutions are
           first applied to VALUE.
+   V NAME VALUE
+          Sets the environment variable NAME to VALUE for the gitlet commands
+          in the rest of this test, or unsets it if VALUE is missing.
 
 For each TEST.in, reports at most one error.  Without the --show option,
 simply indicates tests passed and failed.  If N is postive, also prints details
@@ -301,6 +304,7 @@ def doTest(test):
         else:
             raise ValueError("undefined substitution: ${{{}}}".format(M.group(1)))
 
+    saved_env = {}
     try:
         tmpdir = None
         for _ in range(num_reps):
@@ -385,11 +389,23 @@ def doTest(test):
                         return False
                 elif Match(r'(?s)D\s*([a-zA-Z_][a-zA-Z_0-9]*)\s*"(.*)"\s*$', line):
                     defns[Group(1)] = Group(2)
+                elif Match(r'V\s*([a-zA-Z_][a-zA-Z_0-9]*)\s*(\S*)\s*$', line):
+                    if Group(1) not in saved_env:
+                        saved_env[Group(1)] = environ.get(Group(1))
+                    if Group(2):
+                        environ[Group(1)] = Group(2)
+                    else:
+                        environ.pop(Group(1), None)
                 else:
                     raise ValueError("bad test line at {}".format(line_num))
         print("OK")
         return True
     finally:
+        for name, value in saved_env.items():
+            if value is None:
+                environ.pop(name, None)
+            else:
+                environ[name] = value
         if verbose:
             print("Testing directory: {}".format(tmpdir))
         if not keep: